@@ -0,0 +1,161 @@
+// The parser before precedence climbing, kept for ParseBenchmark and the JMH ParserBenchmark
+// only: binary expressions are parsed by one method per grammar level, from || down to ^,
+// each nesting its left side in a new node for every operator. It gives the same trees as
+// Parser with nested chains; flat chains are not supported. Like ParseBenchmark it is in the
+// unnamed package, the interpreter's, so that it can override Parser's package-private methods.
+public class LevelParser extends Parser {
+
+    LevelParser(TokenStream tokens, boolean quiet) {
+        super(tokens, quiet);
+    }
+
+    @Override
+    ParseTreeNode parseBinaryExp(int minLevel) throws ParserException {
+        return parseLogicalOrExp();
+    }
+
+    private ParseTreeNode parseLogicalOrExp() throws ParserException {
+        var left = parseLogicalAndExp();
+        if (currentType() == Token.TokenType.OR) {
+            var orNode = createNode("Logical_Or");
+            orNode.addChild(left);
+            while (currentType() == Token.TokenType.OR) {
+                orNode.addChild(matchAndCreate(Token.TokenType.OR));
+                orNode.addChild(parseLogicalAndExp());
+
+                if (currentType() == Token.TokenType.OR) {
+                    var newOrNode = createNode("Logical_Or");
+                    newOrNode.addChild(orNode);
+                    orNode = newOrNode;
+                }
+            }
+            return orNode;
+        }
+        return left;
+    }
+
+    private ParseTreeNode parseLogicalAndExp() throws ParserException {
+        var left = parseEqualityExp();
+        if (currentType() == Token.TokenType.AND) {
+            var andNode = createNode("Logical_And");
+            andNode.addChild(left);
+            while (currentType() == Token.TokenType.AND) {
+                andNode.addChild(matchAndCreate(Token.TokenType.AND));
+                andNode.addChild(parseEqualityExp());
+                if (currentType() == Token.TokenType.AND) {
+                    var newAndNode = createNode("Logical_And");
+                    newAndNode.addChild(andNode);
+                    andNode = newAndNode;
+                }
+            }
+            return andNode;
+        }
+        return left;
+    }
+
+    private ParseTreeNode parseEqualityExp() throws ParserException {
+        var left = parseRelationalExp();
+        if (currentType() == Token.TokenType.EQUAL || currentType() == Token.TokenType.NOT_EQUAL) {
+            var equalityNode = createNode("Equality");
+            equalityNode.addChild(left);
+            while (currentType() == Token.TokenType.EQUAL || currentType() == Token.TokenType.NOT_EQUAL) {
+                equalityNode.addChild(matchAndCreate(currentType()));
+                equalityNode.addChild(parseRelationalExp());
+                if (currentType() == Token.TokenType.EQUAL || currentType() == Token.TokenType.NOT_EQUAL) {
+                    var newEqualityNode = createNode("Equality");
+                    newEqualityNode.addChild(equalityNode);
+                    equalityNode = newEqualityNode;
+                }
+            }
+            return equalityNode;
+        }
+        return left;
+    }
+
+    private ParseTreeNode parseRelationalExp() throws ParserException {
+        var left = parseAdditiveExp();
+        if (currentType() == Token.TokenType.LESS || currentType() == Token.TokenType.GREATER ||
+                currentType() == Token.TokenType.LESS_EQUAL || currentType() == Token.TokenType.GREATER_EQUAL) {
+
+            var relationalNode = createNode("Relational");
+            relationalNode.addChild(left);
+            while (currentType() == Token.TokenType.LESS || currentType() == Token.TokenType.GREATER ||
+                    currentType() == Token.TokenType.LESS_EQUAL || currentType() == Token.TokenType.GREATER_EQUAL) {
+
+                relationalNode.addChild(matchAndCreate(currentType()));
+                relationalNode.addChild(parseAdditiveExp());
+
+                if (currentType() == Token.TokenType.LESS || currentType() == Token.TokenType.GREATER ||
+                        currentType() == Token.TokenType.LESS_EQUAL || currentType() == Token.TokenType.GREATER_EQUAL) {
+                    var newRelationalNode = createNode("Relational");
+                    newRelationalNode.addChild(relationalNode);
+                    relationalNode = newRelationalNode;
+                }
+            }
+            return relationalNode;
+        }
+        return left;
+    }
+
+    private ParseTreeNode parseAdditiveExp() throws ParserException {
+        var left = parseMultiplicativeExp();
+
+        if (currentType() == Token.TokenType.PLUS || currentType() == Token.TokenType.MINUS) {
+            var additiveNode = createNode("Additive");
+            additiveNode.addChild(left);
+
+            while (currentType() == Token.TokenType.PLUS || currentType() == Token.TokenType.MINUS) {
+                additiveNode.addChild(matchAndCreate(currentType()));
+                additiveNode.addChild(parseMultiplicativeExp());
+
+                if (currentType() == Token.TokenType.PLUS || currentType() == Token.TokenType.MINUS) {
+                    var newAdditiveNode = createNode("Additive");
+                    newAdditiveNode.addChild(additiveNode);
+                    additiveNode = newAdditiveNode;
+                }
+            }
+            return additiveNode;
+        }
+        return left;
+    }
+
+    private ParseTreeNode parseMultiplicativeExp() throws ParserException {
+        var left = parsePowerExp();
+
+        if (currentType() == Token.TokenType.MULTIPLY || currentType() == Token.TokenType.DIVIDE ||
+                currentType() == Token.TokenType.MODULO) {
+
+            var multiplicativeNode = createNode("Multiplicative");
+            multiplicativeNode.addChild(left);
+
+            while (currentType() == Token.TokenType.MULTIPLY || currentType() == Token.TokenType.DIVIDE ||
+                    currentType() == Token.TokenType.MODULO) {
+                multiplicativeNode.addChild(matchAndCreate(currentType()));
+                multiplicativeNode.addChild(parsePowerExp());
+
+                if (currentType() == Token.TokenType.MULTIPLY || currentType() == Token.TokenType.DIVIDE ||
+                        currentType() == Token.TokenType.MODULO) {
+                    var newMultiplicativeNode = createNode("Multiplicative");
+                    newMultiplicativeNode.addChild(multiplicativeNode);
+                    multiplicativeNode = newMultiplicativeNode;
+                }
+            }
+            return multiplicativeNode;
+        }
+
+        return left;
+    }
+
+    private ParseTreeNode parsePowerExp() throws ParserException {
+        var left = parseUnaryExp();
+
+        if (currentType() == Token.TokenType.EXPONENT) {
+            var powerNode = createNode("Exponent");
+            powerNode.addChild(left);
+            powerNode.addChild(matchAndCreate(Token.TokenType.EXPONENT));
+            powerNode.addChild(parsePowerExp());
+            return powerNode;
+        }
+        return left;
+    }
+}
@@ -0,0 +1,293 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Times sequential parsing against ParallelParser on a generated program with many functions,
+// for pools of 1, 2, 4, ... workers up to the number of processors. With --expressions it
+// times the method per grammar level that precedence climbing replaced, kept in LevelParser,
+// against Parser with nested and with flat operator chains on a program of long expression
+// statements, and with --tree the EBNF text output against a TreeFile: writing, size, and
+// loading every node.
+// With --edits it times IncrementalParser edits against a full scan and parse, then checks
+// random edits against a fresh parse of the edited text, exiting with 1 if one differs.
+//
+//   java -cp benchmarks/target/benchmarks.jar ParseBenchmark [functions]
+//   java -cp benchmarks/target/benchmarks.jar ParseBenchmark --expressions [statements]
+//   java -cp benchmarks/target/benchmarks.jar ParseBenchmark --tree [functions]
+//   java -cp benchmarks/target/benchmarks.jar ParseBenchmark --edits [functions] [random edits]
+public class ParseBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--expressions")) {
+            expressions(args.length > 1 ? Integer.parseInt(args[1]) : 100000);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--edits")) {
+            edits(args.length > 1 ? Integer.parseInt(args[1]) : 20000, args.length > 2 ? Integer.parseInt(args[2]) : 1000);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--tree")) {
+            tree(args.length > 1 ? Integer.parseInt(args[1]) : 20000);
+            return;
+        }
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        char[] source = generate(functions).toCharArray();
+        TokenBuffer tokens = new ArrayScanner(source, source.length).scanTokens();
+        System.out.printf("%d functions, %d tokens%n", functions, tokens.size());
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            double sequential = time(() -> new Parser(tokens).parse());
+            out.printf("sequential      %8.1f ms%n", sequential);
+            int processors = Runtime.getRuntime().availableProcessors();
+            for (int workers = 1; ; workers = Math.min(workers * 2, processors)) {
+                ForkJoinPool pool = new ForkJoinPool(workers);
+                double parallel = time(() -> ParallelParser.parse(tokens, pool));
+                pool.shutdown();
+                out.printf("parallel x%-4d  %8.1f ms  %5.2fx%n", workers, parallel, sequential / parallel);
+                if (workers == processors) {
+                    break;
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void expressions(int statements) throws Exception {
+        char[] source = generateExpressions(statements).toCharArray();
+        TokenBuffer tokens = new ArrayScanner(source, source.length).scanTokens();
+        System.out.printf("%d statements, %d tokens%n", statements, tokens.size());
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            ParseTreeNode climbed = new Parser(tokens).parse();
+            String difference = difference(new LevelParser(TokenStream.of(tokens), false).parse(), climbed);
+            if (difference != null) {
+                throw new IllegalStateException("LevelParser gives another tree: " + difference);
+            }
+            // Interleaved, so that neither gets the quieter heap or the later JIT state
+            double[] times = timeInterleaved(
+                    () -> new LevelParser(TokenStream.of(tokens), false).parse(),
+                    () -> new Parser(tokens).parse(),
+                    () -> {
+                        Parser parser = new Parser(tokens);
+                        parser.setFlatChains(true);
+                        parser.parse();
+                    });
+            String[] names = {"method per level", "nested chains", "flat chains"};
+            for (int i = 0; i < times.length; i++) {
+                out.printf("%-16s %7.1f ms  %6.1f ns/token%n", names[i], times[i], times[i] * 1e6 / tokens.size());
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void tree(int functions) throws Exception {
+        char[] source = generate(functions).toCharArray();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        ParseTreeNode root;
+        try {
+            root = new Parser(new ArrayScanner(source, source.length).scanTokens()).parse();
+        } finally {
+            System.setOut(out);
+        }
+        Path text = Files.createTempFile("parse_tree", ".ebnf");
+        Path binary = Files.createTempFile("parse_tree", ".tree");
+        try {
+            double writeText = time(() -> new ParseTreePrinter(text.toString()).print(root));
+            double writeBinary = time(() -> TreeFile.write(root, binary));
+            // Loading text is only reading its lines, a lower bound for any consumer of it
+            double loadText = time(() -> Files.readAllLines(text));
+            double loadBinary = time(() -> {
+                TreeFile tree = TreeFile.open(binary);
+                for (int node = 0; node < tree.size(); node++) {
+                    if (tree.hasToken(node)) {
+                        tree.lexeme(node);
+                    }
+                }
+            });
+            double view = time(() -> new ParseTreePrinter(text.toString()).print(TreeFile.open(binary)));
+            out.printf("%d functions, %d nodes%n", functions, TreeFile.open(binary).size());
+            out.printf("text      write %8.1f ms  load %8.1f ms  %6.1f MB%n", writeText, loadText, Files.size(text) / 1e6);
+            out.printf("binary    write %8.1f ms  load %8.1f ms  %6.1f MB%n", writeBinary, loadBinary, Files.size(binary) / 1e6);
+            out.printf("text from binary %7.1f ms%n", view);
+        } finally {
+            Files.delete(text);
+            Files.delete(binary);
+        }
+    }
+
+    // Snippets random edits insert: tokens, declaration boundaries, comments, an unterminated
+    // string, a NUL and a character outside ASCII
+    private static final String[] INSERTS = {
+            "", "x", "1", "0.5", " ", "\n", ";", "{", "}", "(", ")", "+", "=", "/", "int ", "int y;\n",
+            "}\nint g() {\n", "// note\n", "//", "\"", "'a'", "\0", "\u00e9"
+    };
+
+    private static void edits(int functions, int checked) throws Exception {
+        char[] source = generate(functions).toCharArray();
+        IncrementalParser parser = new IncrementalParser(source, source.length);
+        System.out.printf("%d functions, %d tokens%n", functions, parser.size());
+        // Typing in a statement of the function in the middle, and a new line there, which
+        // moves every declaration after it down
+        int at = new String(source).indexOf("acc = acc / 2;", source.length / 2);
+        double typed = time(() -> {
+            parser.edit(at, 0, "x");
+            parser.edit(at, 1, "");
+        }) / 2;
+        double newline = time(() -> {
+            parser.edit(at, 0, "\n");
+            parser.edit(at, 1, "");
+        }) / 2;
+        System.out.printf("edit in one function   %8.3f ms  %d tokens reparsed%n", typed, parser.reparsedTokens());
+        System.out.printf("new line in one function %6.3f ms%n", newline);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        double full;
+        try {
+            full = time(() -> new Parser(new ArrayScanner(source, source.length).scanTokens()).parse());
+        } finally {
+            System.setOut(out);
+        }
+        System.out.printf("full scan and parse    %8.1f ms%n", full);
+
+        // Each random edit is checked, then undone and checked again. Declarations sharing a
+        // line also check that those after an edit are found at their new columns.
+        char[] small = ("int p; int q = 1; float r;\nint s; bool t = true; char u;\n" + generate(10)).toCharArray();
+        IncrementalParser edited = new IncrementalParser(small, small.length);
+        StringBuilder text = new StringBuilder(new String(small));
+        Random random = new Random(1);
+        int differences = 0;
+        for (int i = 0; i < checked; i++) {
+            int offset = random.nextInt(text.length() + 1);
+            int most = random.nextInt(10) == 0 ? 200 : 3;
+            int removed = random.nextInt(Math.min(most, text.length() - offset) + 1);
+            String inserted = INSERTS[random.nextInt(INSERTS.length)];
+            String replaced = text.substring(offset, offset + removed);
+            text.replace(offset, offset + removed, inserted);
+            differences += check(edited, offset, removed, inserted, text);
+            text.replace(offset, offset + inserted.length(), replaced);
+            differences += check(edited, offset, inserted.length(), replaced, text);
+        }
+        System.out.printf("%d edits checked against a fresh parse, %d differ%n", 2 * checked, differences);
+        if (differences > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int check(IncrementalParser parser, int offset, int removed, String inserted, CharSequence text) {
+        try {
+            parser.edit(offset, removed, inserted);
+        } catch (ScannerException | Parser.ParserException e) {
+            // a broken program is compared as one
+        }
+        String difference = parser.difference(text.toString().toCharArray());
+        if (difference == null) {
+            return 0;
+        }
+        System.out.printf("edit %d+%d %s: %s%n", offset, removed, inserted.replace("\n", "\\n"), difference);
+        return 1;
+    }
+
+    // Where two trees first differ, null if they are equal
+    private static String difference(ParseTreeNode a, ParseTreeNode b) {
+        if (!a.name.equals(b.name) || a.token != b.token || a.children.size() != b.children.size()) {
+            return a.name + " instead of " + b.name;
+        }
+        for (int i = 0; i < a.children.size(); i++) {
+            String difference = difference(a.children.get(i), b.children.get(i));
+            if (difference != null) {
+                return difference;
+            }
+        }
+        return null;
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+
+    // Best of ROUNDS after as many warm-up rounds
+    private static double time(Run run) throws Exception {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < 2 * ROUNDS; round++) {
+            long start = System.nanoTime();
+            run.run();
+            if (round >= ROUNDS) {
+                best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            }
+        }
+        return best;
+    }
+
+    // Best of ROUNDS for each run after as many warm-up rounds, the runs taking turns and
+    // starting each from a collected heap
+    private static double[] timeInterleaved(Run... runs) throws Exception {
+        double[] best = new double[runs.length];
+        Arrays.fill(best, Double.MAX_VALUE);
+        for (int round = 0; round < 2 * ROUNDS; round++) {
+            for (int i = 0; i < runs.length; i++) {
+                System.gc();
+                long start = System.nanoTime();
+                runs[i].run();
+                if (round >= ROUNDS) {
+                    best[i] = Math.min(best[i], (System.nanoTime() - start) / 1e6);
+                }
+            }
+        }
+        return best;
+    }
+
+    static String generate(int functions) {
+        StringBuilder source = new StringBuilder();
+        source.append("int total;\nfloat scale = 1.5;\n");
+        for (int i = 0; i < functions; i++) {
+            source.append("int f").append(i).append("(int n, float x) {\n")
+                    .append("    int i, acc = 0;\n")
+                    .append("    int values[4] = {1, 2, 3, 4};\n")
+                    .append("    for (i = 0; i < n; i = i + 1) {\n")
+                    .append("        if (i % 2 == 0 && x > 0.5) {\n")
+                    .append("            acc = acc + values[1] * (i - 3) / 2;\n")
+                    .append("        } else {\n")
+                    .append("            acc = acc - i * x;\n")
+                    .append("        }\n")
+                    .append("    }\n")
+                    .append("    while (acc > 100) {\n")
+                    .append("        acc = acc / 2;\n")
+                    .append("    }\n")
+                    .append(i == 0 ? "    return acc;\n" : "    return acc + f" + (i - 1) + "(n - 1, x * scale);\n")
+                    .append("}\n");
+        }
+        source.append("int main() {\n    total = f0(10, 2.0);\n    printf(\"%d\\n\", total);\n    return 0;\n}\n");
+        return source.toString();
+    }
+
+    // One function of assignments whose right sides mix every operator level, with array
+    // elements and calls as operands
+    static String generateExpressions(int statements) {
+        StringBuilder source = new StringBuilder();
+        source.append("int a, b, c, d;\nint values[8];\nint g(int x, int y) {\n    return x + y;\n}\nint main() {\n");
+        for (int i = 0; i < statements; i++) {
+            int k = i % 8;
+            source.append(switch (i % 4) {
+                case 0 -> "    a = a + b * " + k + " - c / 2 + d % 3 - values[" + k + "] + 1;\n";
+                case 1 -> "    values[" + k + "] = (a + 1) * (b - 2) ^ 2 - g(a, b * " + k + ") + c * d;\n";
+                case 2 -> "    b = a < b && c >= d || a + b * c == d - " + k + " && !(a != b);\n";
+                default -> "    c = -a + b - c + d - a * b * c * d / (" + k + " + 1) + values[1] - values[2];\n";
+            });
+        }
+        source.append("    return a;\n}\n");
+        return source.toString();
+    }
+}
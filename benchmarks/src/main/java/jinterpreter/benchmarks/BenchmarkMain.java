@@ -0,0 +1,22 @@
+package jinterpreter.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// The JMH command line, always with the GC profiler so that every result comes with its
+// allocation rate (gc.alloc.rate.norm is bytes allocated per operation).
+//
+//   java -jar benchmarks.jar [JMH options, e.g. ParserBenchmark -p shape=nested]
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,70 @@
+package jinterpreter.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// A program of one loop run by each engine, in runs and loop iterations per second. A run
+// resolves and builds the program before the loop, which allocates the same for any number
+// of iterations, so an engine that allocates nothing in the loop has the same
+// gc.alloc.rate.norm at 1000 and at 100000 iterations.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ExecutionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Loop {
+
+        @Param({"tree", "ast", "vm", "jit"})
+        public String engine;
+
+        @Param({"ints", "floats", "mixed", "calls", "arrays"})
+        public String loop;
+
+        @Param({"1000", "100000"})
+        public int iterations;
+
+        Object executor; // ExecutionEngine
+        Object tree;     // ParseTreeNode
+
+        @Setup(Level.Trial)
+        public void setUp() throws Throwable {
+            executor = Jinterpreter.engine(engine, new PrintStream(OutputStream.nullOutputStream()));
+            tree = Jinterpreter.parse(Jinterpreter.scanTokens(Loops.valueOf(loop).generate(iterations).toCharArray()));
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Executed {
+        public long iterations;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            iterations = 0;
+        }
+    }
+
+    @Benchmark
+    public void run(Loop loop, Executed executed) throws Throwable {
+        Jinterpreter.run(loop.executor, loop.tree);
+        executed.iterations += loop.iterations;
+    }
+}
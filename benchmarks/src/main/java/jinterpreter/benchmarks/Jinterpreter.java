@@ -0,0 +1,170 @@
+package jinterpreter.benchmarks;
+
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.List;
+
+// The interpreter's classes are in the unnamed package, which code in a package cannot name
+// and JMH does not accept benchmarks in, so they are called through method handles with their
+// types erased to Object. The handles are constants, which the JIT inlines like direct calls.
+final class Jinterpreter {
+
+    private static final MethodHandle NEW_SCANNER;        // new Scanner(String)
+    private static final MethodHandle SCAN;               // Scanner.scan()
+    private static final MethodHandle NEW_ARRAY_SCANNER;  // new ArrayScanner(char[], int)
+    private static final MethodHandle SCAN_TOKENS;        // ArrayScanner.scanTokens()
+    private static final MethodHandle TOKEN_COUNT;        // TokenBuffer.size()
+    private static final MethodHandle TOKEN_STREAM;       // TokenStream.of(TokenBuffer)
+    private static final MethodHandle NEW_PARSER;         // new Parser(TokenStream, boolean quiet)
+    private static final MethodHandle PARSE;              // Parser.parse()
+    private static final MethodHandle NEW_LEVEL_PARSER;   // new LevelParser(TokenStream, boolean quiet)
+    private static final MethodHandle ARENA;              // TreeArena.of(ParseTreeNode)
+    private static final MethodHandle ARENA_SIZE;         // TreeArena.size()
+    private static final MethodHandle NEW_TREE_PRINTER;   // new ParseTreePrinter(String)
+    private static final MethodHandle PRINT_TREE;         // ParseTreePrinter.print(ParseTreeNode)
+    private static final MethodHandle NEW_SYMBOL_PRINTER; // new ScannerSymbolTablePrinter(String)
+    private static final MethodHandle WRITE_SYMBOLS;      // ScannerSymbolTablePrinter.write(TokenBuffer)
+    private static final MethodHandle NEW_EVALUATOR;      // new Evaluator(PrintStream, Reader)
+    private static final MethodHandle NEW_AST_INTERPRETER; // new AstInterpreter(PrintStream, Reader)
+    private static final MethodHandle NEW_VM;             // new BytecodeVm(PrintStream, Reader, int jitThreshold)
+    private static final MethodHandle RUN;                // ExecutionEngine.run(ParseTreeNode)
+    private static final int JIT_THRESHOLD;               // BytecodeVm.JIT_THRESHOLD
+
+    static {
+        try {
+            Class<?> scanner = type("Scanner");
+            Class<?> arrayScanner = type("ArrayScanner");
+            Class<?> tokenBuffer = type("TokenBuffer");
+            Class<?> tokenStream = type("TokenStream");
+            Class<?> parser = type("Parser");
+            Class<?> node = type("ParseTreeNode");
+            Class<?> arena = type("TreeArena");
+            Class<?> treePrinter = type("ParseTreePrinter");
+            Class<?> symbolPrinter = type("ScannerSymbolTablePrinter");
+            Class<?> engine = type("ExecutionEngine");
+            Class<?> vm = type("BytecodeVm");
+            MethodType streams = MethodType.methodType(void.class, PrintStream.class, Reader.class);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            // the quiet constructor is package-private
+            MethodHandles.Lookup parserLookup = MethodHandles.privateLookupIn(parser, lookup);
+
+            NEW_SCANNER = erase(lookup.findConstructor(scanner, MethodType.methodType(void.class, String.class)));
+            SCAN = erase(lookup.findVirtual(scanner, "scan", MethodType.methodType(List.class)));
+            NEW_ARRAY_SCANNER = erase(lookup.findConstructor(arrayScanner,
+                    MethodType.methodType(void.class, char[].class, int.class)));
+            SCAN_TOKENS = erase(lookup.findVirtual(arrayScanner, "scanTokens", MethodType.methodType(tokenBuffer)));
+            TOKEN_COUNT = erase(lookup.findVirtual(tokenBuffer, "size", MethodType.methodType(int.class)));
+            TOKEN_STREAM = erase(lookup.findStatic(tokenStream, "of", MethodType.methodType(tokenStream, tokenBuffer)));
+            NEW_PARSER = erase(parserLookup.findConstructor(parser,
+                    MethodType.methodType(void.class, tokenStream, boolean.class)));
+            PARSE = erase(lookup.findVirtual(parser, "parse", MethodType.methodType(node)));
+            Class<?> levelParser = type("LevelParser");
+            NEW_LEVEL_PARSER = erase(MethodHandles.privateLookupIn(levelParser, lookup).findConstructor(levelParser,
+                    MethodType.methodType(void.class, tokenStream, boolean.class)));
+            ARENA = erase(lookup.findStatic(arena, "of", MethodType.methodType(arena, node)));
+            ARENA_SIZE = erase(lookup.findVirtual(arena, "size", MethodType.methodType(int.class)));
+            NEW_TREE_PRINTER = erase(lookup.findConstructor(treePrinter, MethodType.methodType(void.class, String.class)));
+            PRINT_TREE = erase(lookup.findVirtual(treePrinter, "print", MethodType.methodType(void.class, node)));
+            NEW_SYMBOL_PRINTER = erase(lookup.findConstructor(symbolPrinter,
+                    MethodType.methodType(void.class, String.class)));
+            WRITE_SYMBOLS = erase(lookup.findVirtual(symbolPrinter, "write",
+                    MethodType.methodType(void.class, tokenBuffer)));
+            NEW_EVALUATOR = erase(lookup.findConstructor(type("Evaluator"), streams));
+            NEW_AST_INTERPRETER = erase(lookup.findConstructor(type("AstInterpreter"), streams));
+            NEW_VM = erase(lookup.findConstructor(vm, streams.appendParameterTypes(int.class)));
+            RUN = erase(lookup.findVirtual(engine, "run", MethodType.methodType(void.class, node)));
+            JIT_THRESHOLD = (int) lookup.findStaticGetter(vm, "JIT_THRESHOLD", int.class).invokeExact();
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Jinterpreter() {
+    }
+
+    // Tokens of the file from the reader scanner, as a List<Token>
+    static List<?> scan(Path file) throws Throwable {
+        Object scanner = NEW_SCANNER.invokeExact(file.toString());
+        return (List<?>) SCAN.invokeExact(scanner);
+    }
+
+    // Tokens of the source from the array scanner behind --scanner=mapped, as a TokenBuffer
+    static Object scanTokens(char[] source) throws Throwable {
+        Object scanner = NEW_ARRAY_SCANNER.invokeExact(source, source.length);
+        return SCAN_TOKENS.invokeExact(scanner);
+    }
+
+    static int tokenCount(Object tokens) throws Throwable {
+        return (int) TOKEN_COUNT.invokeExact(tokens);
+    }
+
+    // Parse tree of a TokenBuffer, without the "Parsing successful!" message
+    static Object parse(Object tokens) throws Throwable {
+        Object stream = TOKEN_STREAM.invokeExact(tokens);
+        Object parser = NEW_PARSER.invokeExact(stream, true);
+        return PARSE.invokeExact(parser);
+    }
+
+    // The same through LevelParser, the method per grammar level Parser replaced
+    static Object parseByLevel(Object tokens) throws Throwable {
+        Object stream = TOKEN_STREAM.invokeExact(tokens);
+        Object parser = NEW_LEVEL_PARSER.invokeExact(stream, true);
+        return PARSE.invokeExact(parser);
+    }
+
+    static int nodeCount(Object tree) throws Throwable {
+        Object arena = ARENA.invokeExact(tree);
+        return (int) ARENA_SIZE.invokeExact(arena);
+    }
+
+    static void printTree(Object tree, Path output) throws Throwable {
+        Object printer = NEW_TREE_PRINTER.invokeExact(output.toString());
+        PRINT_TREE.invokeExact(printer, tree);
+    }
+
+    static void writeSymbols(Object tokens, Path output) throws Throwable {
+        Object printer = NEW_SYMBOL_PRINTER.invokeExact(output.toString());
+        WRITE_SYMBOLS.invokeExact(printer, tokens);
+    }
+
+    // The engine --engine=<name> selects, writing to out and reading an empty input
+    static Object engine(String name, PrintStream out) throws Throwable {
+        Reader in = Reader.nullReader();
+        return switch (name) {
+            case "tree" -> NEW_EVALUATOR.invokeExact(out, in);
+            case "ast" -> NEW_AST_INTERPRETER.invokeExact(out, in);
+            case "vm" -> NEW_VM.invokeExact(out, in, 0);
+            case "jit" -> NEW_VM.invokeExact(out, in, JIT_THRESHOLD);
+            default -> throw new IllegalArgumentException("Unknown engine " + name);
+        };
+    }
+
+    // Resolves, builds and runs a parse tree; the tree can be run again
+    static void run(Object engine, Object tree) throws Throwable {
+        RUN.invokeExact(engine, tree);
+    }
+
+    private static Class<?> type(String name) throws ClassNotFoundException {
+        return Class.forName(name, true, Jinterpreter.class.getClassLoader());
+    }
+
+    // Every type of the interpreter's own, parameter or return, as Object
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            Class<?> parameter = type.parameterType(i);
+            if (!parameter.isPrimitive() && parameter != String.class && parameter != char[].class
+                    && parameter != PrintStream.class && parameter != Reader.class) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (!type.returnType().isPrimitive() && type.returnType() != List.class) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+}
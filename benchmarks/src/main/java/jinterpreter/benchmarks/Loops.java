@@ -0,0 +1,102 @@
+package jinterpreter.benchmarks;
+
+// Generated .core programs that spend their time in one for loop of the given number of
+// iterations, over variables of one or all four types:
+//
+//   ints    int arithmetic and comparisons
+//   floats  float arithmetic, with int operands converted
+//   mixed   char and bool variables updated and added to an int
+//   calls   an int and a float function called every iteration
+//   arrays  elements of an initialized int table and of a float array off the heap
+enum Loops {
+    ints("""
+            int main() {
+                int i, sum = 0;
+                for (i = 0; i < %d; i = i + 1) {
+                    sum = sum + i * 3 %% 7;
+                    if (sum > 1000000) {
+                        sum = sum - 1000000;
+                    }
+                }
+                printf("%%d", sum);
+                return 0;
+            }
+            """),
+
+    floats("""
+            int main() {
+                int i;
+                float x = 0.5, y = 0.0;
+                for (i = 0; i < %d; i = i + 1) {
+                    x = x * 0.5 + 0.25;
+                    y = y + i / 2;
+                }
+                printf("%%f %%f", x, y);
+                return 0;
+            }
+            """),
+
+    mixed("""
+            int main() {
+                int i, n = 0;
+                char c = 'a';
+                bool odd = false;
+                for (i = 0; i < %d; i = i + 1) {
+                    c = c + 1;
+                    odd = !odd;
+                    n = n + c + odd;
+                    if (c == 'z') {
+                        c = 'a';
+                    }
+                }
+                printf("%%d %%c", n, c);
+                return 0;
+            }
+            """),
+
+    calls("""
+            int square(int v) {
+                return v * v %% 1000;
+            }
+            float half(float v) {
+                return v * 0.5;
+            }
+            int main() {
+                int i, sum = 0;
+                float x = 1.0;
+                for (i = 0; i < %d; i = i + 1) {
+                    sum = sum + square(i);
+                    x = half(x) + 1.0;
+                }
+                printf("%%d %%f", sum, x);
+                return 0;
+            }
+            """),
+
+    arrays("""
+            int main() {
+                int i;
+                int table[8] = {3, 1, 4, 1, 5, 9, 2, 6};
+                float big[2000000];
+                for (i = 0; i < %d; i = i + 1) {
+                    table[0] = table[0] + table[7] %% 5;
+                    big[1999999] = big[1999999] + table[3] * 0.5;
+                    if (table[0] > 1000) {
+                        table[0] = table[0] - 1000;
+                    }
+                }
+                printf("%%d %%f", table[0], big[1999999]);
+                return 0;
+            }
+            """);
+
+    private final String format;
+
+    Loops(String format) {
+        this.format = format;
+    }
+
+    String generate(int iterations) {
+        return String.format(format, iterations);
+    }
+}
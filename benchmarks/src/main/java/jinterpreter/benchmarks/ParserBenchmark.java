@@ -0,0 +1,57 @@
+package jinterpreter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parser.parse() over the scanned tokens of the program, in parse tree nodes and tokens per
+// second, and the same through LevelParser, the method per grammar level that precedence
+// climbing replaced. Each runs in a fork of its own, so neither parser class is loaded while
+// the other is measured.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ParserBenchmark {
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Parsed {
+        public long nodes;
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+            tokens = 0;
+        }
+    }
+
+    @Benchmark
+    public Object parse(Program program, Parsed parsed) throws Throwable {
+        Object tree = Jinterpreter.parse(program.tokens);
+        parsed.nodes += program.nodeCount;
+        parsed.tokens += program.tokenCount;
+        return tree;
+    }
+
+    @Benchmark
+    public Object parseByLevel(Program program, Parsed parsed) throws Throwable {
+        Object tree = Jinterpreter.parseByLevel(program.tokens);
+        parsed.nodes += program.nodeCount;
+        parsed.tokens += program.tokenCount;
+        return tree;
+    }
+}
@@ -0,0 +1,55 @@
+package jinterpreter.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// ParseTreePrinter.print of the parse tree and ScannerSymbolTablePrinter.write of the tokens,
+// each to a file in the program's directory, in bytes written and nodes or tokens per second.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PrinterBenchmark {
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Printed {
+        public long bytes;
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            rows = 0;
+        }
+    }
+
+    // rows are tree nodes
+    @Benchmark
+    public void parseTree(Program program, Printed printed) throws Throwable {
+        Jinterpreter.printTree(program.tree, program.treeOutput());
+        printed.bytes += program.treeBytes;
+        printed.rows += program.nodeCount;
+    }
+
+    // rows are tokens
+    @Benchmark
+    public void symbolTable(Program program, Printed printed) throws Throwable {
+        Jinterpreter.writeSymbols(program.tokens, program.symbolOutput());
+        printed.bytes += program.symbolBytes;
+        printed.rows += program.tokenCount;
+    }
+}
@@ -0,0 +1,75 @@
+package jinterpreter.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// The program a benchmark works on, generated once per trial, with its tokens, its parse tree
+// and the sizes the counters add up. It is written to a temporary directory, where the
+// printers write their output as well.
+@State(Scope.Benchmark)
+public class Program {
+
+    @Param({"expressions", "declarations", "nested"})
+    public String shape;
+
+    // tokens, about
+    @Param({"10000", "100000"})
+    public int size;
+
+    Path directory;
+    Path file;
+    char[] source;
+    long bytes;
+    Object tokens;  // TokenBuffer
+    int tokenCount;
+    Object tree;    // ParseTreeNode
+    int nodeCount;
+    long treeBytes;
+    long symbolBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        String text = Programs.valueOf(shape).generate(size);
+        directory = Files.createTempDirectory("jinterpreter-benchmark");
+        file = directory.resolve(shape + ".core");
+        Files.writeString(file, text);
+        source = text.toCharArray();
+        bytes = text.getBytes(StandardCharsets.UTF_8).length;
+        tokens = Jinterpreter.scanTokens(source);
+        tokenCount = Jinterpreter.tokenCount(tokens);
+        tree = Jinterpreter.parse(tokens);
+        nodeCount = Jinterpreter.nodeCount(tree);
+        Jinterpreter.printTree(tree, treeOutput());
+        treeBytes = Files.size(treeOutput());
+        Jinterpreter.writeSymbols(tokens, symbolOutput());
+        symbolBytes = Files.size(symbolOutput());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    Path treeOutput() {
+        return directory.resolve("parse_tree_output.ebnf");
+    }
+
+    Path symbolOutput() {
+        return directory.resolve("symbol_table.txt");
+    }
+}
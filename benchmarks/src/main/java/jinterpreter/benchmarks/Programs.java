@@ -0,0 +1,95 @@
+package jinterpreter.benchmarks;
+
+// Generated .core programs of three shapes, made of as many repeated units as give about the
+// number of tokens asked for:
+//
+//   expressions   statements whose right sides mix every operator level, in one function
+//   declarations  global variables, arrays and prototypes, with a few short functions
+//   nested        functions of if, while and for blocks nested DEPTH deep around an
+//                 expression parenthesized as deep
+enum Programs {
+    expressions(29) {
+        @Override
+        String units(int count) {
+            StringBuilder source = new StringBuilder();
+            source.append("int a, b, c, d;\nint values[8];\nint g(int x, int y) {\n    return x + y;\n}\nint main() {\n");
+            for (int i = 0; i < count; i++) {
+                int k = i % 8;
+                source.append(switch (i % 4) {
+                    case 0 -> "    a = a + b * " + k + " - c / 2 + d % 3 - values[" + k + "] + 1;\n";
+                    case 1 -> "    values[" + k + "] = (a + 1) * (b - 2) ^ 2 - g(a, b * " + k + ") + c * d;\n";
+                    case 2 -> "    b = a < b && c >= d || a + b * c == d - " + k + " && !(a != b);\n";
+                    default -> "    c = -a + b - c + d - a * b * c * d / (" + k + " + 1) + values[1] - values[2];\n";
+                });
+            }
+            source.append("    return a;\n}\n");
+            return source.toString();
+        }
+    },
+
+    declarations(54) {
+        @Override
+        String units(int count) {
+            StringBuilder source = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                source.append("int count").append(i).append(", limit").append(i).append(" = ").append(i).append(";\n")
+                        .append("float rate").append(i).append(" = ").append(i).append(".25;\n")
+                        .append("char mark").append(i).append(" = 'x';\n")
+                        .append("bool seen").append(i).append(" = true;\n")
+                        .append("int table").append(i).append("[4] = {1, 2, 3, ").append(i).append("};\n")
+                        .append("int check").append(i).append("(int n, float x, char c);\n");
+                if (i % 10 == 9) {
+                    source.append("int check").append(i).append("(int n, float x, char c) {\n")
+                            .append("    int local = n;\n    float scaled = x * 2.0;\n    return local;\n}\n");
+                }
+            }
+            source.append("int main() {\n    return 0;\n}\n");
+            return source.toString();
+        }
+    },
+
+    nested(506) {
+        @Override
+        String units(int count) {
+            StringBuilder source = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                source.append("int nest").append(i).append("(int n) {\n    int i, x = 0;\n");
+                String indent = "    ";
+                for (int level = 0; level < DEPTH; level++) {
+                    source.append(indent).append(switch (level % 3) {
+                        case 0 -> "if (x < n) {\n";
+                        case 1 -> "while (x > " + level + ") {\n";
+                        default -> "for (i = 0; i < n; i = i + 1) {\n";
+                    });
+                    indent += "    ";
+                }
+                source.append(indent).append("x = ").append("(".repeat(DEPTH)).append('x');
+                for (int level = 0; level < DEPTH; level++) {
+                    source.append(" + ").append(level).append(')');
+                }
+                source.append(";\n");
+                for (int level = 0; level < DEPTH; level++) {
+                    indent = indent.substring(4);
+                    source.append(indent).append("}\n");
+                }
+                source.append("    return x;\n}\n");
+            }
+            source.append("int main() {\n    return nest0(1);\n}\n");
+            return source.toString();
+        }
+    };
+
+    static final int DEPTH = 32;
+
+    private final int tokensPerUnit;
+
+    Programs(int tokensPerUnit) {
+        this.tokensPerUnit = tokensPerUnit;
+    }
+
+    String generate(int tokens) {
+        return units(Math.max(1, tokens / tokensPerUnit));
+    }
+
+    abstract String units(int count);
+}
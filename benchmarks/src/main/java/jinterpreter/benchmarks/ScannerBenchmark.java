@@ -0,0 +1,56 @@
+package jinterpreter.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Scanner.scan() reading the program file through a BufferedReader, and the ArrayScanner of
+// --scanner=mapped over the source already in memory, in tokens and bytes per second.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ScannerBenchmark {
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Scanned {
+        public long tokens;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public List<?> reader(Program program, Scanned scanned) throws Throwable {
+        List<?> tokens = Jinterpreter.scan(program.file);
+        scanned.tokens += tokens.size();
+        scanned.bytes += program.bytes;
+        return tokens;
+    }
+
+    @Benchmark
+    public Object array(Program program, Scanned scanned) throws Throwable {
+        Object tokens = Jinterpreter.scanTokens(program.source);
+        scanned.tokens += program.tokenCount;
+        scanned.bytes += program.bytes;
+        return tokens;
+    }
+}
@@ -0,0 +1,442 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Scanner over the whole source held in one char[]. Lookahead is index arithmetic and ASCII
+// characters are classified with a lookup table; anything outside ASCII falls back to the
+// Character methods Scanner uses, so both produce exactly the same tokens and errors. Tokens
+// are written to a TokenBuffer as source ranges rather than allocated one by one.
+public class ArrayScanner {
+
+    private static final byte WHITESPACE = 1;
+    private static final byte DIGIT = 2;
+    private static final byte IDENTIFIER_START = 4;
+    private static final byte IDENTIFIER_PART = 8;
+
+    private static final byte[] ASCII = new byte[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            byte flags = 0;
+            if (Character.isWhitespace(c)) {
+                flags |= WHITESPACE;
+            }
+            if (Character.isDigit(c)) {
+                flags |= DIGIT;
+            }
+            if (Character.isLetter(c) || c == '_') {
+                flags |= IDENTIFIER_START;
+            }
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                flags |= IDENTIFIER_PART;
+            }
+            ASCII[c] = flags;
+        }
+    }
+
+    // Below this size per worker, splitting costs more than it saves
+    private static final int MIN_CHUNK = 1 << 20;
+
+    private final char[] source;
+    private final int length;
+    private int limit; // no token starts at or after this position
+    // Where scanning stopped, read by IncrementalParser to line a rescan up with the old tokens
+    boolean ended;
+    int position = -1;
+    int lineNumber = 1;
+    int columnNumber;
+    private char currentChar;
+    private int tokenStartLine;
+    private int tokenStartColumn;
+    private final TokenBuffer tokens;
+
+    public ArrayScanner(char[] source, int length) {
+        this(source, length, 0, length);
+    }
+
+    // Scans from start, which must begin a line, counting lines from 1 again
+    ArrayScanner(char[] source, int length, int start, int limit) {
+        this.source = source;
+        this.length = length;
+        this.limit = limit;
+        this.position = start - 1;
+        this.tokens = new TokenBuffer(source, (limit - start) / 3);
+        readNextChar();
+    }
+
+    // Continues where from stopped, with absolute line numbers, up to limit
+    private ArrayScanner(ArrayScanner from, int lineOffset, int limit) {
+        this(from.source, from.length, from.position, from.lineNumber + lineOffset, from.columnNumber, limit);
+    }
+
+    // Scans up to limit from position, where a token started at the given line and column.
+    // The character there is read again, since an edit may have replaced it with a newline.
+    ArrayScanner(char[] source, int length, int position, int line, int column, int limit) {
+        this(source, length, position, line, column, limit, new Identifiers());
+    }
+
+    // The same, interning identifiers into a table shared with other buffers
+    ArrayScanner(char[] source, int length, int position, int line, int column, int limit, Identifiers identifiers) {
+        this.source = source;
+        this.length = length;
+        this.limit = limit;
+        this.position = position - 1;
+        this.lineNumber = line;
+        this.columnNumber = column - 1;
+        this.tokens = new TokenBuffer(source, (limit - position) / 3, identifiers);
+        readNextChar();
+    }
+
+    // Maps the file and decodes it as UTF-8 straight into the scanner's char[]
+    public static ArrayScanner open(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + filename);
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(bytes);
+            return new ArrayScanner(chars.array(), chars.limit());
+        }
+    }
+
+    private void readNextChar() {
+        if (position + 1 >= length) {
+            position = length;
+            currentChar = '\0';
+            return;
+        }
+        currentChar = source[++position];
+        if (currentChar == '\n') {
+            lineNumber++;
+            columnNumber = 0;
+        } else {
+            columnNumber++;
+        }
+    }
+
+    private char peek() {
+        return position + 1 < length ? source[position + 1] : '\0';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c < 128 ? (ASCII[c] & WHITESPACE) != 0 : Character.isWhitespace(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c < 128 ? (ASCII[c] & DIGIT) != 0 : Character.isDigit(c);
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return c < 128 ? (ASCII[c] & IDENTIFIER_START) != 0 : Character.isLetter(c);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return c < 128 ? (ASCII[c] & IDENTIFIER_PART) != 0 : Character.isLetterOrDigit(c);
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (isWhitespace(currentChar) || currentChar == '/') {
+            if (currentChar == '/') {
+                if (peek() != '/') {
+                    return; // It's a divide operator
+                }
+                while (currentChar != '\n' && currentChar != '\0') {
+                    readNextChar();
+                }
+            } else {
+                readNextChar();
+            }
+        }
+    }
+
+    public List<Token> scan() throws ScannerException {
+        return scanTokens().toList();
+    }
+
+    // Scans into columns; a String is only created for the first occurrence of each identifier
+    public TokenBuffer scanTokens() throws ScannerException {
+        scanRange();
+        return tokens;
+    }
+
+    // Scans tokens starting before limit; the last one may extend past it. Ends with the EOF
+    // token when the input (or a NUL character) is reached first.
+    TokenBuffer scanRange() throws ScannerException {
+        while (true) {
+            skipWhitespaceAndComments();
+            if (currentChar == '\0') {
+                tokens.add(Token.TokenType.TOKEN_EOF, length, length, lineNumber, 0, 0);
+                ended = true;
+                return tokens;
+            }
+            if (position >= limit) {
+                return tokens;
+            }
+            tokenStartLine = lineNumber;
+            tokenStartColumn = columnNumber;
+            scanToken();
+        }
+    }
+
+    // Same tokens as scanTokens, scanned in chunks on the pool's workers. Chunks start after a
+    // newline, but that newline may still be inside a string or character literal, so each
+    // chunk is scanned speculatively: it is kept only if the scanner of the text before it
+    // stops exactly where the chunk's first token starts, which also lines up their state.
+    // Otherwise, or if the chunk failed, that text is scanned again from where the previous
+    // scanner stopped, which is also how the first error in source order gets reported.
+    public TokenBuffer scanParallel(ForkJoinPool pool) throws ScannerException {
+        return scanParallel(pool, MIN_CHUNK);
+    }
+
+    TokenBuffer scanParallel(ForkJoinPool pool, int minChunk) throws ScannerException {
+        int count = Math.min(pool.getParallelism() * 4, length / minChunk);
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i < count; i++) {
+            int end = Math.max(start, (int) ((long) length * i / count));
+            while (end < length && source[end] != '\n') {
+                end++;
+            }
+            if (end + 1 >= length) {
+                break;
+            }
+            chunks.add(new Chunk(this, start, end + 1));
+            start = end + 1;
+        }
+        if (chunks.isEmpty()) {
+            return scanTokens();
+        }
+        chunks.add(new Chunk(this, start, length));
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(chunks)));
+
+        if (chunks.get(0).error != null) {
+            throw chunks.get(0).error;
+        }
+        ArrayScanner previous = this;
+        int previousOffset = 0;
+        for (Chunk chunk : chunks.subList(1, chunks.size())) {
+            if (previous.ended) {
+                break;
+            }
+            ArrayScanner next;
+            int nextOffset;
+            if (chunk.error == null && previous.position == chunk.firstPosition) {
+                next = chunk.scanner;
+                nextOffset = previous.lineNumber + previousOffset - chunk.firstLine;
+            } else {
+                next = new ArrayScanner(previous, previousOffset, chunk.limit);
+                next.scanRange();
+                nextOffset = 0;
+            }
+            if (previous != this) {
+                tokens.append(previous.tokens, previousOffset);
+            }
+            previous = next;
+            previousOffset = nextOffset;
+        }
+        if (previous != this) {
+            tokens.append(previous.tokens, previousOffset);
+        }
+        return tokens;
+    }
+
+    private static final class Chunk extends RecursiveAction {
+        final ArrayScanner scanner;
+        final int limit;
+        int firstPosition;
+        int firstLine;
+        ScannerException error;
+
+        Chunk(ArrayScanner whole, int start, int limit) {
+            if (start == 0) {
+                whole.limit = limit;
+                this.scanner = whole;
+            } else {
+                this.scanner = new ArrayScanner(whole.source, whole.length, start, limit);
+            }
+            this.limit = limit;
+        }
+
+        @Override
+        protected void compute() {
+            scanner.skipWhitespaceAndComments();
+            firstPosition = scanner.position;
+            firstLine = scanner.lineNumber;
+            try {
+                scanner.scanRange();
+            } catch (ScannerException e) {
+                error = e;
+            }
+        }
+    }
+
+    private void scanToken() throws ScannerException {
+        if (isDigit(currentChar) || (currentChar == '.' && isDigit(peek()))) {
+            scanNumber();
+        } else if (isIdentifierStart(currentChar)) {
+            scanIdentifierOrKeyword();
+        } else if (currentChar == '"') {
+            scanString();
+        } else if (currentChar == '\'') {
+            scanCharacterLiteral();
+        } else {
+            scanSymbol();
+        }
+    }
+
+    private void add(Token.TokenType type, int start, int end, long value) {
+        tokens.add(type, start, end, tokenStartLine, tokenStartColumn, value);
+    }
+
+    private void scanNumber() throws ScannerException {
+        int start = position;
+        boolean hasDecimal = false;
+
+        if (currentChar == '.') {
+            hasDecimal = true;
+            readNextChar();
+        }
+        while (isDigit(currentChar) || currentChar == '\'' || currentChar == '`' || currentChar == '.') {
+            if (currentChar == '.') {
+                if (hasDecimal) {
+                    break; // Second decimal - invalid
+                }
+                hasDecimal = true;
+            } else if (currentChar == '\'' || currentChar == '`') {
+                readNextChar();
+                int digits = 0;
+                while (digits < 3 && isDigit(currentChar)) {
+                    readNextChar();
+                    digits++;
+                }
+                if (digits != 3) {
+                    throw new ScannerException("Invalid noise separators", lineNumber, columnNumber);
+                }
+                continue;
+            }
+            readNextChar();
+        }
+        add(hasDecimal ? Token.TokenType.FLOAT_LITERAL : Token.TokenType.INTEGER_LITERAL, start, position, 0);
+    }
+
+    private void scanIdentifierOrKeyword() throws ScannerException {
+        int start = position;
+        while (isIdentifierPart(currentChar)) {
+            readNextChar();
+        }
+        if (position - start > 31) {
+            throw new ScannerException("Invalid identifier: exceeds maximum length", lineNumber, columnNumber);
+        }
+        add(Keywords.lookup(source, start, position), start, position, 0);
+    }
+
+    private void scanString() throws ScannerException {
+        readNextChar();
+        int start = position;
+
+        while (currentChar != '"' && currentChar != '\0') {
+            if (currentChar == '\\') {
+                readNextChar();
+                switch (currentChar) {
+                    case 'n', 't', 'r', '"', '\\' -> {
+                    }
+                    default -> throw new ScannerException("Invalid escape sequence", lineNumber, columnNumber);
+                }
+            }
+            readNextChar();
+        }
+
+        if (currentChar != '"') {
+            throw new ScannerException("Unterminated string", lineNumber, columnNumber);
+        }
+        add(Token.TokenType.STRING, start, position, 0);
+        readNextChar();
+    }
+
+    private void scanCharacterLiteral() throws ScannerException {
+        int start = position;
+        readNextChar();
+
+        char charValue;
+        if (currentChar == '\\') {
+            readNextChar();
+            charValue = switch (currentChar) {
+                case 'n' -> '\n';
+                case 't' -> '\t';
+                case 'r' -> '\r';
+                case '\'' -> '\'';
+                case '\\' -> '\\';
+                default -> throw new ScannerException("Invalid escape sequence in character literal", lineNumber, columnNumber);
+            };
+        } else if (currentChar == '\'' || currentChar == '\0') {
+            throw new ScannerException("Invalid character literal", lineNumber, columnNumber);
+        } else {
+            charValue = currentChar;
+        }
+        readNextChar();
+
+        if (currentChar != '\'') {
+            throw new ScannerException("Unterminated character literal", lineNumber, columnNumber);
+        }
+
+        readNextChar();
+        add(Token.TokenType.CHARACTER_LITERAL, start, position, charValue);
+    }
+
+    private void scanSymbol() throws ScannerException {
+        int start = position;
+        Token.TokenType type = switch (currentChar) {
+            case '(' -> Token.TokenType.LEFT_PARENTHESIS;
+            case ')' -> Token.TokenType.RIGHT_PARENTHESIS;
+            case '[' -> Token.TokenType.LEFT_BRACKET;
+            case ']' -> Token.TokenType.RIGHT_BRACKET;
+            case '{' -> Token.TokenType.LEFT_BRACE;
+            case '}' -> Token.TokenType.RIGHT_BRACE;
+            case ',' -> Token.TokenType.COMMA;
+            case ';' -> Token.TokenType.SEMICOLON;
+            case '+' -> Token.TokenType.PLUS;
+            case '-' -> Token.TokenType.MINUS;
+            case '*' -> Token.TokenType.MULTIPLY;
+            case '^' -> Token.TokenType.EXPONENT;
+            case '%' -> Token.TokenType.MODULO;
+            case '/' -> Token.TokenType.DIVIDE;
+            case '=' -> twoCharacter('=', Token.TokenType.EQUAL, Token.TokenType.ASSIGN);
+            case '>' -> twoCharacter('=', Token.TokenType.GREATER_EQUAL, Token.TokenType.GREATER);
+            case '<' -> twoCharacter('=', Token.TokenType.LESS_EQUAL, Token.TokenType.LESS);
+            case '!' -> twoCharacter('=', Token.TokenType.NOT_EQUAL, Token.TokenType.NOT);
+            case '&' -> twoCharacter('&', Token.TokenType.AND, Token.TokenType.AMPERSAND);
+            case '|' -> {
+                if (peek() != '|') {
+                    throw new ScannerException("Invalid character '|'", lineNumber, columnNumber);
+                }
+                readNextChar();
+                yield Token.TokenType.OR;
+            }
+            default -> throw new ScannerException("Invalid character: " + currentChar, lineNumber, columnNumber);
+        };
+        readNextChar();
+        add(type, start, position, 0);
+    }
+
+    private Token.TokenType twoCharacter(char second, Token.TokenType pair, Token.TokenType single) {
+        if (peek() == second) {
+            readNextChar();
+            return pair;
+        }
+        return single;
+    }
+}
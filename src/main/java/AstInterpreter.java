@@ -0,0 +1,45 @@
+import java.io.PrintStream;
+import java.io.Reader;
+
+// Execution engine over the ExecNode tree built by NodeBuilder. Its operators are int or float
+// nodes wherever the Resolver typed their operands alike, so loops over int or float variables
+// run unboxed from their first iteration and never dispatch on operand types.
+public class AstInterpreter implements ExecutionEngine {
+
+    private final PrintStream out;
+    private final Reader in;
+    private CoreArrays arrays;
+
+    public AstInterpreter(PrintStream out, Reader in) {
+        this.out = out;
+        this.in = in;
+    }
+
+    @Override
+    public void run(ParseTreeNode program) throws EvaluationException {
+        Resolver resolver = new Resolver();
+        resolver.resolve(program);
+        NodeBuilder builder = new NodeBuilder(resolver, out, in);
+        arrays = builder.arrays;
+        ExecNode.Statement globalInit = builder.buildGlobals(program);
+        builder.buildFunctions();
+
+        try {
+            globalInit.execute(builder.globals);
+            Resolver.Function main = resolver.function("main");
+            if (main != null && main.body != null) {
+                if (main.parameterTypes.length != 0) {
+                    throw new EvaluationException("Function 'main' must not take parameters", main.position());
+                }
+                builder.targets[main.index].call(new ExecNode.Expression[0], null);
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    @Override
+    public CoreArrays arrays() {
+        return arrays;
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+// Translates many .core files in one JVM: each file is scanned, parsed and written out on a
+// virtual thread of its own, at most PARALLELISM at a time so that large files do not all hold
+// their trees at once. The outputs of dir/name.core go to <output>/dir/name/, where dir is
+// relative to the input directory, or for a file list to workingDirectory. A file that
+// fails is reported with its error and the rest of the batch carries on.
+public class Batch {
+
+    private static final int PARALLELISM = 2 * Runtime.getRuntime().availableProcessors();
+
+    // name as it was given, for reporting
+    private record Source(String name, Path path, Path output) {
+    }
+
+    // input is a directory searched for .core files or a file with one path per line; false
+    // if any file failed
+    static boolean run(Path input, Path output, Path workingDirectory, Interpreter.Options options) throws IOException {
+        List<Source> sources = Files.isDirectory(input) ? walk(input, output) : list(input, output, workingDirectory);
+        String[] errors = new String[sources.size()];
+        long[] sizes = new long[sources.size()];
+        Semaphore permits = new Semaphore(PARALLELISM);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < sources.size(); i++) {
+                int index = i;
+                Source source = sources.get(i);
+                executor.submit(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        errors[index] = translate(source, options);
+                        sizes[index] = Files.size(source.path());
+                    } catch (IOException e) {
+                        // the error already names the file
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failed = 0;
+        long bytes = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            if (errors[i] != null) {
+                failed++;
+                System.err.println(sources.get(i).name() + ": " + errors[i]);
+            }
+            bytes += sizes[i];
+        }
+        System.out.printf("%d files, %d failed, %.1f MB in %.2f s: %.0f files/s, %.1f MB/s%n", sources.size(), failed,
+                bytes / 1e6, seconds, sources.size() / seconds, bytes / 1e6 / seconds);
+        return failed == 0;
+    }
+
+    // The error of the file, or null
+    private static String translate(Source source, Interpreter.Options options) {
+        if (!source.path().toString().endsWith(".core")) {
+            return "Input file must have a .core extension.";
+        }
+        try {
+            Files.createDirectories(source.output());
+            Interpreter.translate(source.path().toString(), source.output(), options, true,
+                    new Metrics(source.path().toString(), false));
+            return null;
+        } catch (IOException | ScannerException | Parser.ParserException e) {
+            return "Error: " + e.getMessage();
+        } catch (RuntimeException | StackOverflowError e) {
+            return "Error: " + e;
+        }
+    }
+
+    private static List<Source> walk(Path directory, Path output) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(".core") && Files.isRegularFile(file))
+                    .sorted()
+                    .map(file -> new Source(file.toString(), file, outputOf(directory.relativize(file), output)))
+                    .toList();
+        }
+    }
+
+    private static List<Source> list(Path listing, Path output, Path workingDirectory) throws IOException {
+        workingDirectory = workingDirectory.toAbsolutePath();
+        List<Source> sources = new ArrayList<>();
+        for (String line : Files.readAllLines(listing)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String name = line.strip();
+            Path file = workingDirectory.resolve(name);
+            Path absolute = file.toAbsolutePath().normalize();
+            Path relative = absolute.startsWith(workingDirectory)
+                    ? workingDirectory.relativize(absolute)
+                    : absolute.getRoot().relativize(absolute);
+            sources.add(new Source(name, file, outputOf(relative, output)));
+        }
+        return sources;
+    }
+
+    private static Path outputOf(Path relative, Path output) {
+        String name = relative.toString();
+        return output.resolve(name.endsWith(".core") ? name.substring(0, name.length() - ".core".length()) : name);
+    }
+}
@@ -0,0 +1,151 @@
+// Instruction set of the register VM. Every instruction is an opcode followed by its int
+// operands in a Chunk's code array. Register operands are relative to the frame base;
+// jump targets are absolute code offsets.
+public final class Bytecode {
+
+    private Bytecode() {
+    }
+
+    public static final int MOVE = 0;       // a b        r[a] = r[b]
+
+    public static final int ADD_I = 1;      // a b c      r[a] = r[b] op r[c]
+    public static final int SUB_I = 2;
+    public static final int MUL_I = 3;
+    public static final int DIV_I = 4;
+    public static final int MOD_I = 5;
+    public static final int POW_I = 6;
+    public static final int ADD_F = 7;
+    public static final int SUB_F = 8;
+    public static final int MUL_F = 9;
+    public static final int DIV_F = 10;
+    public static final int MOD_F = 11;
+    public static final int POW_F = 12;
+
+    public static final int NEG_I = 13;     // a b        r[a] = op r[b]
+    public static final int NEG_F = 14;
+    public static final int NOT_I = 15;
+    public static final int NOT_F = 16;
+    public static final int I2F = 17;
+    public static final int F2I = 18;
+    public static final int I2C = 19;
+    public static final int I2B = 20;
+    public static final int F2B = 21;
+
+    public static final int LT_I = 22;      // a b c      r[a] = r[b] cmp r[c] ? 1 : 0
+    public static final int LE_I = 23;
+    public static final int GT_I = 24;
+    public static final int GE_I = 25;
+    public static final int EQ_I = 26;
+    public static final int NE_I = 27;
+    public static final int LT_F = 28;
+    public static final int LE_F = 29;
+    public static final int GT_F = 30;
+    public static final int GE_F = 31;
+    public static final int EQ_F = 32;
+    public static final int NE_F = 33;
+
+    public static final int JMP = 34;       // t
+    public static final int JMPF = 35;      // a t        if r[a] == 0 goto t
+    public static final int JMPT = 36;      // a t        if r[a] != 0 goto t
+
+    public static final int JLT_I = 37;     // a b t      if r[a] cmp r[b] goto t
+    public static final int JLE_I = 38;
+    public static final int JGT_I = 39;
+    public static final int JGE_I = 40;
+    public static final int JEQ_I = 41;
+    public static final int JNE_I = 42;
+    public static final int JLT_F = 43;
+    public static final int JLE_F = 44;
+    public static final int JGT_F = 45;
+    public static final int JGE_F = 46;
+    public static final int JEQ_F = 47;
+    public static final int JNE_F = 48;
+
+    public static final int GETG = 49;      // a g        r[a] = globals[g]
+    public static final int SETG = 50;      // g a        globals[g] = r[a]
+    public static final int GETGREF = 51;   // a g        refs[a] = globalRefs[g]
+    public static final int SETGREF = 52;   // g a        globalRefs[g] = refs[a]
+
+    // Array operands are statically in bounds: BytecodeCompiler emits an ERROR for any index
+    // outside an array's declared length instead
+    public static final int NEWARR = 53;    // a f n      refs[a] = new array of n ints (f == 0) or floats (f == 1)
+    public static final int ALOAD_I = 54;   // a b i      r[a] = refs[b][i] of a long[]
+    public static final int ALOAD_F = 55;   //                             of a double[]
+    public static final int ALOAD_M = 56;   //                             of a MemorySegment, raw bits
+    public static final int ASTORE_I = 57;  // a i b      refs[a][i] = r[b]
+    public static final int ASTORE_F = 58;
+    public static final int ASTORE_M = 59;
+    public static final int AFILL = 60;     // a s        copy the initializer values sites[s] into refs[a]
+
+    public static final int CALL = 61;      // a f b      r[a] = functions[f](r[b], r[b + 1], ...)
+    public static final int RET = 62;       // a          return r[a]
+
+    public static final int PRINT = 63;     // s b        printf(sites[s], r[b], r[b + 1], ...)
+    public static final int PRINTV = 64;    // s a        printf(r[a])
+    public static final int SCAN = 65;      // s a t      r[a] = next input word, goto t at end of input
+    public static final int ERROR = 66;     // s          throw sites[s]
+
+    private static final String[] NAMES = {
+            "MOVE",
+            "ADD_I", "SUB_I", "MUL_I", "DIV_I", "MOD_I", "POW_I",
+            "ADD_F", "SUB_F", "MUL_F", "DIV_F", "MOD_F", "POW_F",
+            "NEG_I", "NEG_F", "NOT_I", "NOT_F", "I2F", "F2I", "I2C", "I2B", "F2B",
+            "LT_I", "LE_I", "GT_I", "GE_I", "EQ_I", "NE_I",
+            "LT_F", "LE_F", "GT_F", "GE_F", "EQ_F", "NE_F",
+            "JMP", "JMPF", "JMPT",
+            "JLT_I", "JLE_I", "JGT_I", "JGE_I", "JEQ_I", "JNE_I",
+            "JLT_F", "JLE_F", "JGT_F", "JGE_F", "JEQ_F", "JNE_F",
+            "GETG", "SETG", "GETGREF", "SETGREF",
+            "NEWARR", "ALOAD_I", "ALOAD_F", "ALOAD_M", "ASTORE_I", "ASTORE_F", "ASTORE_M", "AFILL",
+            "CALL", "RET", "PRINT", "PRINTV", "SCAN", "ERROR"
+    };
+
+    private static final int[] LENGTHS = {
+            3,
+            4, 4, 4, 4, 4, 4,
+            4, 4, 4, 4, 4, 4,
+            3, 3, 3, 3, 3, 3, 3, 3, 3,
+            4, 4, 4, 4, 4, 4,
+            4, 4, 4, 4, 4, 4,
+            2, 3, 3,
+            4, 4, 4, 4, 4, 4,
+            4, 4, 4, 4, 4, 4,
+            3, 3, 3, 3,
+            4, 4, 4, 4, 4, 4, 4, 3,
+            4, 2, 3, 3, 4, 2
+    };
+
+    // Call sites of the I/O and error instructions, kept in Chunk.sites with the initializer
+    // values of AFILL
+    public record PrintSite(String format, CoreType[] types, Token token) {
+    }
+
+    public record ValueSite(CoreType type, String name, Token token) {
+    }
+
+    public record ErrorSite(String message, Token token) {
+    }
+
+    public static String name(int opcode) {
+        return NAMES[opcode];
+    }
+
+    // Number of ints taken by an instruction, opcode included
+    public static int length(int opcode) {
+        return LENGTHS[opcode];
+    }
+
+    // Offset of the jump target operand of a branch instruction, or 0 if it has none
+    public static int targetOperand(int opcode) {
+        if (opcode == JMP) {
+            return 1;
+        } else if (opcode == JMPF || opcode == JMPT) {
+            return 2;
+        } else if (opcode >= JLT_I && opcode <= JNE_F) {
+            return 3;
+        } else if (opcode == SCAN) {
+            return 3;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,868 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Lowers a resolved parse tree to register Bytecode: one Chunk per defined function and one
+// for the global declarations. Every expression has a static type, so arithmetic is emitted
+// as typed int or float instructions with explicit conversions, and loop conditions become
+// fused compare-and-branch instructions.
+public class BytecodeCompiler {
+
+    private record Operand(int register, CoreType type) {
+    }
+
+    private static final class Label {
+        int pc = -1;
+        final List<Integer> patches = new ArrayList<>();
+    }
+
+    private final Resolver resolver;
+
+    // State of the chunk being compiled
+    private Resolver.Function function;
+    private Resolver.Slots slots;
+    private int[] code;
+    private int[] lines;
+    private int[] columns;
+    private int size;
+    private int line;
+    private int column;
+    private Map<Long, Integer> constantRegisters;
+    private List<Long> constants;
+    private int constantBase;
+    private int nextRegister;
+    private int maxRegister;
+    private List<Object> sites;
+    private int lastInstruction;
+    private int lastLabel;
+
+    public BytecodeCompiler(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    public Chunk compileGlobals(ParseTreeNode program) {
+        List<ParseTreeNode> declarations = new ArrayList<>();
+        for (ParseTreeNode declaration : program.children) {
+            ParseTreeNode node = declaration.children.get(0);
+            if (!node.name.equals("Function_Declaration")) {
+                declarations.add(node);
+            }
+        }
+        begin(null, new Resolver.Slots(), declarations);
+        for (ParseTreeNode declaration : declarations) {
+            compileStatement(declaration);
+        }
+        emit(Bytecode.RET, zero());
+        return finish("<globals>");
+    }
+
+    // Indexed by Resolver.Function.index; null for functions that are never defined
+    public Chunk[] compileFunctions() {
+        Chunk[] chunks = new Chunk[resolver.functions.size()];
+        for (Resolver.Function f : resolver.functions) {
+            if (f.body != null) {
+                begin(f, f.slots, List.of(f.body));
+                compileStatement(f.body);
+                emit(Bytecode.RET, zero());
+                chunks[f.index] = finish(f.name);
+            }
+        }
+        return chunks;
+    }
+
+    private void begin(Resolver.Function function, Resolver.Slots slots, List<ParseTreeNode> roots) {
+        this.function = function;
+        this.slots = slots;
+        code = new int[64];
+        lines = new int[64];
+        columns = new int[64];
+        size = 0;
+        sites = new ArrayList<>();
+        lastInstruction = -1;
+        lastLabel = -1;
+
+        // Constants get registers of their own, loaded once on entry, so instructions never
+        // need a separate constant operand form.
+        constantRegisters = new HashMap<>();
+        constants = new ArrayList<>();
+        constantBase = slots.size;
+        addConstant(0L);
+        for (ParseTreeNode root : roots) {
+            collectConstants(root);
+        }
+        nextRegister = constantBase + constants.size();
+        maxRegister = nextRegister;
+    }
+
+    private Chunk finish(String name) {
+        long[] values = new long[constants.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = constants.get(i);
+        }
+        return new Chunk(name, function, java.util.Arrays.copyOf(code, size), java.util.Arrays.copyOf(lines, size),
+                java.util.Arrays.copyOf(columns, size), values, constantBase, maxRegister, sites.toArray());
+    }
+
+    private void collectConstants(ParseTreeNode node) {
+        if (node.name.equals("Const")) {
+            addConstant(constantBits(resolver.constants.get(node.slot)));
+        }
+        for (ParseTreeNode child : node.children) {
+            collectConstants(child);
+        }
+    }
+
+    private void addConstant(long bits) {
+        if (!constantRegisters.containsKey(bits)) {
+            constantRegisters.put(bits, constantBase + constants.size());
+            constants.add(bits);
+        }
+    }
+
+    private int zero() {
+        return constantRegisters.get(0L);
+    }
+
+    // ---- statements ----
+
+    private void compileStatement(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        switch (node.name) {
+            case "Block" -> {
+                for (ParseTreeNode item : c.get(1).children) {
+                    compileStatement(item.children.get(0));
+                }
+            }
+            case "Statement" -> {
+                if (c.size() == 2) {
+                    compileEffect(c.get(0));
+                } else if (!c.get(0).name.equals("SEMICOLON")) {
+                    compileStatement(c.get(0));
+                }
+            }
+            case "Expression_Statement" -> compileEffect(c.get(0));
+            case "Variable_Declaration" -> compileVariables(node);
+            case "Array_Declaration" -> compileArray(node);
+            case "Return_Statement" -> {
+                int mark = nextRegister;
+                int value = alloc();
+                convert(value, compileExpr(c.get(1), value), function.returnType);
+                emit(Bytecode.RET, value);
+                nextRegister = mark;
+            }
+            case "If_Statement" -> {
+                Label otherwise = new Label();
+                compileCondition(c.get(2), false, otherwise);
+                compileStatement(c.get(4));
+                if (c.size() > 5) {
+                    Label end = new Label();
+                    emitJump(Bytecode.JMP, end);
+                    bind(otherwise);
+                    compileStatement(c.get(5).children.get(1));
+                    bind(end);
+                } else {
+                    bind(otherwise);
+                }
+            }
+            case "While_Statement" -> {
+                Label body = new Label();
+                Label condition = new Label();
+                emitJump(Bytecode.JMP, condition);
+                bind(body);
+                compileStatement(c.get(4));
+                bind(condition);
+                compileCondition(c.get(2), true, body);
+            }
+            case "For_Statement" -> {
+                int i;
+                ParseTreeNode init = c.get(2);
+                if (init.name.equals("Variable_Declaration") || init.name.equals("Array_Declaration")) {
+                    compileStatement(init);
+                    i = 3;
+                } else {
+                    compileEffect(init);
+                    i = 4;
+                }
+                Label body = new Label();
+                Label condition = new Label();
+                emitJump(Bytecode.JMP, condition);
+                bind(body);
+                compileStatement(c.get(i + 4));
+                compileEffect(c.get(i + 2));
+                bind(condition);
+                compileCondition(c.get(i), true, body);
+            }
+            case "Input_Statement" -> compileInput(node);
+            case "Output_Statement" -> compileOutput(node);
+            default -> throw new IllegalStateException("Cannot compile " + node.name);
+        }
+    }
+
+    // Expression whose value is discarded
+    private void compileEffect(ParseTreeNode node) {
+        int mark = nextRegister;
+        if (node.name.equals("Exp") && node.children.size() > 1) {
+            compileAssignment(node, alloc(), false);
+        } else if (node.name.equals("Exp")) {
+            compileEffect(node.children.get(0));
+        } else {
+            compileExpr(node, alloc());
+        }
+        nextRegister = mark;
+    }
+
+    private void compileVariables(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        CoreType type = CoreType.of(c.get(0));
+        for (int i = 1; i < c.size(); i++) {
+            ParseTreeNode identifier = c.get(i);
+            if (!identifier.name.equals("Identifier")) {
+                continue;
+            }
+            if (c.get(i + 1).name.equals("ASSIGN")) {
+                int mark = nextRegister;
+                int value = alloc();
+                convert(value, compileExpr(c.get(i + 2), value), type);
+                store(identifier, value, false);
+                nextRegister = mark;
+                i += 2;
+            } else {
+                store(identifier, zero(), true);
+            }
+        }
+    }
+
+    private void compileArray(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        CoreType type = CoreType.of(c.get(0));
+        ParseTreeNode identifier = c.get(1);
+        List<ParseTreeNode> elements = new ArrayList<>();
+        for (ParseTreeNode child : c) {
+            if (child.name.equals("Argument_List")) {
+                for (ParseTreeNode element : child.children) {
+                    if (element.name.equals("Exp")) {
+                        elements.add(element);
+                    }
+                }
+            }
+        }
+        long length = lengthOf(identifier);
+        at(identifier.token);
+        if (elements.size() > length) {
+            emitError("Too many initializers for array '" + identifier.token.lexeme + "'", identifier.token);
+            return;
+        }
+        if (length > Integer.MAX_VALUE) {
+            emitError("Array '" + identifier.token.lexeme + "' is too large", identifier.token);
+            return;
+        }
+
+        int mark = nextRegister;
+        int array = identifier.global ? alloc() : identifier.slot;
+        emit(Bytecode.NEWARR, array, type == CoreType.FLOAT ? 1 : 0, (int) length);
+        if (identifier.global) {
+            emit(Bytecode.SETGREF, identifier.slot, array);
+        }
+        Object values = CoreArrays.initializer(elements, type, resolver.constants);
+        if (values != null) {
+            emit(Bytecode.AFILL, array, site(values));
+            elements.clear();
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            int value = alloc();
+            convert(value, compileExpr(elements.get(i), value), type);
+            at(identifier.token);
+            emit(store(type, length), array, i, value);
+            nextRegister = value;
+        }
+        nextRegister = mark;
+    }
+
+    private void compileInput(ParseTreeNode node) {
+        Label end = new Label();
+        for (ParseTreeNode target : node.children) {
+            if (!target.name.equals("Identifier")) {
+                continue;
+            }
+            CoreType type = typeOf(target);
+            int site = site(new Bytecode.ValueSite(type, target.token.lexeme, target.token));
+            at(target.token);
+            if (target.global) {
+                int mark = nextRegister;
+                int value = alloc();
+                emitJump(Bytecode.SCAN, end, site, value);
+                emit(Bytecode.SETG, target.slot, value);
+                nextRegister = mark;
+            } else {
+                emitJump(Bytecode.SCAN, end, site, target.slot);
+            }
+        }
+        bind(end);
+    }
+
+    private void compileOutput(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        ParseTreeNode first = c.get(2);
+        int mark = nextRegister;
+        if (first.name.equals("Identifier")) {
+            int value = alloc();
+            CoreType type = compileVariable(first, value);
+            emit(Bytecode.PRINTV, site(new Bytecode.ValueSite(type, first.token.lexeme, first.token)), value);
+        } else {
+            int count = (c.size() - 5) / 2;
+            int base = nextRegister;
+            for (int i = 0; i < count; i++) {
+                alloc();
+            }
+            CoreType[] types = new CoreType[count];
+            for (int i = 0; i < count; i++) {
+                types[i] = compileExpr(c.get(4 + 2 * i), base + i);
+            }
+            at(first.token);
+            emit(Bytecode.PRINT, site(new Bytecode.PrintSite(first.token.lexeme, types, first.token)), base);
+        }
+        nextRegister = mark;
+    }
+
+    // ---- conditions ----
+
+    // Emits a branch to target taken when node's truth value equals jumpIf
+    private void compileCondition(ParseTreeNode node, boolean jumpIf, Label target) {
+        List<ParseTreeNode> c = node.children;
+        switch (node.name) {
+            case "Exp" -> {
+                if (c.size() == 1) {
+                    compileCondition(c.get(0), jumpIf, target);
+                    return;
+                }
+            }
+            case "Factor" -> {
+                if (isParenthesized(node)) {
+                    compileCondition(c.get(0), jumpIf, target);
+                    return;
+                }
+            }
+            case "Unary_Exp" -> {
+                if (c.get(0).token.type == Token.TokenType.NOT) {
+                    compileCondition(c.get(1), !jumpIf, target);
+                    return;
+                }
+            }
+            case "Logical_And", "Logical_Or" -> {
+                // a && b jumps on false as soon as one operand is false; a || b on true
+                boolean shortCircuit = node.name.equals("Logical_Or");
+                if (jumpIf == shortCircuit) {
+                    for (int i = 0; i < c.size(); i += 2) {
+                        compileCondition(c.get(i), jumpIf, target);
+                    }
+                } else {
+                    Label skip = new Label();
+                    for (int i = 0; i < c.size() - 1; i += 2) {
+                        compileCondition(c.get(i), shortCircuit, skip);
+                    }
+                    compileCondition(c.get(c.size() - 1), jumpIf, target);
+                    bind(skip);
+                }
+                return;
+            }
+            case "Relational", "Equality" -> {
+                if (c.size() == 3) {
+                    compileCompareBranch(node, jumpIf, target);
+                    return;
+                }
+            }
+            default -> {
+            }
+        }
+        int mark = nextRegister;
+        Operand value = operand(node, alloc());
+        int register = value.register();
+        if (value.type() == CoreType.FLOAT) {
+            register = alloc();
+            emit(Bytecode.F2B, register, value.register());
+        }
+        emitJump(jumpIf ? Bytecode.JMPT : Bytecode.JMPF, target, register);
+        nextRegister = mark;
+    }
+
+    private void compileCompareBranch(ParseTreeNode node, boolean jumpIf, Label target) {
+        List<ParseTreeNode> c = node.children;
+        int mark = nextRegister;
+        Operand[] operands = binaryOperands(c.get(0), c.get(2));
+        int left = operands[0].register();
+        int right = operands[1].register();
+        int comparison = comparison(c.get(1).token.type);
+        if (operands[0].type() == CoreType.FLOAT || operands[1].type() == CoreType.FLOAT) {
+            left = toFloat(operands[0]);
+            right = toFloat(operands[1]);
+            if (jumpIf) {
+                emitJump(Bytecode.JLT_F + comparison, target, left, right);
+            } else {
+                // NaN makes !(a < b) differ from a >= b, so float conditions are not inverted
+                int result = alloc();
+                emit(Bytecode.LT_F + comparison, result, left, right);
+                emitJump(Bytecode.JMPF, target, result);
+            }
+        } else {
+            emitJump(Bytecode.JLT_I + (jumpIf ? comparison : invert(comparison)), target, left, right);
+        }
+        nextRegister = mark;
+    }
+
+    // ---- expressions ----
+
+    // Compiles node so that its value ends up in register dst, and returns its type
+    private CoreType compileExpr(ParseTreeNode node, int dst) {
+        List<ParseTreeNode> c = node.children;
+        switch (node.name) {
+            case "Exp":
+                if (c.size() == 1) {
+                    return compileExpr(c.get(0), dst);
+                }
+                return compileAssignment(node, dst, true);
+            case "Factor":
+                return compileFactor(node, dst);
+            case "Const": {
+                Operand constant = constant(node);
+                emit(Bytecode.MOVE, dst, constant.register());
+                return constant.type();
+            }
+            case "Additive", "Multiplicative", "Exponent", "Relational", "Equality":
+                return compileBinary(node, dst);
+            case "Logical_Or", "Logical_And": {
+                boolean isOr = node.name.equals("Logical_Or");
+                toBool(dst, compileExpr(c.get(0), dst));
+                Label end = new Label();
+                for (int i = 2; i < c.size(); i += 2) {
+                    emitJump(isOr ? Bytecode.JMPT : Bytecode.JMPF, end, dst);
+                    toBool(dst, compileExpr(c.get(i), dst));
+                }
+                bind(end);
+                return CoreType.BOOL;
+            }
+            case "Unary_Exp": {
+                Operand operand = operand(c.get(1), dst);
+                switch (c.get(0).token.type) {
+                    case NOT -> {
+                        emit(operand.type() == CoreType.FLOAT ? Bytecode.NOT_F : Bytecode.NOT_I, dst, operand.register());
+                        return CoreType.BOOL;
+                    }
+                    case MINUS -> {
+                        emit(operand.type() == CoreType.FLOAT ? Bytecode.NEG_F : Bytecode.NEG_I, dst, operand.register());
+                        return operand.type() == CoreType.FLOAT ? CoreType.FLOAT : CoreType.INT;
+                    }
+                    default -> {
+                        if (operand.register() != dst) {
+                            emit(Bytecode.MOVE, dst, operand.register());
+                        }
+                        return operand.type() == CoreType.FLOAT ? CoreType.FLOAT : CoreType.INT;
+                    }
+                }
+            }
+            default:
+                throw new IllegalStateException("Cannot compile " + node.name);
+        }
+    }
+
+    // Left-associative operator chains: [operand (operator operand)*]
+    private CoreType compileBinary(ParseTreeNode node, int dst) {
+        List<ParseTreeNode> c = node.children;
+        boolean comparison = node.name.equals("Relational") || node.name.equals("Equality");
+        boolean rightAssigns = false;
+        for (int i = 2; i < c.size(); i += 2) {
+            rightAssigns |= containsAssignment(c.get(i));
+        }
+        Operand left = rightAssigns ? new Operand(dst, compileExpr(c.get(0), dst)) : operand(c.get(0), dst);
+        int leftRegister = left.register();
+        CoreType leftType = left.type();
+
+        int mark = nextRegister;
+        for (int i = 1; i < c.size(); i += 2) {
+            Token operator = c.get(i).token;
+            int scratch = alloc();
+            Operand right = operand(c.get(i + 1), scratch);
+            int rightRegister = right.register();
+            boolean isFloat = leftType == CoreType.FLOAT || right.type() == CoreType.FLOAT;
+            if (isFloat && leftType != CoreType.FLOAT) {
+                emit(Bytecode.I2F, dst, leftRegister);
+                leftRegister = dst;
+            }
+            if (isFloat && right.type() != CoreType.FLOAT) {
+                emit(Bytecode.I2F, scratch, rightRegister);
+                rightRegister = scratch;
+            }
+            at(operator);
+            if (comparison) {
+                emit((isFloat ? Bytecode.LT_F : Bytecode.LT_I) + comparison(operator.type), dst, leftRegister, rightRegister);
+                leftType = CoreType.BOOL;
+            } else {
+                emit(arithmetic(operator.type, isFloat), dst, leftRegister, rightRegister);
+                leftType = isFloat ? CoreType.FLOAT : CoreType.INT;
+            }
+            leftRegister = dst;
+            nextRegister = mark;
+        }
+        return leftType;
+    }
+
+    private CoreType compileFactor(ParseTreeNode factor, int dst) {
+        List<ParseTreeNode> c = factor.children;
+        ParseTreeNode first = c.get(0);
+        if (first.name.equals("Const")) {
+            return compileExpr(first, dst);
+        }
+        if (!first.name.equals("Identifier")) {
+            return compileExpr(first, dst);
+        }
+        if (c.size() == 1) {
+            return compileVariable(first, dst);
+        }
+        if (c.get(1).name.equals("LEFT_PARENTHESIS")) {
+            return compileCall(factor, dst);
+        }
+        CoreType type = typeOf(first);
+        long index = constantInt(c.get(1));
+        if (outOfBounds(first, index)) {
+            return type;
+        }
+        int mark = nextRegister;
+        int array = arrayRegister(first);
+        at(first.token);
+        long length = lengthOf(first);
+        emit(CoreArrays.offHeap(length) ? Bytecode.ALOAD_M : type == CoreType.FLOAT ? Bytecode.ALOAD_F : Bytecode.ALOAD_I,
+                dst, array, (int) index);
+        nextRegister = mark;
+        return type;
+    }
+
+    private CoreType compileVariable(ParseTreeNode identifier, int dst) {
+        if (identifier.global) {
+            emit(Bytecode.GETG, dst, identifier.slot);
+        } else {
+            emit(Bytecode.MOVE, dst, identifier.slot);
+        }
+        return typeOf(identifier);
+    }
+
+    private CoreType compileCall(ParseTreeNode factor, int dst) {
+        ParseTreeNode identifier = factor.children.get(0);
+        Resolver.Function callee = resolver.functions.get(identifier.slot);
+        int mark = nextRegister;
+        int base = nextRegister;
+        for (int i = 0; i < callee.parameterTypes.length; i++) {
+            alloc();
+        }
+        if (factor.children.size() > 2) {
+            int parameter = 0;
+            for (ParseTreeNode argument : factor.children.get(2).children) {
+                if (argument.name.equals("Exp")) {
+                    int register = base + parameter;
+                    convert(register, compileExpr(argument, register), callee.parameterTypes[parameter]);
+                    parameter++;
+                }
+            }
+        }
+        at(identifier.token);
+        emit(Bytecode.CALL, dst, callee.index, base);
+        nextRegister = mark;
+        return callee.returnType;
+    }
+
+    private CoreType compileAssignment(ParseTreeNode exp, int dst, boolean valueUsed) {
+        List<ParseTreeNode> c = exp.children;
+        ParseTreeNode target = c.get(0);
+        CoreType type = typeOf(target);
+        if (c.get(1).name.equals("LEFT_BRACKET")) {
+            convert(dst, compileExpr(c.get(4), dst), type);
+            long index = constantInt(c.get(2));
+            if (outOfBounds(target, index)) {
+                return type;
+            }
+            int mark = nextRegister;
+            int array = arrayRegister(target);
+            at(target.token);
+            emit(store(type, lengthOf(target)), array, (int) index, dst);
+            nextRegister = mark;
+            return type;
+        }
+        convert(dst, compileExpr(c.get(2), dst), type);
+        store(target, dst, valueUsed);
+        return type;
+    }
+
+    private void store(ParseTreeNode identifier, int value, boolean valueUsed) {
+        if (identifier.global) {
+            emit(Bytecode.SETG, identifier.slot, value);
+        } else if (!valueUsed && lastInstruction >= 0 && lastLabel != size && writesFirstOperand(code[lastInstruction])
+                && code[lastInstruction + 1] == value) {
+            // The temporary is dead after the store: let the instruction that produced it
+            // write the variable directly.
+            code[lastInstruction + 1] = identifier.slot;
+        } else {
+            emit(Bytecode.MOVE, identifier.slot, value);
+        }
+    }
+
+    // ---- operands and helpers ----
+
+    // Register already holding node's value (local variable or constant), or node compiled into scratch
+    private Operand operand(ParseTreeNode node, int scratch) {
+        Operand direct = direct(node);
+        return direct != null ? direct : new Operand(scratch, compileExpr(node, scratch));
+    }
+
+    private Operand direct(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        switch (node.name) {
+            case "Exp":
+                return c.size() == 1 ? direct(c.get(0)) : null;
+            case "Const":
+                return constant(node);
+            case "Factor": {
+                ParseTreeNode first = c.get(0);
+                if (first.name.equals("Const")) {
+                    return constant(first);
+                }
+                if (first.name.equals("Identifier")) {
+                    return c.size() == 1 && !first.global ? new Operand(first.slot, typeOf(first)) : null;
+                }
+                return direct(first);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private Operand[] binaryOperands(ParseTreeNode leftNode, ParseTreeNode rightNode) {
+        int leftScratch = alloc();
+        Operand left = containsAssignment(rightNode)
+                ? new Operand(leftScratch, compileExpr(leftNode, leftScratch))
+                : operand(leftNode, leftScratch);
+        Operand right = operand(rightNode, alloc());
+        return new Operand[] {left, right};
+    }
+
+    private int toFloat(Operand operand) {
+        if (operand.type() == CoreType.FLOAT) {
+            return operand.register();
+        }
+        int register = alloc();
+        emit(Bytecode.I2F, register, operand.register());
+        return register;
+    }
+
+    private Operand constant(ParseTreeNode constNode) {
+        Object value = resolver.constants.get(constNode.slot);
+        return new Operand(constantRegisters.get(constantBits(value)), constantType(value));
+    }
+
+    private long constantInt(ParseTreeNode constNode) {
+        Object value = resolver.constants.get(constNode.slot);
+        return CoreOps.asInt(constantType(value), constantBits(value));
+    }
+
+    // Emits the error of an index outside the declared length of the array identifier names,
+    // in place of the load or store, which then needs no bounds check of its own
+    private boolean outOfBounds(ParseTreeNode identifier, long index) {
+        long length = lengthOf(identifier);
+        if (index >= 0 && index < length) {
+            return false;
+        }
+        at(identifier.token);
+        emitError("Array index " + index + " out of bounds for '" + identifier.token.lexeme + "' of length " + length,
+                identifier.token);
+        return true;
+    }
+
+    private static int store(CoreType type, long length) {
+        return CoreArrays.offHeap(length) ? Bytecode.ASTORE_M : type == CoreType.FLOAT ? Bytecode.ASTORE_F : Bytecode.ASTORE_I;
+    }
+
+    private int arrayRegister(ParseTreeNode identifier) {
+        if (!identifier.global) {
+            return identifier.slot;
+        }
+        int register = alloc();
+        emit(Bytecode.GETGREF, register, identifier.slot);
+        return register;
+    }
+
+    private CoreType typeOf(ParseTreeNode identifier) {
+        return identifier.global ? resolver.globals.types[identifier.slot] : slots.types[identifier.slot];
+    }
+
+    private long lengthOf(ParseTreeNode identifier) {
+        return identifier.global ? resolver.globals.lengths[identifier.slot] : slots.lengths[identifier.slot];
+    }
+
+    private void convert(int register, CoreType from, CoreType to) {
+        if (from == to) {
+            return;
+        }
+        switch (to) {
+            case INT -> {
+                if (from == CoreType.FLOAT) {
+                    emit(Bytecode.F2I, register, register);
+                }
+            }
+            case FLOAT -> emit(Bytecode.I2F, register, register);
+            case CHAR -> {
+                if (from == CoreType.FLOAT) {
+                    emit(Bytecode.F2I, register, register);
+                }
+                if (from != CoreType.BOOL) {
+                    emit(Bytecode.I2C, register, register);
+                }
+            }
+            case BOOL -> toBool(register, from);
+        }
+    }
+
+    private void toBool(int register, CoreType from) {
+        if (from == CoreType.FLOAT) {
+            emit(Bytecode.F2B, register, register);
+        } else if (from != CoreType.BOOL) {
+            emit(Bytecode.I2B, register, register);
+        }
+    }
+
+    private static boolean containsAssignment(ParseTreeNode node) {
+        if (node.name.equals("Exp") && node.children.size() > 1) {
+            return true;
+        }
+        for (ParseTreeNode child : node.children) {
+            if (containsAssignment(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isParenthesized(ParseTreeNode factor) {
+        String first = factor.children.get(0).name;
+        return !first.equals("Const") && !first.equals("Identifier");
+    }
+
+    private static boolean writesFirstOperand(int opcode) {
+        return opcode <= Bytecode.NE_F || opcode == Bytecode.GETG || opcode == Bytecode.ALOAD_I
+                || opcode == Bytecode.ALOAD_F || opcode == Bytecode.ALOAD_M || opcode == Bytecode.CALL;
+    }
+
+    private static int arithmetic(Token.TokenType operator, boolean isFloat) {
+        int opcode = switch (operator) {
+            case PLUS -> Bytecode.ADD_I;
+            case MINUS -> Bytecode.SUB_I;
+            case MULTIPLY -> Bytecode.MUL_I;
+            case DIVIDE -> Bytecode.DIV_I;
+            case MODULO -> Bytecode.MOD_I;
+            case EXPONENT -> Bytecode.POW_I;
+            default -> throw new IllegalStateException("Not an arithmetic operator: " + operator);
+        };
+        return isFloat ? opcode + (Bytecode.ADD_F - Bytecode.ADD_I) : opcode;
+    }
+
+    // Offset from LT in the LT, LE, GT, GE, EQ, NE opcode groups
+    private static int comparison(Token.TokenType operator) {
+        return switch (operator) {
+            case LESS -> 0;
+            case LESS_EQUAL -> 1;
+            case GREATER -> 2;
+            case GREATER_EQUAL -> 3;
+            case EQUAL -> 4;
+            case NOT_EQUAL -> 5;
+            default -> throw new IllegalStateException("Not a comparison operator: " + operator);
+        };
+    }
+
+    private static int invert(int comparison) {
+        return switch (comparison) {
+            case 0 -> 3;
+            case 1 -> 2;
+            case 2 -> 1;
+            case 3 -> 0;
+            case 4 -> 5;
+            default -> 4;
+        };
+    }
+
+    static long constantBits(Object value) {
+        if (value instanceof Long l) {
+            return l;
+        } else if (value instanceof Double d) {
+            return Double.doubleToRawLongBits(d);
+        } else if (value instanceof Character ch) {
+            return ch;
+        }
+        return (Boolean) value ? 1 : 0;
+    }
+
+    static CoreType constantType(Object value) {
+        if (value instanceof Double) {
+            return CoreType.FLOAT;
+        } else if (value instanceof Character) {
+            return CoreType.CHAR;
+        } else if (value instanceof Boolean) {
+            return CoreType.BOOL;
+        }
+        return CoreType.INT;
+    }
+
+    // ---- emission ----
+
+    private int alloc() {
+        int register = nextRegister++;
+        if (nextRegister > maxRegister) {
+            maxRegister = nextRegister;
+        }
+        return register;
+    }
+
+    private int site(Object site) {
+        sites.add(site);
+        return sites.size() - 1;
+    }
+
+    private void at(Token token) {
+        line = token.lineNumber;
+        column = token.columnNumber;
+    }
+
+    private void emitError(String message, Token token) {
+        emit(Bytecode.ERROR, site(new Bytecode.ErrorSite(message, token)));
+    }
+
+    private void emit(int opcode, int... operands) {
+        if (size + operands.length + 1 > code.length) {
+            int capacity = Math.max(code.length * 2, size + operands.length + 1);
+            code = java.util.Arrays.copyOf(code, capacity);
+            lines = java.util.Arrays.copyOf(lines, capacity);
+            columns = java.util.Arrays.copyOf(columns, capacity);
+        }
+        lastInstruction = size;
+        lines[size] = line;
+        columns[size] = column;
+        code[size++] = opcode;
+        for (int operand : operands) {
+            code[size++] = operand;
+        }
+    }
+
+    // Emits a branch whose target operand is filled in when the label is bound
+    private void emitJump(int opcode, Label target, int... operands) {
+        int[] withTarget = java.util.Arrays.copyOf(operands, operands.length + 1);
+        withTarget[operands.length] = target.pc;
+        emit(opcode, withTarget);
+        if (target.pc < 0) {
+            target.patches.add(size - 1);
+        }
+    }
+
+    private void bind(Label label) {
+        label.pc = size;
+        lastLabel = size;
+        for (int patch : label.patches) {
+            code[patch] = size;
+        }
+    }
+}
@@ -0,0 +1,584 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+
+// Register VM for programs compiled by BytecodeCompiler. All frames live in one register
+// stack: a call's frame starts at the caller's argument registers, so calls copy nothing and
+// allocate nothing. Array references are held in a parallel Object stack. A call from one
+// interpreted function to another stays in the dispatch loop, which keeps the caller's chunk,
+// base and pc on a stack of its own, so only calls into and out of compiled code nest on the
+// JVM stack.
+//
+// With a JIT threshold, a function whose calls and loop iterations reach that many is handed to
+// JitCompiler and its remaining calls run as JVM bytecode. The frame whose loop made it hot
+// goes on in the compiled code from that loop's header, so a loop in main is compiled too.
+// Compiled classes are only reachable from this VM's table for the current run, so they are
+// unloaded once the program finishes.
+public class BytecodeVm implements ExecutionEngine {
+
+    public static final int JIT_THRESHOLD = 1000;
+
+    private final PrintStream out;
+    private final Reader in;
+    private final int jitThreshold;
+
+    // Read and written directly by compiled functions
+    long[] registers = new long[1024];
+    Object[] references = new Object[1024];
+    long[] globals;
+    Object[] globalReferences;
+
+    private Chunk[] functions;
+    // Callers of the interpreted frames in progress, below their callees
+    private Chunk[] callers = new Chunk[64];
+    private int[] callerBases = new int[64];
+    private int[] callerPcs = new int[64];
+    private int saved;
+    // Calls in progress, interpreted and compiled
+    private int depth;
+    // What the last frame to finish returned
+    private long returned;
+    private int[] callCounts;
+    private JitCompiler.Compiled[] compiled;
+    private CoreArrays arrays;
+
+    public BytecodeVm(PrintStream out, Reader in) {
+        this(out, in, 0);
+    }
+
+    // A threshold of 0 disables the JIT
+    public BytecodeVm(PrintStream out, Reader in, int jitThreshold) {
+        this.out = out;
+        this.in = in;
+        this.jitThreshold = jitThreshold;
+    }
+
+    @Override
+    public void run(ParseTreeNode program) throws EvaluationException {
+        Resolver resolver = new Resolver();
+        resolver.resolve(program);
+        BytecodeCompiler compiler = new BytecodeCompiler(resolver);
+        Chunk globalInit = compiler.compileGlobals(program);
+        functions = compiler.compileFunctions();
+        globals = new long[resolver.globals.size];
+        globalReferences = new Object[resolver.globals.size];
+        arrays = new CoreArrays();
+        saved = 0;
+        depth = 0;
+        if (jitThreshold > 0) {
+            callCounts = new int[functions.length];
+            compiled = new JitCompiler.Compiled[functions.length];
+        }
+
+        try {
+            execute(globalInit, 0);
+            Resolver.Function main = resolver.function("main");
+            if (main != null && main.body != null) {
+                if (main.parameterTypes.length != 0) {
+                    throw new EvaluationException("Function 'main' must not take parameters", main.position());
+                }
+                call(functions[main.index], 0);
+            }
+        } finally {
+            compiled = null;
+            callCounts = null;
+            out.flush();
+        }
+    }
+
+    @Override
+    public CoreArrays arrays() {
+        return arrays;
+    }
+
+    // Entry point for calls made by compiled functions
+    long invoke(int function, int base) throws EvaluationException {
+        return call(functions[function], base);
+    }
+
+    private long call(Chunk callee, int base) throws EvaluationException {
+        try {
+            JitCompiler.Compiled function = compiled(callee);
+            return function != null ? invoke(function, callee, base) : execute(callee, base);
+        } catch (StackOverflowError e) {
+            throw new EvaluationException("Stack overflow in call to '" + callee.name + "'", callee.function.position());
+        }
+    }
+
+    // The compiled code of callee, compiled by the call or loop iteration that reaches the
+    // threshold; null while it runs interpreted
+    private JitCompiler.Compiled compiled(Chunk callee) {
+        if (compiled == null) {
+            return null;
+        }
+        int index = callee.function.index;
+        JitCompiler.Compiled function = compiled[index];
+        if (function == null && ++callCounts[index] == jitThreshold) {
+            function = compiled[index] = JitCompiler.compile(callee, functions);
+        }
+        return function;
+    }
+
+    private long invoke(JitCompiler.Compiled function, Chunk callee, int base) throws EvaluationException {
+        enter(callee, base);
+        long result = function.invoke(this, callee, base);
+        depth--;
+        return result;
+    }
+
+    // Counts a call to callee and makes room for its registers. An error ends the run, so
+    // depth is only counted back down by calls that return.
+    private void enter(Chunk callee, int base) throws EvaluationException {
+        if (depth == MAX_CALL_DEPTH) {
+            throw ExecutionEngine.tooDeep(callee.function);
+        }
+        depth++;
+        if (base + callee.registerCount > registers.length) {
+            grow(base + callee.registerCount);
+        }
+    }
+
+    // Where a taken jump from pc to target goes on. A jump back to a loop header counts
+    // towards compiling chunk; once it is compiled, the rest of the frame at base runs there,
+    // what it returns is left in returned and the pc is -1.
+    private int branch(Chunk chunk, int base, int pc, int target) throws EvaluationException {
+        if (target > pc || compiled == null || chunk.function == null) {
+            return target;
+        }
+        JitCompiler.Compiled function = compiled(chunk);
+        if (function == null) {
+            return target;
+        }
+        returned = function.resume(this, chunk, base, target);
+        return -1;
+    }
+
+    // Runs chunk and the interpreted functions it calls, returning when chunk does
+    private long execute(Chunk chunk, int base) throws EvaluationException {
+        enter(chunk, base);
+        int bottom = saved;
+        long[] r = registers;
+        Object[] refs = references;
+        System.arraycopy(chunk.constants, 0, r, base + chunk.constantBase, chunk.constants.length);
+        int[] code = chunk.code;
+        int pc = 0;
+
+        while (true) {
+            frame:
+            while (true) {
+                switch (code[pc]) {
+                    case Bytecode.MOVE -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]];
+                        pc += 3;
+                    }
+                    case Bytecode.ADD_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] + r[base + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case Bytecode.SUB_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] - r[base + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case Bytecode.MUL_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] * r[base + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case Bytecode.DIV_I -> {
+                        long divisor = r[base + code[pc + 3]];
+                        if (divisor == 0) {
+                            throw divisionByZero(chunk, pc);
+                        }
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] / divisor;
+                        pc += 4;
+                    }
+                    case Bytecode.MOD_I -> {
+                        long divisor = r[base + code[pc + 3]];
+                        if (divisor == 0) {
+                            throw divisionByZero(chunk, pc);
+                        }
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] % divisor;
+                        pc += 4;
+                    }
+                    case Bytecode.POW_I -> {
+                        long exponent = r[base + code[pc + 3]];
+                        long value = r[base + code[pc + 2]];
+                        if (exponent < 0 && value == 0) {
+                            throw divisionByZero(chunk, pc);
+                        }
+                        r[base + code[pc + 1]] = CoreOps.pow(value, exponent);
+                        pc += 4;
+                    }
+                    case Bytecode.ADD_F -> {
+                        r[base + code[pc + 1]] = bits(f(r[base + code[pc + 2]]) + f(r[base + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case Bytecode.SUB_F -> {
+                        r[base + code[pc + 1]] = bits(f(r[base + code[pc + 2]]) - f(r[base + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case Bytecode.MUL_F -> {
+                        r[base + code[pc + 1]] = bits(f(r[base + code[pc + 2]]) * f(r[base + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case Bytecode.DIV_F -> {
+                        r[base + code[pc + 1]] = bits(f(r[base + code[pc + 2]]) / f(r[base + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case Bytecode.MOD_F -> {
+                        r[base + code[pc + 1]] = bits(f(r[base + code[pc + 2]]) % f(r[base + code[pc + 3]]));
+                        pc += 4;
+                    }
+                    case Bytecode.POW_F -> {
+                        r[base + code[pc + 1]] = bits(Math.pow(f(r[base + code[pc + 2]]), f(r[base + code[pc + 3]])));
+                        pc += 4;
+                    }
+                    case Bytecode.NEG_I -> {
+                        r[base + code[pc + 1]] = -r[base + code[pc + 2]];
+                        pc += 3;
+                    }
+                    case Bytecode.NEG_F -> {
+                        r[base + code[pc + 1]] = bits(-f(r[base + code[pc + 2]]));
+                        pc += 3;
+                    }
+                    case Bytecode.NOT_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] == 0 ? 1 : 0;
+                        pc += 3;
+                    }
+                    case Bytecode.NOT_F -> {
+                        r[base + code[pc + 1]] = f(r[base + code[pc + 2]]) == 0.0 ? 1 : 0;
+                        pc += 3;
+                    }
+                    case Bytecode.I2F -> {
+                        r[base + code[pc + 1]] = bits((double) r[base + code[pc + 2]]);
+                        pc += 3;
+                    }
+                    case Bytecode.F2I -> {
+                        r[base + code[pc + 1]] = (long) f(r[base + code[pc + 2]]);
+                        pc += 3;
+                    }
+                    case Bytecode.I2C -> {
+                        r[base + code[pc + 1]] = (char) r[base + code[pc + 2]];
+                        pc += 3;
+                    }
+                    case Bytecode.I2B -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] != 0 ? 1 : 0;
+                        pc += 3;
+                    }
+                    case Bytecode.F2B -> {
+                        r[base + code[pc + 1]] = f(r[base + code[pc + 2]]) != 0.0 ? 1 : 0;
+                        pc += 3;
+                    }
+                    case Bytecode.LT_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] < r[base + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.LE_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] <= r[base + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.GT_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] > r[base + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.GE_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] >= r[base + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.EQ_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] == r[base + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.NE_I -> {
+                        r[base + code[pc + 1]] = r[base + code[pc + 2]] != r[base + code[pc + 3]] ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.LT_F -> {
+                        r[base + code[pc + 1]] = f(r[base + code[pc + 2]]) < f(r[base + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.LE_F -> {
+                        r[base + code[pc + 1]] = f(r[base + code[pc + 2]]) <= f(r[base + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.GT_F -> {
+                        r[base + code[pc + 1]] = f(r[base + code[pc + 2]]) > f(r[base + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.GE_F -> {
+                        r[base + code[pc + 1]] = f(r[base + code[pc + 2]]) >= f(r[base + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.EQ_F -> {
+                        r[base + code[pc + 1]] = f(r[base + code[pc + 2]]) == f(r[base + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.NE_F -> {
+                        r[base + code[pc + 1]] = f(r[base + code[pc + 2]]) != f(r[base + code[pc + 3]]) ? 1 : 0;
+                        pc += 4;
+                    }
+                    case Bytecode.JMP -> pc = code[pc + 1];
+                    case Bytecode.JMPF -> {
+                        pc = r[base + code[pc + 1]] == 0 ? branch(chunk, base, pc, code[pc + 2]) : pc + 3;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JMPT -> {
+                        pc = r[base + code[pc + 1]] != 0 ? branch(chunk, base, pc, code[pc + 2]) : pc + 3;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JLT_I -> {
+                        pc = r[base + code[pc + 1]] < r[base + code[pc + 2]] ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JLE_I -> {
+                        pc = r[base + code[pc + 1]] <= r[base + code[pc + 2]] ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JGT_I -> {
+                        pc = r[base + code[pc + 1]] > r[base + code[pc + 2]] ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JGE_I -> {
+                        pc = r[base + code[pc + 1]] >= r[base + code[pc + 2]] ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JEQ_I -> {
+                        pc = r[base + code[pc + 1]] == r[base + code[pc + 2]] ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JNE_I -> {
+                        pc = r[base + code[pc + 1]] != r[base + code[pc + 2]] ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JLT_F -> {
+                        pc = f(r[base + code[pc + 1]]) < f(r[base + code[pc + 2]]) ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JLE_F -> {
+                        pc = f(r[base + code[pc + 1]]) <= f(r[base + code[pc + 2]]) ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JGT_F -> {
+                        pc = f(r[base + code[pc + 1]]) > f(r[base + code[pc + 2]]) ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JGE_F -> {
+                        pc = f(r[base + code[pc + 1]]) >= f(r[base + code[pc + 2]]) ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JEQ_F -> {
+                        pc = f(r[base + code[pc + 1]]) == f(r[base + code[pc + 2]]) ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.JNE_F -> {
+                        pc = f(r[base + code[pc + 1]]) != f(r[base + code[pc + 2]]) ? branch(chunk, base, pc, code[pc + 3]) : pc + 4;
+                        if (pc < 0) {
+                            break frame;
+                        }
+                    }
+                    case Bytecode.GETG -> {
+                        r[base + code[pc + 1]] = globals[code[pc + 2]];
+                        pc += 3;
+                    }
+                    case Bytecode.SETG -> {
+                        globals[code[pc + 1]] = r[base + code[pc + 2]];
+                        pc += 3;
+                    }
+                    case Bytecode.GETGREF -> {
+                        refs[base + code[pc + 1]] = globalReferences[code[pc + 2]];
+                        pc += 3;
+                    }
+                    case Bytecode.SETGREF -> {
+                        globalReferences[code[pc + 1]] = refs[base + code[pc + 2]];
+                        pc += 3;
+                    }
+                    case Bytecode.NEWARR -> {
+                        refs[base + code[pc + 1]] = newArray(code[pc + 2], code[pc + 3]);
+                        pc += 4;
+                    }
+                    case Bytecode.ALOAD_I -> {
+                        r[base + code[pc + 1]] = ((long[]) refs[base + code[pc + 2]])[code[pc + 3]];
+                        pc += 4;
+                    }
+                    case Bytecode.ALOAD_F -> {
+                        r[base + code[pc + 1]] = bits(((double[]) refs[base + code[pc + 2]])[code[pc + 3]]);
+                        pc += 4;
+                    }
+                    case Bytecode.ALOAD_M -> {
+                        r[base + code[pc + 1]] = CoreArrays.get(refs[base + code[pc + 2]], code[pc + 3]);
+                        pc += 4;
+                    }
+                    case Bytecode.ASTORE_I -> {
+                        ((long[]) refs[base + code[pc + 1]])[code[pc + 2]] = r[base + code[pc + 3]];
+                        pc += 4;
+                    }
+                    case Bytecode.ASTORE_F -> {
+                        ((double[]) refs[base + code[pc + 1]])[code[pc + 2]] = f(r[base + code[pc + 3]]);
+                        pc += 4;
+                    }
+                    case Bytecode.ASTORE_M -> {
+                        CoreArrays.set(refs[base + code[pc + 1]], code[pc + 2], r[base + code[pc + 3]]);
+                        pc += 4;
+                    }
+                    case Bytecode.AFILL -> {
+                        CoreArrays.fill(refs[base + code[pc + 1]], chunk.sites[code[pc + 2]]);
+                        pc += 3;
+                    }
+                    case Bytecode.CALL -> {
+                        Chunk callee = functions[code[pc + 2]];
+                        int calleeBase = base + code[pc + 3];
+                        JitCompiler.Compiled function = compiled(callee);
+                        if (function != null) {
+                            long result = invoke(function, callee, calleeBase);
+                            r = registers; // the callee may have grown the register stack
+                            refs = references;
+                            r[base + code[pc + 1]] = result;
+                            pc += 4;
+                        } else {
+                            enter(callee, calleeBase);
+                            if (saved == callers.length) {
+                                callers = java.util.Arrays.copyOf(callers, saved * 2);
+                                callerBases = java.util.Arrays.copyOf(callerBases, saved * 2);
+                                callerPcs = java.util.Arrays.copyOf(callerPcs, saved * 2);
+                            }
+                            callers[saved] = chunk;
+                            callerBases[saved] = base;
+                            callerPcs[saved++] = pc;
+                            chunk = callee;
+                            base = calleeBase;
+                            code = chunk.code;
+                            pc = 0;
+                            r = registers;
+                            refs = references;
+                            System.arraycopy(chunk.constants, 0, r, base + chunk.constantBase, chunk.constants.length);
+                        }
+                    }
+                    case Bytecode.RET -> {
+                        returned = r[base + code[pc + 1]];
+                        break frame;
+                    }
+                    case Bytecode.PRINT -> {
+                        Bytecode.PrintSite site = (Bytecode.PrintSite) chunk.sites[code[pc + 1]];
+                        int from = base + code[pc + 2];
+                        print(site, java.util.Arrays.copyOfRange(r, from, from + site.types().length));
+                        pc += 3;
+                    }
+                    case Bytecode.PRINTV -> {
+                        print((Bytecode.ValueSite) chunk.sites[code[pc + 1]], r[base + code[pc + 2]]);
+                        pc += 3;
+                    }
+                    case Bytecode.SCAN -> {
+                        Bytecode.ValueSite site = (Bytecode.ValueSite) chunk.sites[code[pc + 1]];
+                        String word = readWord(site);
+                        if (word == null) {
+                            pc = code[pc + 3];
+                        } else {
+                            r[base + code[pc + 2]] = parseWord(site, word);
+                            pc += 4;
+                        }
+                    }
+                    case Bytecode.ERROR -> throw siteError((Bytecode.ErrorSite) chunk.sites[code[pc + 1]]);
+                    default -> throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc + " in " + chunk.name);
+                }
+            }
+
+            // The frame has returned, here or in the compiled code it went on in
+            depth--;
+            if (saved == bottom) {
+                return returned;
+            }
+            chunk = callers[--saved];
+            callers[saved] = null;
+            base = callerBases[saved];
+            pc = callerPcs[saved];
+            code = chunk.code;
+            r = registers;
+            refs = references;
+            r[base + code[pc + 1]] = returned;
+            pc += 4;
+        }
+    }
+
+    // Shared with compiled functions, which call these for everything but arithmetic and jumps
+
+    Object newArray(int floats, int length) {
+        return arrays.allocate(floats == 0 ? CoreType.INT : CoreType.FLOAT, length);
+    }
+
+    void print(Bytecode.PrintSite site, long[] values) throws EvaluationException {
+        out.print(CoreOps.format(site.format(), site.types(), values,
+                site.token().lineNumber, site.token().columnNumber));
+    }
+
+    void print(Bytecode.ValueSite site, long value) {
+        out.print(CoreOps.display(site.type(), value));
+    }
+
+    static long parseWord(Bytecode.ValueSite site, String word) throws EvaluationException {
+        try {
+            return CoreOps.parseInput(word, site.type());
+        } catch (NumberFormatException e) {
+            throw new EvaluationException("Invalid input '" + word + "' for '" + site.name() + "'", site.token());
+        }
+    }
+
+    static EvaluationException siteError(Bytecode.ErrorSite site) {
+        return new EvaluationException(site.message(), site.token());
+    }
+
+    static EvaluationException divisionByZero(Chunk chunk, int pc) {
+        return error("Division by zero", chunk, pc);
+    }
+
+    String readWord(Bytecode.ValueSite site) throws EvaluationException {
+        out.flush();
+        try {
+            return CoreOps.nextInputWord(in);
+        } catch (IOException e) {
+            throw new EvaluationException("Cannot read input: " + e.getMessage(), site.token());
+        }
+    }
+
+    private void grow(int required) {
+        int capacity = Math.max(registers.length * 2, required);
+        registers = java.util.Arrays.copyOf(registers, capacity);
+        references = java.util.Arrays.copyOf(references, capacity);
+    }
+
+    private static EvaluationException error(String message, Chunk chunk, int pc) {
+        return new EvaluationException(message, chunk.lines[pc], chunk.columns[pc]);
+    }
+
+    private static double f(long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+}
@@ -0,0 +1,39 @@
+// A function compiled to Bytecode. Its frame is a window of registerCount registers laid out
+// as [variable slots][constants][temporaries]; parameters are the first slots, so a caller
+// passes arguments by evaluating them into the top of its own frame.
+public final class Chunk {
+    final String name;
+    final Resolver.Function function; // null for the global initialiser
+    final int[] code;
+    final int[] lines;
+    final int[] columns;
+    final long[] constants;
+    final int constantBase;
+    final int registerCount;
+    final Object[] sites;
+
+    Chunk(String name, Resolver.Function function, int[] code, int[] lines, int[] columns,
+          long[] constants, int constantBase, int registerCount, Object[] sites) {
+        this.name = name;
+        this.function = function;
+        this.code = code;
+        this.lines = lines;
+        this.columns = columns;
+        this.constants = constants;
+        this.constantBase = constantBase;
+        this.registerCount = registerCount;
+        this.sites = sites;
+    }
+
+    public String disassemble() {
+        StringBuilder out = new StringBuilder(name).append(": ").append(registerCount).append(" registers\n");
+        for (int pc = 0; pc < code.length; pc += Bytecode.length(code[pc])) {
+            out.append(String.format("%5d  %-9s", pc, Bytecode.name(code[pc])));
+            for (int i = 1; i < Bytecode.length(code[pc]); i++) {
+                out.append(' ').append(code[pc + i]);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+}
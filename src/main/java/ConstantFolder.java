@@ -0,0 +1,247 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Folds the expressions of a parse tree whose operands are all constants into a single Const,
+// and prunes the branches of if statements whose condition is constant. Values are computed
+// with the helpers of Evaluator, so a folded Const holds exactly what every engine would have
+// computed at run time:
+//
+//   2 * 3 + x      [[6], +, x] with flat chains, when the constants come first
+//   -1             a negative Const instead of Unary_Exp
+//   false && f()   false; f is never called either way
+//   if (1 < 2) {} else {}   the first block alone
+//
+// A chain is only folded from its left, as in x + 1 + 2 the constants do not meet without
+// reassociating, which changes the result once x is a float. Integer division or modulo by
+// zero is left to fail at run time. A pruned branch is no longer resolved, so an undeclared
+// name in it goes unreported.
+final class ConstantFolder {
+
+    private int folded;
+    private int pruned;
+    private long removed;
+
+    // Folds the tree in place
+    void fold(ParseTreeNode program) {
+        long before = size(program);
+        visit(program);
+        removed += before - size(program);
+    }
+
+    int folded() {
+        return folded;
+    }
+
+    int pruned() {
+        return pruned;
+    }
+
+    long removed() {
+        return removed;
+    }
+
+    // The node that replaces node, or null for an else clause that is left out
+    private ParseTreeNode visit(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        if (node.name.equals("If_Statement") && c.size() > 6) {
+            pruned++; // else clauses after the first, which never run
+            c.subList(6, c.size()).clear();
+        }
+        for (int i = 0; i < c.size(); i++) {
+            ParseTreeNode child = visit(c.get(i));
+            if (child == null) {
+                c.remove(i--);
+            } else {
+                c.set(i, child);
+            }
+        }
+        return switch (node.name) {
+            case "Factor" -> c.size() == 1 && c.get(0).name.equals("Factor") && value(c.get(0)) != null ? c.get(0) : node;
+            case "Additive", "Multiplicative", "Exponent", "Relational", "Equality" -> foldChain(node);
+            case "Logical_And", "Logical_Or" -> foldLogical(node);
+            case "Unary_Exp" -> foldUnary(node);
+            case "Statement" -> c.get(0).name.equals("If_Statement") ? pruneStatement(node, c.get(0)) : node;
+            case "Else_Clause" -> c.get(1).name.equals("If_Statement") ? pruneElse(node, c.get(1)) : node;
+            default -> node;
+        };
+    }
+
+    // [a, op, b, op, c, ...] evaluated left to right as long as the operands are constants
+    private ParseTreeNode foldChain(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        Object value = value(c.get(0));
+        if (value == null) {
+            return node;
+        }
+        int i = 1;
+        for (; i < c.size(); i += 2) {
+            Object right = value(c.get(i + 1));
+            if (right == null) {
+                break;
+            }
+            ParseTreeNode operator = c.get(i);
+            try {
+                value = switch (node.name) {
+                    case "Relational", "Equality" -> Evaluator.compare(operator.token.type, value, right);
+                    default -> Evaluator.arithmetic(operator, value, right);
+                };
+            } catch (EvaluationException e) {
+                break; // division by zero, which has to fail when it runs
+            }
+        }
+        if (i == 1) {
+            return node;
+        }
+        folded++;
+        ParseTreeNode constant = constant(value, node.firstToken());
+        if (i == c.size()) {
+            return constant;
+        }
+        List<ParseTreeNode> rest = new ArrayList<>(c.subList(i, c.size()));
+        c.clear();
+        c.add(constant);
+        c.addAll(rest);
+        return node;
+    }
+
+    // [a, op, b, op, c, ...] with op all && or all ||. A constant that decides the result
+    // leaves the operands after it unevaluated, and one that does not can be dropped, as long
+    // as two operands remain to keep the result a bool.
+    private ParseTreeNode foldLogical(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        boolean or = node.name.equals("Logical_Or");
+        int i = 0;
+        for (; i < c.size(); i += 2) {
+            Object value = value(c.get(i));
+            if (value == null) {
+                break;
+            }
+            if (Evaluator.isTrue(value) == or) {
+                folded++;
+                return constant(or, node.firstToken());
+            }
+        }
+        if (i >= c.size()) {
+            folded++;
+            return constant(!or, node.firstToken());
+        }
+        if (i > 0 && c.size() - i >= 3) {
+            folded++;
+            c.subList(0, i).clear();
+        }
+        return node;
+    }
+
+    private ParseTreeNode foldUnary(ParseTreeNode node) {
+        Object operand = value(node.children.get(1));
+        if (operand == null) {
+            return node;
+        }
+        folded++;
+        Object value = switch (node.children.get(0).token.type) {
+            case NOT -> !Evaluator.isTrue(operand);
+            case MINUS -> operand instanceof Double d ? (Object) (-d) : (Object) (-Evaluator.toInt(operand));
+            default -> operand instanceof Double ? operand : (Object) Evaluator.toInt(operand);
+        };
+        return constant(value, node.firstToken());
+    }
+
+    // A statement that is an if with a constant condition becomes the branch taken, or an
+    // empty statement if there is none
+    private ParseTreeNode pruneStatement(ParseTreeNode statement, ParseTreeNode ifStatement) {
+        Object condition = value(ifStatement.children.get(2));
+        if (condition == null) {
+            return statement;
+        }
+        pruned++;
+        statement.children.set(0, taken(ifStatement, condition));
+        return statement;
+    }
+
+    // else if with a constant condition: else and the branch taken, or nothing
+    private ParseTreeNode pruneElse(ParseTreeNode elseClause, ParseTreeNode ifStatement) {
+        Object condition = value(ifStatement.children.get(2));
+        if (condition == null) {
+            return elseClause;
+        }
+        pruned++;
+        elseClause.children.set(1, taken(ifStatement, condition));
+        return elseClause.children.get(1).name.equals("SEMICOLON") ? null : elseClause;
+    }
+
+    // The block or else-if the engines run, whose own constant conditions are already pruned;
+    // a semicolon for none. Only the first else clause counts, as in the engines.
+    private static ParseTreeNode taken(ParseTreeNode ifStatement, Object condition) {
+        List<ParseTreeNode> c = ifStatement.children;
+        if (Evaluator.isTrue(condition)) {
+            return c.get(4);
+        }
+        if (c.size() > 5) {
+            return c.get(5).children.get(1);
+        }
+        Token at = ifStatement.firstToken();
+        return new ParseTreeNode(Token.TokenType.SEMICOLON.toString(),
+                new Token(Token.TokenType.SEMICOLON, ";", at.lineNumber, at.columnNumber));
+    }
+
+    // The value of a Factor holding a Const, also through Exp and parentheses; null for
+    // anything else or a literal out of range, which the Resolver reports
+    private static Object value(ParseTreeNode node) {
+        while ((node.name.equals("Factor") || node.name.equals("Exp")) && node.children.size() == 1) {
+            node = node.children.get(0);
+        }
+        if (!node.name.equals("Const")) {
+            return null;
+        }
+        Token token = node.children.get(0).token;
+        try {
+            return switch (token.type) {
+                case INTEGER_LITERAL -> Long.parseLong(token.lexeme);
+                case FLOAT_LITERAL -> Double.parseDouble(token.lexeme);
+                case CHARACTER_LITERAL -> token.lexeme.charAt(0);
+                case TRUE_KW -> Boolean.TRUE;
+                case FALSE_KW -> Boolean.FALSE;
+                default -> null;
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Factor[Const[...]] of a value, at the position of the expression it replaces
+    private static ParseTreeNode constant(Object value, Token at) {
+        Token token;
+        String kind;
+        if (value instanceof Double d) {
+            token = new Token(Token.TokenType.FLOAT_LITERAL, Double.toString(d), at.lineNumber, at.columnNumber);
+            kind = "Float";
+        } else if (value instanceof Boolean b) {
+            token = new Token(b ? Token.TokenType.TRUE_KW : Token.TokenType.FALSE_KW, b.toString(), at.lineNumber,
+                    at.columnNumber);
+            kind = "Bool";
+        } else if (value instanceof Character ch) {
+            token = new Token(Token.TokenType.CHARACTER_LITERAL, String.valueOf(ch), at.lineNumber, at.columnNumber);
+            kind = "Char";
+        } else {
+            token = new Token(Token.TokenType.INTEGER_LITERAL, value.toString(), at.lineNumber, at.columnNumber);
+            kind = "Int";
+        }
+        ParseTreeNode constant = new ParseTreeNode("Const");
+        constant.addChild(new ParseTreeNode(kind, token));
+        ParseTreeNode factor = new ParseTreeNode("Factor");
+        factor.addChild(constant);
+        return factor;
+    }
+
+    private static long size(ParseTreeNode root) {
+        List<ParseTreeNode> stack = new ArrayList<>();
+        stack.add(root);
+        long nodes = 0;
+        while (!stack.isEmpty()) {
+            ParseTreeNode node = stack.remove(stack.size() - 1);
+            nodes++;
+            stack.addAll(node.children);
+        }
+        return nodes;
+    }
+}
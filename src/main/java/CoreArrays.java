@@ -0,0 +1,123 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.List;
+
+// Storage of .core arrays, shared by every execution engine. An array of int, char or bool
+// elements is a long[] and one of float elements a double[], unless it has OFF_HEAP_LENGTH
+// elements or more: then it is a MemorySegment of 64-bit elements outside the heap, holding
+// the raw bits of each value as registers do, so a large table is neither traced nor copied
+// by the collector. Each segment has an automatic arena of its own and is freed once it is
+// unreachable, as a heap array would be.
+//
+// An instance allocates the arrays of one run and counts them for the memory report.
+public final class CoreArrays {
+
+    static final int OFF_HEAP_LENGTH = 1 << 20;
+
+    private int count;
+    private long heapBytes;
+    private long offHeapBytes;
+    private int largest;
+
+    static boolean offHeap(long length) {
+        return length >= OFF_HEAP_LENGTH;
+    }
+
+    // A zeroed array of length elements
+    Object allocate(CoreType type, int length) {
+        count++;
+        largest = Math.max(largest, length);
+        if (offHeap(length)) {
+            offHeapBytes += 8L * length;
+            return Arena.ofAuto().allocate(8L * length, 8);
+        }
+        heapBytes += 8L * length;
+        return type == CoreType.FLOAT ? new double[length] : new long[length];
+    }
+
+    int count() {
+        return count;
+    }
+
+    long heapBytes() {
+        return heapBytes;
+    }
+
+    long offHeapBytes() {
+        return offHeapBytes;
+    }
+
+    int largest() {
+        return largest;
+    }
+
+    static int length(Object array) {
+        if (array instanceof long[] ints) {
+            return ints.length;
+        } else if (array instanceof double[] floats) {
+            return floats.length;
+        }
+        return (int) (((MemorySegment) array).byteSize() / 8);
+    }
+
+    // Raw bits of an element whose index is in bounds
+    static long get(Object array, int index) {
+        if (array instanceof long[] ints) {
+            return ints[index];
+        } else if (array instanceof double[] floats) {
+            return Double.doubleToRawLongBits(floats[index]);
+        }
+        return ((MemorySegment) array).getAtIndex(ValueLayout.JAVA_LONG, index);
+    }
+
+    static void set(Object array, int index, long bits) {
+        if (array instanceof long[] ints) {
+            ints[index] = bits;
+        } else if (array instanceof double[] floats) {
+            floats[index] = Double.longBitsToDouble(bits);
+        } else {
+            ((MemorySegment) array).setAtIndex(ValueLayout.JAVA_LONG, index, bits);
+        }
+    }
+
+    // Copies the values of an initializer list, as given by initializer(), to the first
+    // elements of the array
+    static void fill(Object array, Object values) {
+        if (!(array instanceof MemorySegment segment)) {
+            System.arraycopy(values, 0, array, 0, length(values));
+        } else if (values instanceof double[] floats) {
+            MemorySegment.copy(floats, 0, segment, ValueLayout.JAVA_DOUBLE, 0, floats.length);
+        } else {
+            long[] ints = (long[]) values;
+            MemorySegment.copy(ints, 0, segment, ValueLayout.JAVA_LONG, 0, ints.length);
+        }
+    }
+
+    // The values of an initializer list converted to type, in a double[] for float and a
+    // long[] otherwise, if they are all constants, so the list is copied in at once instead of
+    // evaluated element by element; null otherwise. A negative number is a constant once
+    // folded with --fold.
+    static Object initializer(List<ParseTreeNode> elements, CoreType type, List<Object> constants) {
+        long[] bits = new long[elements.size()];
+        for (int i = 0; i < bits.length; i++) {
+            ParseTreeNode node = elements.get(i);
+            while ((node.name.equals("Factor") || node.name.equals("Exp")) && node.children.size() == 1) {
+                node = node.children.get(0);
+            }
+            if (!node.name.equals("Const")) {
+                return null;
+            }
+            Object value = constants.get(node.slot);
+            bits[i] = CoreOps.convert(Evaluator.typeOf(value), type, Evaluator.bits(value));
+        }
+        if (type != CoreType.FLOAT) {
+            return bits;
+        }
+        double[] floats = new double[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            floats[i] = Double.longBitsToDouble(bits[i]);
+        }
+        return floats;
+    }
+}
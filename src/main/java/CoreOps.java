@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+// Operations whose semantics every execution engine must share. Values are passed as raw
+// 64-bit slots: int, char and bool as their integer value, float as its IEEE-754 bits.
+public final class CoreOps {
+
+    private CoreOps() {
+    }
+
+    // Integer exponentiation. A negative exponent truncates towards zero the same way
+    // integer division does, so only 1 and -1 survive it.
+    public static long pow(long base, long exponent) {
+        if (exponent < 0) {
+            if (base == 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            if (base == 1) {
+                return 1;
+            }
+            if (base == -1) {
+                return (exponent & 1) == 0 ? 1 : -1;
+            }
+            return 0;
+        }
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            exponent >>= 1;
+            base *= base;
+        }
+        return result;
+    }
+
+    public static double asFloat(CoreType type, long bits) {
+        return type == CoreType.FLOAT ? Double.longBitsToDouble(bits) : (double) bits;
+    }
+
+    public static long asInt(CoreType type, long bits) {
+        return type == CoreType.FLOAT ? (long) Double.longBitsToDouble(bits) : bits;
+    }
+
+    // Converts a value of type 'from' to the representation of type 'to', as done on
+    // assignment, parameter passing and return.
+    public static long convert(CoreType from, CoreType to, long bits) {
+        if (from == to) {
+            return bits;
+        }
+        return switch (to) {
+            case INT -> asInt(from, bits);
+            case FLOAT -> Double.doubleToRawLongBits(asFloat(from, bits));
+            case CHAR -> (char) asInt(from, bits);
+            case BOOL -> isTrue(from, bits) ? 1 : 0;
+        };
+    }
+
+    public static boolean isTrue(CoreType type, long bits) {
+        return type == CoreType.FLOAT ? Double.longBitsToDouble(bits) != 0.0 : bits != 0;
+    }
+
+    // Text printed for a value by printf(identifier) and by the %s specifier.
+    public static String display(CoreType type, long bits) {
+        return switch (type) {
+            case INT -> Long.toString(bits);
+            case FLOAT -> String.format(Locale.ROOT, "%f", Double.longBitsToDouble(bits));
+            case CHAR -> String.valueOf((char) bits);
+            case BOOL -> bits != 0 ? "true" : "false";
+        };
+    }
+
+    // printf formatting. Supports %d, %i, %f, %c, %s and %% with optional flags, width and
+    // precision; anything else is copied through unchanged.
+    public static String format(String format, CoreType[] types, long[] values, int lineNumber, int columnNumber)
+            throws EvaluationException {
+        StringBuilder out = new StringBuilder(format.length() + 16);
+        int argument = 0;
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i);
+            if (c != '%') {
+                out.append(c);
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < format.length() && "-+ 0#".indexOf(format.charAt(end)) >= 0) {
+                end++;
+            }
+            while (end < format.length() && Character.isDigit(format.charAt(end))) {
+                end++;
+            }
+            int precision = end;
+            if (end < format.length() && format.charAt(end) == '.') {
+                end++;
+                while (end < format.length() && Character.isDigit(format.charAt(end))) {
+                    end++;
+                }
+            }
+            if (end >= format.length()) {
+                out.append(format, i, format.length());
+                break;
+            }
+            char conversion = format.charAt(end);
+            if (conversion == '%') {
+                out.append('%');
+                i = end + 1;
+                continue;
+            }
+            if ("difcs".indexOf(conversion) < 0) {
+                out.append(format, i, end + 1);
+                i = end + 1;
+                continue;
+            }
+            if (argument >= values.length) {
+                throw new EvaluationException("Missing argument for format specifier '" + format.substring(i, end + 1) + "'",
+                        lineNumber, columnNumber);
+            }
+            CoreType type = types[argument];
+            long bits = values[argument++];
+            String spec = format.substring(i, end);
+            out.append(formatOne(spec, precision - i, conversion, type, bits));
+            i = end + 1;
+        }
+        return out.toString();
+    }
+
+    private static String formatOne(String spec, int precisionStart, char conversion, CoreType type, long bits) {
+        Object value = switch (conversion) {
+            case 'd', 'i' -> asInt(type, bits);
+            case 'f' -> asFloat(type, bits);
+            case 'c' -> (char) asInt(type, bits);
+            default -> display(type, bits);
+        };
+        char javaConversion = conversion == 'i' ? 'd' : conversion;
+        if (javaConversion == 'c' || javaConversion == 'd') {
+            spec = spec.substring(0, precisionStart); // Java rejects a precision here
+        }
+        try {
+            return String.format(Locale.ROOT, spec + javaConversion, value);
+        } catch (java.util.IllegalFormatException e) {
+            return String.format(Locale.ROOT, "%" + javaConversion, value);
+        }
+    }
+
+    // Next whitespace separated word of input for scanf, or null at end of input.
+    public static String nextInputWord(Reader in) throws IOException {
+        int c = in.read();
+        while (c != -1 && Character.isWhitespace(c)) {
+            c = in.read();
+        }
+        if (c == -1) {
+            return null;
+        }
+        StringBuilder word = new StringBuilder();
+        while (c != -1 && !Character.isWhitespace(c)) {
+            word.append((char) c);
+            c = in.read();
+        }
+        return word.toString();
+    }
+
+    // Parses a word read by scanf into a value of the given type.
+    public static long parseInput(String word, CoreType type) {
+        return switch (type) {
+            case INT -> Long.parseLong(word);
+            case FLOAT -> Double.doubleToRawLongBits(Double.parseDouble(word));
+            case CHAR -> word.charAt(0);
+            case BOOL -> {
+                if (word.equalsIgnoreCase("true")) {
+                    yield 1;
+                }
+                if (word.equalsIgnoreCase("false")) {
+                    yield 0;
+                }
+                yield Double.parseDouble(word) != 0.0 ? 1 : 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+public enum CoreType {
+    INT, FLOAT, CHAR, BOOL;
+
+    // Type named by a Data_Type node: Data_Type(int | float | char | bool)
+    public static CoreType of(ParseTreeNode dataType) {
+        return switch (dataType.children.get(0).token.type) {
+            case INT_KW -> INT;
+            case FLOAT_KW -> FLOAT;
+            case CHAR_KW -> CHAR;
+            case BOOL_KW -> BOOL;
+            default -> throw new IllegalArgumentException("Not a data type: " + dataType.name);
+        };
+    }
+
+    public String keyword() {
+        return name().toLowerCase();
+    }
+}
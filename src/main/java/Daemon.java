@@ -0,0 +1,415 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// A resident interpreter listening on a Unix domain socket, so that tools which translate one
+// file at a time get a JVM whose scanner and parser are already compiled. DaemonClient sends a
+// command line with its working directory; it runs as Interpreter.run would run it, and its
+// output goes back as it is printed, followed by the exit status.
+//
+//   java Daemon [socket]
+//
+// Whoever can connect runs commands as the daemon's user, so only that user may: the default
+// socket is in a directory of its own that only the user can enter, and any socket is made
+// readable and writable by the user alone before the first connection is accepted.
+//
+// Requests run at the same time, each on a virtual thread. System.out and System.err are
+// replaced by streams that write to the connection of the request the printing thread belongs
+// to, so messages printed deep in the parser reach the right client.
+//
+// Frames to the client are a kind byte and a length, then as many bytes of standard output or
+// error, or for EXIT the status. Frames from the client after the command line carry its
+// standard input, a length then as many bytes, with -1 for the end; they are only read when a
+// program asks for input.
+//
+// A client that is not a JVM, such as bin/jinterpreter-client over socat or nc, sends lines
+// instead: the working directory, an absolute path, then one argument per line and an empty
+// line, and the rest of the connection is its standard input. Each line back is a kind letter
+// and the text: o and e for a line of standard output or error, O and E for text printed
+// without a newline yet, as a prompt is, and x with the exit status. A binary command line
+// never starts with '/', as that would make the working directory over 12 KB long.
+public class Daemon {
+
+    static final byte EXIT = 0;
+    static final byte OUT = 1;
+    static final byte ERR = 2;
+
+    private static final long WARM_UP_NANOS = 2_000_000_000L;
+
+    private static final InheritableThreadLocal<Connection> CURRENT = new InheritableThreadLocal<>();
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "jinterpreter-" + System.getProperty("user.name"), "daemon.sock");
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path socket = args.length > 0 ? Paths.get(args[0]) : defaultSocket();
+        if (args.length == 0 && POSIX && !privateDirectory(socket.getParent())) {
+            System.err.println(socket.getParent() + " must be a directory only " + System.getProperty("user.name")
+                    + " can enter: remove it, or give the daemon another socket");
+            System.exit(2);
+        }
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        if (Files.exists(socket)) {
+            try {
+                SocketChannel.open(address).close();
+                System.err.println("A daemon is already listening on " + socket);
+                return;
+            } catch (IOException e) {
+                Files.delete(socket); // left behind by a daemon that did not shut down
+            }
+        }
+
+        warmUp();
+        System.setOut(new PrintStream(new Routed(OUT, System.out), true));
+        System.setErr(new PrintStream(new Routed(ERR, System.err), true));
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            socket.toFile().deleteOnExit();
+            if (POSIX) {
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            }
+            System.out.println("Listening on " + socket);
+            while (true) {
+                SocketChannel client = server.accept();
+                Thread.startVirtualThread(() -> serve(client));
+            }
+        }
+    }
+
+    // Creates directory for the user alone, or checks that it already is: a directory, not a
+    // link, owned by the user and closed to everyone else
+    private static boolean privateDirectory(Path directory) throws IOException {
+        if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                // created by another daemon starting at the same time: checked below
+            }
+        }
+        return Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)
+                && Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS).getName().equals(System.getProperty("user.name"))
+                && OWNER_ONLY.containsAll(Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS));
+    }
+
+    private static void serve(SocketChannel channel) {
+        try (channel) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new ChannelInput(channel)));
+            in.mark(1);
+            boolean lines = in.read() == '/';
+            in.reset();
+            Path workingDirectory;
+            String[] args;
+            if (lines) {
+                workingDirectory = Paths.get(readLine(in));
+                List<String> arguments = new ArrayList<>();
+                for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                    arguments.add(line);
+                }
+                args = arguments.toArray(String[]::new);
+            } else {
+                workingDirectory = Paths.get(in.readUTF());
+                args = new String[in.readInt()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = in.readUTF();
+                }
+            }
+
+            Connection connection = new Connection(new DataOutputStream(new BufferedOutputStream(new ChannelOutput(channel))), lines);
+            CURRENT.set(connection);
+            int status;
+            try {
+                status = Interpreter.run(args, workingDirectory, new Input(in, connection, lines));
+            } catch (RuntimeException | StackOverflowError e) {
+                System.err.println("Error: " + e);
+                status = 1;
+            } finally {
+                System.out.flush();
+                System.err.flush();
+                CURRENT.remove();
+            }
+            connection.exit(status);
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new EOFException("Command line ended early");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    // Scans, parses and writes out a generated program until the JIT has compiled that path
+    private static void warmUp() throws IOException {
+        Path directory = Files.createTempDirectory("jinterpreter-warm-up");
+        try {
+            Path source = directory.resolve("warm_up.core");
+            Files.writeString(source, warmUpProgram(50));
+            Interpreter.Options[] variants = {
+                    new Interpreter.Options("reader", "sequential", false, false, "text", "text", null),
+                    new Interpreter.Options("mapped", "sequential", false, false, "text", "text", null)
+            };
+            long start = System.nanoTime();
+            for (int round = 0; System.nanoTime() - start < WARM_UP_NANOS; round++) {
+                Interpreter.translate(source.toString(), directory, variants[round % variants.length], true,
+                        new Metrics(source.toString(), false));
+            }
+        } catch (ScannerException | Parser.ParserException e) {
+            throw new IllegalStateException("Warm-up program does not parse", e);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // A program of that many functions with a statement of every kind and an operator of every
+    // level, whose main calls the first and prints what the chain of calls returns; the JVM
+    // that trains the class data sharing archive runs it too
+    static String warmUpProgram(int functions) {
+        StringBuilder source = new StringBuilder("int calls;\nfloat rate = 0.25;\n");
+        for (int i = 0; i < functions; i++) {
+            source.append("int step").append(i).append("(int n, float x) {\n")
+                    .append("    int k, sum = 0;\n")
+                    .append("    int seen[3] = {2, 4, 8};\n")
+                    .append("    calls = calls + 1;\n")
+                    .append("    for (k = 0; k < n; k = k + 1) {\n")
+                    .append("        if (k % 3 == 0 || x >= 1.0 && !(k == 1)) {\n")
+                    .append("            sum = sum + seen[2] * (k - 1) ^ 2 / 4;\n")
+                    .append("        } else {\n")
+                    .append("            sum = sum - k * x;\n")
+                    .append("        }\n")
+                    .append("    }\n")
+                    .append("    while (sum > 50) {\n")
+                    .append("        sum = sum / 3;\n")
+                    .append("    }\n")
+                    .append(i == functions - 1 ? "    return sum;\n"
+                            : "    return sum + step" + (i + 1) + "(n + 1, x + rate);\n")
+                    .append("}\n");
+        }
+        return source.append("int main() {\n    printf(\"%d %d\\n\", step0(4, 0.5), calls);\n    return 0;\n}\n")
+                .toString();
+    }
+
+    private static final class Connection {
+        private final DataOutputStream out;
+        private final boolean lines;
+        // In line mode, text printed since the last newline and the stream it was printed to
+        private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        private byte partialKind;
+
+        Connection(DataOutputStream out, boolean lines) {
+            this.out = out;
+            this.lines = lines;
+        }
+
+        synchronized void write(byte kind, byte[] bytes, int offset, int length) throws IOException {
+            if (!lines) {
+                out.writeByte(kind);
+                out.writeInt(length);
+                out.write(bytes, offset, length);
+                return;
+            }
+            if (partialKind != kind) {
+                endPartial(); // keeps the order of standard output and error
+                partialKind = kind;
+            }
+            int start = offset;
+            for (int i = offset; i < offset + length; i++) {
+                if (bytes[i] == '\n') {
+                    out.writeByte(kind == OUT ? 'o' : 'e');
+                    partial.writeTo(out);
+                    partial.reset();
+                    out.write(bytes, start, i + 1 - start);
+                    start = i + 1;
+                }
+            }
+            partial.write(bytes, start, offset + length - start);
+        }
+
+        private void endPartial() throws IOException {
+            if (partial.size() > 0) {
+                out.writeByte(partialKind == OUT ? 'O' : 'E');
+                partial.writeTo(out);
+                partial.reset();
+                out.writeByte('\n');
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            if (lines) {
+                endPartial();
+            }
+            out.flush();
+        }
+
+        synchronized void exit(int status) throws IOException {
+            if (lines) {
+                endPartial();
+                out.write(("x" + status + "\n").getBytes(StandardCharsets.US_ASCII));
+            } else {
+                out.writeByte(EXIT);
+                out.writeInt(status);
+            }
+            out.flush();
+        }
+    }
+
+    // Output of the current request's connection; of the daemon itself outside of requests
+    private static final class Routed extends OutputStream {
+        private final byte kind;
+        private final PrintStream own;
+
+        Routed(byte kind, PrintStream own) {
+            this.kind = kind;
+            this.own = own;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            Connection connection = CURRENT.get();
+            if (connection == null) {
+                own.write(bytes, offset, length);
+            } else {
+                connection.write(kind, bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            Connection connection = CURRENT.get();
+            if (connection == null) {
+                own.flush();
+            } else {
+                connection.flush();
+            }
+        }
+    }
+
+    // The client's standard input; output is flushed first, so a prompt is seen before it blocks.
+    // In line mode it is the rest of the connection rather than frames.
+    private static final class Input extends InputStream {
+        private final DataInputStream in;
+        private final Connection connection;
+        private final boolean lines;
+        private int remaining;
+        private boolean ended;
+
+        Input(DataInputStream in, Connection connection, boolean lines) {
+            this.in = in;
+            this.connection = connection;
+            this.lines = lines;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (lines) {
+                connection.flush();
+                return in.read(bytes, offset, length);
+            }
+            while (remaining == 0 && !ended) {
+                connection.flush();
+                remaining = in.readInt();
+                ended = remaining < 0;
+            }
+            if (ended) {
+                return -1;
+            }
+            int read = in.read(bytes, offset, Math.min(length, remaining));
+            remaining -= read;
+            return read;
+        }
+    }
+
+    // Streams straight over the channel: reading and writing may block at the same time, which
+    // the streams of Channels serialize
+    static final class ChannelInput extends InputStream {
+        private final SocketChannel channel;
+
+        ChannelInput(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return channel.read(ByteBuffer.wrap(bytes, offset, length));
+        }
+    }
+
+    static final class ChannelOutput extends OutputStream {
+        private final SocketChannel channel;
+
+        ChannelOutput(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+// Runs an Interpreter command line in a Daemon instead of a JVM of its own: the same arguments
+// and working directory, the same output and exit status. Standard input is only forwarded
+// for commands that run the program. Starting this JVM costs about as much as a run without
+// the daemon; bin/jinterpreter-client does the same from a shell.
+//
+//   java DaemonClient [--socket=<path>] <Interpreter arguments>
+public class DaemonClient {
+
+    public static void main(String[] args) throws IOException {
+        Path socket = Daemon.defaultSocket();
+        if (args.length > 0 && args[0].startsWith("--socket=")) {
+            socket = Paths.get(args[0].substring("--socket=".length()));
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            System.err.println("No daemon listening on " + socket + ": start one with java Daemon " + socket);
+            System.exit(2);
+            return;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new Daemon.ChannelOutput(channel)));
+        out.writeUTF(Paths.get("").toAbsolutePath().toString());
+        out.writeInt(args.length);
+        for (String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+        if (Arrays.stream(args).anyMatch(arg -> arg.equals("--run") || arg.startsWith("--engine="))) {
+            Thread input = new Thread(() -> forwardInput(out));
+            input.setDaemon(true);
+            input.start();
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new Daemon.ChannelInput(channel)));
+        byte[] buffer = new byte[8192];
+        while (true) {
+            byte kind = in.readByte();
+            int length = in.readInt();
+            if (kind == Daemon.EXIT) {
+                System.out.flush();
+                System.err.flush();
+                System.exit(length);
+            }
+            PrintStream target = kind == Daemon.ERR ? System.err : System.out;
+            while (length > 0) {
+                int read = in.read(buffer, 0, Math.min(buffer.length, length));
+                if (read < 0) {
+                    throw new IOException("Daemon closed the connection");
+                }
+                target.write(buffer, 0, read);
+                length -= read;
+            }
+            target.flush();
+        }
+    }
+
+    private static void forwardInput(DataOutputStream out) {
+        byte[] buffer = new byte[8192];
+        try {
+            int read;
+            while ((read = System.in.read(buffer)) > 0) {
+                out.writeInt(read);
+                out.write(buffer, 0, read);
+                out.flush();
+            }
+            out.writeInt(-1);
+            out.flush();
+        } catch (IOException e) {
+            // the program finished without reading it all
+        }
+    }
+}
@@ -0,0 +1,9 @@
+class EvaluationException extends Exception {
+    public EvaluationException(String message, int lineNumber, int columnNumber) {
+        super(String.format("%s (line: %d, column: %d)", message, lineNumber, columnNumber));
+    }
+
+    public EvaluationException(String message, Token token) {
+        this(message, token == null ? -1 : token.lineNumber, token == null ? -1 : token.columnNumber);
+    }
+}
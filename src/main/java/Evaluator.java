@@ -0,0 +1,545 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Tree-walking execution engine. Runs the parse tree produced by Parser after Resolver has
+// bound every identifier to a slot, so variable access is a plain array index. Call frames
+// are pooled per function and recursion depth and reused across calls.
+public class Evaluator implements ExecutionEngine {
+
+    private final PrintStream out;
+    private final Reader in;
+
+    private Resolver resolver;
+    private Object[] constants;
+    private Object[] globals;
+    private Object[] frame;
+    private Resolver.Function function;
+    private Object returnValue;
+
+    private Object[][][] framePools;
+    private int[] depths;
+    private int callDepth;
+    private CoreArrays arrays;
+
+    public Evaluator(PrintStream out, Reader in) {
+        this.out = out;
+        this.in = in;
+    }
+
+    @Override
+    public void run(ParseTreeNode program) throws EvaluationException {
+        resolver = new Resolver();
+        resolver.resolve(program);
+        constants = resolver.constants.toArray();
+        globals = new Object[resolver.globals.size];
+        framePools = new Object[resolver.functions.size()][][];
+        depths = new int[resolver.functions.size()];
+        callDepth = 0;
+        arrays = new CoreArrays();
+        for (int i = 0; i < framePools.length; i++) {
+            framePools[i] = new Object[1][];
+        }
+
+        try {
+            for (ParseTreeNode declaration : program.children) {
+                ParseTreeNode node = declaration.children.get(0);
+                if (!node.name.equals("Function_Declaration")) {
+                    execute(node);
+                }
+            }
+            Resolver.Function main = resolver.function("main");
+            if (main != null && main.body != null) {
+                if (main.parameterTypes.length != 0) {
+                    throw new EvaluationException("Function 'main' must not take parameters", main.position());
+                }
+                Object[] mainFrame = acquireFrame(main);
+                try {
+                    invoke(main, mainFrame);
+                } finally {
+                    depths[main.index]--;
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    @Override
+    public CoreArrays arrays() {
+        return arrays;
+    }
+
+    // Executes a statement-level node. Returns true when a return statement was executed.
+    private boolean execute(ParseTreeNode node) throws EvaluationException {
+        List<ParseTreeNode> c = node.children;
+        switch (node.name) {
+            case "Block":
+                for (ParseTreeNode item : c.get(1).children) {
+                    if (execute(item.children.get(0))) {
+                        return true;
+                    }
+                }
+                return false;
+            case "Statement":
+                if (c.size() == 2) {
+                    evaluate(c.get(0));
+                    return false;
+                }
+                return !c.get(0).name.equals("SEMICOLON") && execute(c.get(0));
+            case "Expression_Statement":
+                evaluate(c.get(0));
+                return false;
+            case "Variable_Declaration":
+                declareVariables(node);
+                return false;
+            case "Array_Declaration":
+                declareArray(node);
+                return false;
+            case "Return_Statement":
+                returnValue = convert(evaluate(c.get(1)), function.returnType);
+                return true;
+            case "If_Statement":
+                if (isTrue(evaluate(c.get(2)))) {
+                    return execute(c.get(4));
+                }
+                return c.size() > 5 && execute(c.get(5).children.get(1));
+            case "While_Statement": {
+                ParseTreeNode condition = c.get(2);
+                ParseTreeNode body = c.get(4);
+                while (isTrue(evaluate(condition))) {
+                    if (execute(body)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            case "For_Statement": {
+                int i;
+                ParseTreeNode init = c.get(2);
+                if (init.name.equals("Variable_Declaration") || init.name.equals("Array_Declaration")) {
+                    execute(init);
+                    i = 3;
+                } else {
+                    evaluate(init);
+                    i = 4;
+                }
+                ParseTreeNode condition = c.get(i);
+                ParseTreeNode update = c.get(i + 2);
+                ParseTreeNode body = c.get(i + 4);
+                while (isTrue(evaluate(condition))) {
+                    if (execute(body)) {
+                        return true;
+                    }
+                    evaluate(update);
+                }
+                return false;
+            }
+            case "Input_Statement":
+                input(node);
+                return false;
+            case "Output_Statement":
+                output(node);
+                return false;
+            default:
+                throw new EvaluationException("Cannot execute " + node.name, node.firstToken());
+        }
+    }
+
+    private Object evaluate(ParseTreeNode node) throws EvaluationException {
+        List<ParseTreeNode> c = node.children;
+        switch (node.name) {
+            case "Factor":
+                return evaluateFactor(node);
+            case "Const":
+                return constants[node.slot];
+            case "Additive":
+            case "Multiplicative": {
+                Object value = evaluate(c.get(0));
+                for (int i = 1; i < c.size(); i += 2) {
+                    value = arithmetic(c.get(i), value, evaluate(c.get(i + 1)));
+                }
+                return value;
+            }
+            case "Exponent": {
+                Object left = evaluate(c.get(0));
+                return arithmetic(c.get(1), left, evaluate(c.get(2)));
+            }
+            case "Relational":
+            case "Equality": {
+                Object value = evaluate(c.get(0));
+                for (int i = 1; i < c.size(); i += 2) {
+                    value = compare(c.get(i).token.type, value, evaluate(c.get(i + 1)));
+                }
+                return value;
+            }
+            case "Logical_Or": {
+                Object value = evaluate(c.get(0));
+                for (int i = 2; i < c.size() && !isTrue(value); i += 2) {
+                    value = evaluate(c.get(i));
+                }
+                return isTrue(value);
+            }
+            case "Logical_And": {
+                Object value = evaluate(c.get(0));
+                for (int i = 2; i < c.size() && isTrue(value); i += 2) {
+                    value = evaluate(c.get(i));
+                }
+                return isTrue(value);
+            }
+            case "Unary_Exp": {
+                Object operand = evaluate(c.get(1));
+                return switch (c.get(0).token.type) {
+                    case NOT -> !isTrue(operand);
+                    case MINUS -> operand instanceof Double d ? (Object) (-d) : (Object) (-toInt(operand));
+                    default -> operand instanceof Double ? operand : (Object) toInt(operand);
+                };
+            }
+            case "Exp":
+                if (c.size() == 1) {
+                    return evaluate(c.get(0));
+                }
+                return assign(node);
+            default:
+                throw new EvaluationException("Cannot evaluate " + node.name, node.firstToken());
+        }
+    }
+
+    private Object evaluateFactor(ParseTreeNode factor) throws EvaluationException {
+        List<ParseTreeNode> c = factor.children;
+        ParseTreeNode first = c.get(0);
+        switch (first.name) {
+            case "Const":
+                return constants[first.slot];
+            case "Identifier":
+                if (c.size() == 1) {
+                    return (first.global ? globals : frame)[first.slot];
+                }
+                if (c.get(1).name.equals("LEFT_PARENTHESIS")) {
+                    return call(factor);
+                }
+                return loadElement(first, c.get(1));
+            default:
+                return evaluate(first);
+        }
+    }
+
+    private Object assign(ParseTreeNode exp) throws EvaluationException {
+        List<ParseTreeNode> c = exp.children;
+        ParseTreeNode target = c.get(0);
+        if (c.get(1).name.equals("LEFT_BRACKET")) {
+            return storeElement(target, c.get(2), evaluate(c.get(4)));
+        }
+        Object value = convert(evaluate(c.get(2)), typeOf(target));
+        (target.global ? globals : frame)[target.slot] = value;
+        return value;
+    }
+
+    private void declareVariables(ParseTreeNode declaration) throws EvaluationException {
+        List<ParseTreeNode> c = declaration.children;
+        CoreType type = CoreType.of(c.get(0));
+        for (int i = 1; i < c.size(); i++) {
+            ParseTreeNode identifier = c.get(i);
+            if (!identifier.name.equals("Identifier")) {
+                continue;
+            }
+            Object value;
+            if (c.get(i + 1).name.equals("ASSIGN")) {
+                value = convert(evaluate(c.get(i + 2)), type);
+                i += 2;
+            } else {
+                value = box(type, 0);
+            }
+            (identifier.global ? globals : frame)[identifier.slot] = value;
+        }
+    }
+
+    private void declareArray(ParseTreeNode declaration) throws EvaluationException {
+        List<ParseTreeNode> c = declaration.children;
+        CoreType type = CoreType.of(c.get(0));
+        ParseTreeNode identifier = c.get(1);
+        List<ParseTreeNode> elements = new ArrayList<>();
+        for (ParseTreeNode child : c) {
+            if (child.name.equals("Argument_List")) {
+                for (ParseTreeNode element : child.children) {
+                    if (element.name.equals("Exp")) {
+                        elements.add(element);
+                    }
+                }
+            }
+        }
+        long length = (identifier.global ? resolver.globals : function.slots).lengths[identifier.slot];
+        if (elements.size() > length) {
+            throw new EvaluationException("Too many initializers for array '" + identifier.token.lexeme + "'", identifier.token);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new EvaluationException("Array '" + identifier.token.lexeme + "' is too large", identifier.token);
+        }
+
+        Object array = arrays.allocate(type, (int) length);
+        (identifier.global ? globals : frame)[identifier.slot] = array;
+        Object initializer = CoreArrays.initializer(elements, type, resolver.constants);
+        if (initializer != null) {
+            CoreArrays.fill(array, initializer);
+            return;
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            CoreArrays.set(array, i, bits(convert(evaluate(elements.get(i)), type)));
+        }
+    }
+
+    private Object loadElement(ParseTreeNode identifier, ParseTreeNode indexConst) throws EvaluationException {
+        Object array = (identifier.global ? globals : frame)[identifier.slot];
+        return box(typeOf(identifier), CoreArrays.get(array, checkIndex(identifier, array, indexConst)));
+    }
+
+    private Object storeElement(ParseTreeNode identifier, ParseTreeNode indexConst, Object value) throws EvaluationException {
+        Object array = (identifier.global ? globals : frame)[identifier.slot];
+        int index = checkIndex(identifier, array, indexConst);
+        Object converted = convert(value, typeOf(identifier));
+        CoreArrays.set(array, index, bits(converted));
+        return converted;
+    }
+
+    private int checkIndex(ParseTreeNode identifier, Object array, ParseTreeNode indexConst) throws EvaluationException {
+        long index = toInt(constants[indexConst.slot]);
+        int length = CoreArrays.length(array);
+        if (index < 0 || index >= length) {
+            throw new EvaluationException("Array index " + index + " out of bounds for '" + identifier.token.lexeme
+                    + "' of length " + length, identifier.token);
+        }
+        return (int) index;
+    }
+
+    private Object call(ParseTreeNode factor) throws EvaluationException {
+        ParseTreeNode identifier = factor.children.get(0);
+        Resolver.Function callee = resolver.functions.get(identifier.slot);
+        Object[] calleeFrame = acquireFrame(callee);
+        try {
+            if (factor.children.size() > 2) {
+                int parameter = 0;
+                for (ParseTreeNode argument : factor.children.get(2).children) {
+                    if (argument.name.equals("Exp")) {
+                        calleeFrame[parameter] = convert(evaluate(argument), callee.parameterTypes[parameter]);
+                        parameter++;
+                    }
+                }
+            }
+            return invoke(callee, calleeFrame);
+        } finally {
+            depths[callee.index]--;
+        }
+    }
+
+    private Object invoke(Resolver.Function callee, Object[] calleeFrame) throws EvaluationException {
+        if (callDepth == MAX_CALL_DEPTH) {
+            throw ExecutionEngine.tooDeep(callee);
+        }
+        callDepth++;
+        Object[] savedFrame = frame;
+        Resolver.Function savedFunction = function;
+        frame = calleeFrame;
+        function = callee;
+        try {
+            if (execute(callee.body)) {
+                Object value = returnValue;
+                returnValue = null;
+                return value;
+            }
+            return box(callee.returnType, 0);
+        } catch (StackOverflowError e) {
+            throw new EvaluationException("Stack overflow in call to '" + callee.name + "'", callee.position());
+        } finally {
+            callDepth--;
+            frame = savedFrame;
+            function = savedFunction;
+        }
+    }
+
+    // Frames are reused: slots are always written by a parameter binding or a declaration
+    // before they are read, so a frame left over from an earlier call never needs clearing.
+    private Object[] acquireFrame(Resolver.Function callee) {
+        Object[][] pool = framePools[callee.index];
+        int depth = depths[callee.index]++;
+        if (depth == pool.length) {
+            pool = java.util.Arrays.copyOf(pool, depth * 2);
+            framePools[callee.index] = pool;
+        }
+        Object[] calleeFrame = pool[depth];
+        if (calleeFrame == null) {
+            calleeFrame = new Object[callee.slots.size];
+            pool[depth] = calleeFrame;
+        }
+        return calleeFrame;
+    }
+
+    private void input(ParseTreeNode node) throws EvaluationException {
+        out.flush();
+        for (ParseTreeNode target : node.children) {
+            if (!target.name.equals("Identifier")) {
+                continue;
+            }
+            String word;
+            try {
+                word = CoreOps.nextInputWord(in);
+            } catch (IOException e) {
+                throw new EvaluationException("Cannot read input: " + e.getMessage(), target.token);
+            }
+            if (word == null) {
+                return;
+            }
+            CoreType type = typeOf(target);
+            try {
+                (target.global ? globals : frame)[target.slot] = box(type, CoreOps.parseInput(word, type));
+            } catch (NumberFormatException e) {
+                throw new EvaluationException("Invalid input '" + word + "' for '" + target.token.lexeme + "'", target.token);
+            }
+        }
+    }
+
+    private void output(ParseTreeNode node) throws EvaluationException {
+        List<ParseTreeNode> c = node.children;
+        ParseTreeNode first = c.get(2);
+        if (first.name.equals("Identifier")) {
+            Object value = (first.global ? globals : frame)[first.slot];
+            out.print(CoreOps.display(typeOf(value), bits(value)));
+            return;
+        }
+        int count = (c.size() - 5) / 2;
+        CoreType[] types = new CoreType[count];
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            Object value = evaluate(c.get(4 + 2 * i));
+            types[i] = typeOf(value);
+            values[i] = bits(value);
+        }
+        out.print(CoreOps.format(first.token.lexeme, types, values, first.token.lineNumber, first.token.columnNumber));
+    }
+
+    // Value helpers below are shared with ConstantFolder, Resolver, CoreArrays and the AST
+    // engine, so that constants and boxed results convert as they do in this engine
+
+    static Object arithmetic(ParseTreeNode operator, Object left, Object right) throws EvaluationException {
+        Token.TokenType op = operator.token.type;
+        if (left instanceof Double || right instanceof Double) {
+            double a = toFloat(left);
+            double b = toFloat(right);
+            return switch (op) {
+                case PLUS -> a + b;
+                case MINUS -> a - b;
+                case MULTIPLY -> a * b;
+                case DIVIDE -> a / b;
+                case MODULO -> a % b;
+                case EXPONENT -> Math.pow(a, b);
+                default -> throw new EvaluationException("Unknown operator " + operator.token.lexeme, operator.token);
+            };
+        }
+        long a = toInt(left);
+        long b = toInt(right);
+        try {
+            return switch (op) {
+                case PLUS -> a + b;
+                case MINUS -> a - b;
+                case MULTIPLY -> a * b;
+                case DIVIDE -> a / b;
+                case MODULO -> a % b;
+                case EXPONENT -> CoreOps.pow(a, b);
+                default -> throw new EvaluationException("Unknown operator " + operator.token.lexeme, operator.token);
+            };
+        } catch (ArithmeticException e) {
+            throw new EvaluationException("Division by zero", operator.token);
+        }
+    }
+
+    static Boolean compare(Token.TokenType op, Object left, Object right) {
+        if (left instanceof Double || right instanceof Double) {
+            double a = toFloat(left);
+            double b = toFloat(right);
+            return switch (op) {
+                case LESS -> a < b;
+                case LESS_EQUAL -> a <= b;
+                case GREATER -> a > b;
+                case GREATER_EQUAL -> a >= b;
+                case EQUAL -> a == b;
+                default -> a != b;
+            };
+        }
+        long a = toInt(left);
+        long b = toInt(right);
+        return switch (op) {
+            case LESS -> a < b;
+            case LESS_EQUAL -> a <= b;
+            case GREATER -> a > b;
+            case GREATER_EQUAL -> a >= b;
+            case EQUAL -> a == b;
+            default -> a != b;
+        };
+    }
+
+    private CoreType typeOf(ParseTreeNode identifier) {
+        return identifier.global ? resolver.globals.types[identifier.slot] : function.slots.types[identifier.slot];
+    }
+
+    static CoreType typeOf(Object value) {
+        if (value instanceof Double) {
+            return CoreType.FLOAT;
+        } else if (value instanceof Character) {
+            return CoreType.CHAR;
+        } else if (value instanceof Boolean) {
+            return CoreType.BOOL;
+        }
+        return CoreType.INT;
+    }
+
+    static long bits(Object value) {
+        if (value instanceof Double d) {
+            return Double.doubleToRawLongBits(d);
+        }
+        return toInt(value);
+    }
+
+    static Object box(CoreType type, long bits) {
+        return switch (type) {
+            case INT -> bits;
+            case FLOAT -> Double.longBitsToDouble(bits);
+            case CHAR -> (char) bits;
+            case BOOL -> bits != 0;
+        };
+    }
+
+    static Object convert(Object value, CoreType type) {
+        CoreType from = typeOf(value);
+        if (from == type) {
+            return value;
+        }
+        return box(type, CoreOps.convert(from, type, bits(value)));
+    }
+
+    static long toInt(Object value) {
+        if (value instanceof Long l) {
+            return l;
+        } else if (value instanceof Double d) {
+            return (long) (double) d;
+        } else if (value instanceof Character ch) {
+            return ch;
+        }
+        return (Boolean) value ? 1 : 0;
+    }
+
+    static double toFloat(Object value) {
+        return value instanceof Double d ? d : (double) toInt(value);
+    }
+
+    static boolean isTrue(Object value) {
+        if (value instanceof Long l) {
+            return l != 0;
+        } else if (value instanceof Boolean b) {
+            return b;
+        } else if (value instanceof Double d) {
+            return d != 0.0;
+        }
+        return (Character) value != 0;
+    }
+}
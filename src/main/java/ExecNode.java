@@ -0,0 +1,59 @@
+// Base of the executable node tree run by AstInterpreter. NodeBuilder gives every node operands
+// of the static types it runs on, so a typed execute method is only called for a value of its
+// type; assertions check this when enabled.
+abstract class ExecNode {
+
+    // Local variables of one call: scalar values as raw bits (see CoreOps), arrays by reference,
+    // and the raw bits of the value returned
+    static final class Frame {
+        final long[] values;
+        final Object[] arrays;
+        long result;
+
+        Frame(int size) {
+            values = new long[size];
+            arrays = new Object[size];
+        }
+    }
+
+    abstract static class Expression extends ExecNode {
+
+        abstract Object execute(Frame frame) throws EvaluationException;
+
+        // For an expression of static type int
+        long executeInt(Frame frame) throws EvaluationException {
+            return (Long) execute(frame);
+        }
+
+        // For an expression of static type float
+        double executeFloat(Frame frame) throws EvaluationException {
+            return (Double) execute(frame);
+        }
+
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            return Evaluator.isTrue(execute(frame));
+        }
+
+        void executeVoid(Frame frame) throws EvaluationException {
+            execute(frame);
+        }
+
+        // Raw bits of the value of an expression of the given static type
+        long executeAs(CoreType type, Frame frame) throws EvaluationException {
+            if (type == CoreType.INT) {
+                return executeInt(frame);
+            } else if (type == CoreType.FLOAT) {
+                return Double.doubleToRawLongBits(executeFloat(frame));
+            }
+            Object value = execute(frame);
+            assert Evaluator.typeOf(value) == type : value + " is not a " + type;
+            return Evaluator.bits(value);
+        }
+    }
+
+    // Executes a statement; returns true when a return statement was executed
+    abstract static class Statement extends ExecNode {
+
+        abstract boolean execute(Frame frame) throws EvaluationException;
+    }
+}
@@ -0,0 +1,19 @@
+// Runs a parsed .core program: global declarations in order, then main() if it is defined.
+public interface ExecutionEngine {
+
+    // Calls a program may nest, the same in every engine. Interpreter runs programs on a
+    // thread with STACK_SIZE bytes of stack, enough for the tree engine to reach it.
+    int MAX_CALL_DEPTH = 100_000;
+    long STACK_SIZE = 1L << 30;
+
+    void run(ParseTreeNode program) throws EvaluationException;
+
+    // The arrays allocated by the last run, for the memory report; null before any
+    CoreArrays arrays();
+
+    // The error of a call nested more than MAX_CALL_DEPTH deep
+    static EvaluationException tooDeep(Resolver.Function callee) {
+        return new EvaluationException("More than " + MAX_CALL_DEPTH + " nested calls in call to '" + callee.name + "'",
+                callee.position());
+    }
+}
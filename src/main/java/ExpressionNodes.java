@@ -0,0 +1,640 @@
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+// Expression nodes of AstInterpreter. Arithmetic and comparisons come in int and float
+// versions, which NodeBuilder picks by the static types of their operands, converting the
+// operands of other types with Convert nodes. Values pass between nodes as long and double
+// through executeInt, executeFloat and executeAs, and calls return raw bits, so a program
+// runs without allocating.
+final class ExpressionNodes {
+
+    private ExpressionNodes() {
+    }
+
+    static final class Literal extends ExecNode.Expression {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return value;
+        }
+    }
+
+    // Shared by all nodes that name a variable; globals is null for locals of the current frame
+    abstract static class Variable extends ExecNode.Expression {
+        final Frame globals;
+        final int slot;
+        final CoreType type;
+        final Token token;
+
+        Variable(Frame globals, int slot, CoreType type, Token token) {
+            this.globals = globals;
+            this.slot = slot;
+            this.type = type;
+            this.token = token;
+        }
+
+        final Frame frame(Frame current) {
+            return globals != null ? globals : current;
+        }
+    }
+
+    static final class Read extends Variable {
+
+        Read(Frame globals, int slot, CoreType type, Token token) {
+            super(globals, slot, type, token);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Evaluator.box(type, frame(frame).values[slot]);
+        }
+
+        @Override
+        long executeInt(Frame frame) {
+            assert type == CoreType.INT;
+            return frame(frame).values[slot];
+        }
+
+        @Override
+        double executeFloat(Frame frame) {
+            assert type == CoreType.FLOAT;
+            return Double.longBitsToDouble(frame(frame).values[slot]);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) {
+            long bits = frame(frame).values[slot];
+            return type == CoreType.FLOAT ? Double.longBitsToDouble(bits) != 0.0 : bits != 0;
+        }
+
+        @Override
+        long executeAs(CoreType type, Frame frame) {
+            return CoreOps.convert(this.type, type, frame(frame).values[slot]);
+        }
+    }
+
+    // value is of the variable's type
+    abstract static class Write extends Variable {
+        final Expression value;
+
+        Write(Frame globals, int slot, CoreType type, Token token, Expression value) {
+            super(globals, slot, type, token);
+            this.value = value;
+        }
+    }
+
+    static final class IntWrite extends Write {
+
+        IntWrite(Frame globals, int slot, CoreType type, Token token, Expression value) {
+            super(globals, slot, type, token, value);
+        }
+
+        @Override
+        long executeInt(Frame frame) throws EvaluationException {
+            long result = value.executeInt(frame);
+            frame(frame).values[slot] = result;
+            return result;
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return executeInt(frame);
+        }
+
+        @Override
+        void executeVoid(Frame frame) throws EvaluationException {
+            executeInt(frame);
+        }
+    }
+
+    static final class FloatWrite extends Write {
+
+        FloatWrite(Frame globals, int slot, CoreType type, Token token, Expression value) {
+            super(globals, slot, type, token, value);
+        }
+
+        @Override
+        double executeFloat(Frame frame) throws EvaluationException {
+            double result = value.executeFloat(frame);
+            frame(frame).values[slot] = Double.doubleToRawLongBits(result);
+            return result;
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return executeFloat(frame);
+        }
+
+        @Override
+        void executeVoid(Frame frame) throws EvaluationException {
+            executeFloat(frame);
+        }
+    }
+
+    // A char or bool variable. The value is stored as its bits, and only boxed when the write is
+    // used as a value.
+    static final class BitsWrite extends Write {
+
+        BitsWrite(Frame globals, int slot, CoreType type, Token token, Expression value) {
+            super(globals, slot, type, token, value);
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return Evaluator.box(type, store(frame));
+        }
+
+        @Override
+        void executeVoid(Frame frame) throws EvaluationException {
+            store(frame);
+        }
+
+        @Override
+        long executeAs(CoreType type, Frame frame) throws EvaluationException {
+            return CoreOps.convert(this.type, type, store(frame));
+        }
+
+        private long store(Frame frame) throws EvaluationException {
+            long bits = value.executeAs(type, frame);
+            frame(frame).values[slot] = bits;
+            return bits;
+        }
+    }
+
+    // Array elements are stored as CoreArrays allocates them: long[] (int, char, bool) or
+    // double[] (float), or a MemorySegment of raw bits when offHeap. NodeBuilder only builds an
+    // element node for an index below the declared length, so no bounds check is left to run;
+    // any other index is an OutOfBounds node.
+    abstract static class Element extends Variable {
+        final int index;
+        final boolean offHeap;
+
+        Element(Frame globals, int slot, CoreType type, Token token, int index, boolean offHeap) {
+            super(globals, slot, type, token);
+            this.index = index;
+            this.offHeap = offHeap;
+        }
+
+        final long load(Frame frame) {
+            Object array = frame(frame).arrays[slot];
+            if (offHeap) {
+                return ((MemorySegment) array).getAtIndex(ValueLayout.JAVA_LONG, index);
+            }
+            return type == CoreType.FLOAT ? Double.doubleToRawLongBits(((double[]) array)[index]) : ((long[]) array)[index];
+        }
+
+        final void set(Frame frame, long bits) {
+            Object array = frame(frame).arrays[slot];
+            if (offHeap) {
+                ((MemorySegment) array).setAtIndex(ValueLayout.JAVA_LONG, index, bits);
+            } else if (type == CoreType.FLOAT) {
+                ((double[]) array)[index] = Double.longBitsToDouble(bits);
+            } else {
+                ((long[]) array)[index] = bits;
+            }
+        }
+    }
+
+    static final class ReadElement extends Element {
+
+        ReadElement(Frame globals, int slot, CoreType type, Token token, int index, boolean offHeap) {
+            super(globals, slot, type, token, index, offHeap);
+        }
+
+        @Override
+        Object execute(Frame frame) {
+            return Evaluator.box(type, load(frame));
+        }
+
+        @Override
+        long executeInt(Frame frame) {
+            assert type == CoreType.INT;
+            return load(frame);
+        }
+
+        @Override
+        double executeFloat(Frame frame) {
+            assert type == CoreType.FLOAT;
+            return Double.longBitsToDouble(load(frame));
+        }
+
+        @Override
+        long executeAs(CoreType type, Frame frame) {
+            return CoreOps.convert(this.type, type, load(frame));
+        }
+    }
+
+    static final class WriteElement extends Element {
+        final Expression value;
+
+        WriteElement(Frame globals, int slot, CoreType type, Token token, int index, boolean offHeap, Expression value) {
+            super(globals, slot, type, token, index, offHeap);
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return Evaluator.box(type, store(frame));
+        }
+
+        @Override
+        void executeVoid(Frame frame) throws EvaluationException {
+            store(frame);
+        }
+
+        @Override
+        long executeAs(CoreType type, Frame frame) throws EvaluationException {
+            return CoreOps.convert(this.type, type, store(frame));
+        }
+
+        private long store(Frame frame) throws EvaluationException {
+            long bits = value.executeAs(type, frame);
+            set(frame, bits);
+            return bits;
+        }
+    }
+
+    // An element read, or written with value, at an index outside the declared length. The
+    // value is still evaluated first, as in the other engines.
+    static final class OutOfBounds extends ExecNode.Expression {
+        final Token token;
+        final long index;
+        final long length;
+        final Expression value; // null for a read
+
+        OutOfBounds(Token token, long index, long length, Expression value) {
+            this.token = token;
+            this.index = index;
+            this.length = length;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            if (value != null) {
+                value.executeVoid(frame);
+            }
+            throw new EvaluationException("Array index " + index + " out of bounds for '" + token.lexeme
+                    + "' of length " + length, token);
+        }
+    }
+
+    abstract static class Arithmetic extends ExecNode.Expression {
+        final ParseTreeNode operator;
+        final Expression left;
+        final Expression right;
+
+        Arithmetic(ParseTreeNode operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class IntArithmetic extends Arithmetic {
+
+        IntArithmetic(ParseTreeNode operator, Expression left, Expression right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        long executeInt(Frame frame) throws EvaluationException {
+            long a = left.executeInt(frame);
+            long b = right.executeInt(frame);
+            switch (operator.token.type) {
+                case PLUS:
+                    return a + b;
+                case MINUS:
+                    return a - b;
+                case MULTIPLY:
+                    return a * b;
+                default:
+                    try {
+                        return switch (operator.token.type) {
+                            case DIVIDE -> a / b;
+                            case MODULO -> a % b;
+                            default -> CoreOps.pow(a, b);
+                        };
+                    } catch (ArithmeticException e) {
+                        throw new EvaluationException("Division by zero", operator.token);
+                    }
+            }
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return executeInt(frame);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            return executeInt(frame) != 0;
+        }
+    }
+
+    static final class FloatArithmetic extends Arithmetic {
+
+        FloatArithmetic(ParseTreeNode operator, Expression left, Expression right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double executeFloat(Frame frame) throws EvaluationException {
+            double a = left.executeFloat(frame);
+            double b = right.executeFloat(frame);
+            return switch (operator.token.type) {
+                case PLUS -> a + b;
+                case MINUS -> a - b;
+                case MULTIPLY -> a * b;
+                case DIVIDE -> a / b;
+                case MODULO -> a % b;
+                default -> Math.pow(a, b);
+            };
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return executeFloat(frame);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            return executeFloat(frame) != 0.0;
+        }
+    }
+
+    abstract static class Comparison extends ExecNode.Expression {
+        final Token.TokenType operator;
+        final Expression left;
+        final Expression right;
+
+        Comparison(Token.TokenType operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        final Object execute(Frame frame) throws EvaluationException {
+            return executeCondition(frame);
+        }
+    }
+
+    static final class IntComparison extends Comparison {
+
+        IntComparison(Token.TokenType operator, Expression left, Expression right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            long a = left.executeInt(frame);
+            long b = right.executeInt(frame);
+            return switch (operator) {
+                case LESS -> a < b;
+                case LESS_EQUAL -> a <= b;
+                case GREATER -> a > b;
+                case GREATER_EQUAL -> a >= b;
+                case EQUAL -> a == b;
+                default -> a != b;
+            };
+        }
+    }
+
+    static final class FloatComparison extends Comparison {
+
+        FloatComparison(Token.TokenType operator, Expression left, Expression right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            double a = left.executeFloat(frame);
+            double b = right.executeFloat(frame);
+            return switch (operator) {
+                case LESS -> a < b;
+                case LESS_EQUAL -> a <= b;
+                case GREATER -> a > b;
+                case GREATER_EQUAL -> a >= b;
+                case EQUAL -> a == b;
+                default -> a != b;
+            };
+        }
+    }
+
+    // Logical_And and Logical_Or: always bool, right operand only evaluated when needed
+    static final class Logical extends ExecNode.Expression {
+        final boolean and;
+        final Expression left;
+        final Expression right;
+
+        Logical(boolean and, Expression left, Expression right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return executeCondition(frame);
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            return and
+                    ? left.executeCondition(frame) && right.executeCondition(frame)
+                    : left.executeCondition(frame) || right.executeCondition(frame);
+        }
+    }
+
+    // Unary_Exp: NOT gives a bool, MINUS negates, PLUS turns char and bool into int
+    static final class Unary extends ExecNode.Expression {
+        final Token.TokenType operator;
+        final Expression operand;
+
+        Unary(Token.TokenType operator, Expression operand) {
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            if (operator == Token.TokenType.NOT) {
+                return executeCondition(frame);
+            }
+            return apply(operand.execute(frame));
+        }
+
+        @Override
+        long executeInt(Frame frame) throws EvaluationException {
+            assert operator != Token.TokenType.NOT;
+            long value = operand.executeInt(frame);
+            return operator == Token.TokenType.MINUS ? -value : value;
+        }
+
+        @Override
+        double executeFloat(Frame frame) throws EvaluationException {
+            assert operator != Token.TokenType.NOT;
+            double value = operand.executeFloat(frame);
+            return operator == Token.TokenType.MINUS ? -value : value;
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            if (operator == Token.TokenType.NOT) {
+                return !operand.executeCondition(frame);
+            }
+            return Evaluator.isTrue(execute(frame));
+        }
+
+        private Object apply(Object value) {
+            if (value instanceof Double d) {
+                return operator == Token.TokenType.MINUS ? -d : d;
+            }
+            long i = Evaluator.toInt(value);
+            return operator == Token.TokenType.MINUS ? -i : i;
+        }
+    }
+
+    // A value of one static type used as another, such as an int operand of a float operator
+    // or a float assigned to a char: the operand runs as its own type and its bits are converted
+    static final class Convert extends ExecNode.Expression {
+        final CoreType from;
+        final CoreType to;
+        final Expression operand;
+
+        Convert(CoreType from, CoreType to, Expression operand) {
+            this.from = from;
+            this.to = to;
+            this.operand = operand;
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return Evaluator.box(to, executeAs(to, frame));
+        }
+
+        @Override
+        long executeInt(Frame frame) throws EvaluationException {
+            assert to == CoreType.INT;
+            return executeAs(to, frame);
+        }
+
+        @Override
+        double executeFloat(Frame frame) throws EvaluationException {
+            assert to == CoreType.FLOAT;
+            return Double.longBitsToDouble(executeAs(to, frame));
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            return CoreOps.isTrue(from, operand.executeAs(from, frame));
+        }
+
+        @Override
+        long executeAs(CoreType type, Frame frame) throws EvaluationException {
+            return CoreOps.convert(to, type, CoreOps.convert(from, to, operand.executeAs(from, frame)));
+        }
+    }
+
+    static final class Call extends ExecNode.Expression {
+        final CallTarget target;
+        final Expression[] arguments;
+
+        Call(CallTarget target, Expression[] arguments) {
+            this.target = target;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object execute(Frame frame) throws EvaluationException {
+            return Evaluator.box(target.function.returnType, target.call(arguments, frame));
+        }
+
+        @Override
+        long executeInt(Frame frame) throws EvaluationException {
+            assert target.function.returnType == CoreType.INT;
+            return target.call(arguments, frame);
+        }
+
+        @Override
+        double executeFloat(Frame frame) throws EvaluationException {
+            assert target.function.returnType == CoreType.FLOAT;
+            return Double.longBitsToDouble(target.call(arguments, frame));
+        }
+
+        @Override
+        boolean executeCondition(Frame frame) throws EvaluationException {
+            return CoreOps.isTrue(target.function.returnType, target.call(arguments, frame));
+        }
+
+        @Override
+        long executeAs(CoreType type, Frame frame) throws EvaluationException {
+            return CoreOps.convert(target.function.returnType, type, target.call(arguments, frame));
+        }
+    }
+
+    // Calls in progress in one run, shared by its CallTargets
+    static final class CallDepth {
+        int depth;
+    }
+
+    // A defined function. Frames are pooled per recursion depth like the Evaluator's. A call
+    // returns the raw bits of its return type.
+    static final class CallTarget {
+        final Resolver.Function function;
+        ExecNode.Statement body;
+        private final CallDepth calls;
+        private ExecNode.Frame[] pool = new ExecNode.Frame[1];
+        private int depth;
+
+        CallTarget(Resolver.Function function, CallDepth calls) {
+            this.function = function;
+            this.calls = calls;
+        }
+
+        long call(ExecNode.Expression[] arguments, ExecNode.Frame caller) throws EvaluationException {
+            ExecNode.Frame frame = acquire();
+            try {
+                for (int i = 0; i < arguments.length; i++) {
+                    frame.values[i] = arguments[i].executeAs(function.parameterTypes[i], caller);
+                }
+                return invoke(frame);
+            } finally {
+                depth--;
+            }
+        }
+
+        long invoke(ExecNode.Frame frame) throws EvaluationException {
+            if (calls.depth == ExecutionEngine.MAX_CALL_DEPTH) {
+                throw ExecutionEngine.tooDeep(function);
+            }
+            calls.depth++;
+            try {
+                return body.execute(frame) ? frame.result : 0;
+            } catch (StackOverflowError e) {
+                throw new EvaluationException("Stack overflow in call to '" + function.name + "'", function.position());
+            } finally {
+                calls.depth--;
+            }
+        }
+
+        ExecNode.Frame acquire() {
+            if (depth == pool.length) {
+                pool = java.util.Arrays.copyOf(pool, depth * 2);
+            }
+            ExecNode.Frame frame = pool[depth];
+            if (frame == null) {
+                frame = new ExecNode.Frame(function.slots.size);
+                pool[depth] = frame;
+            }
+            depth++;
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Keeps the tokens and parse tree of a source that is edited a little at a time. The source
+// is held as its top-level declarations, each with its own text up to the next one, its own
+// token columns and its Declaration subtree, and line numbers in those tokens count from the
+// declaration's first line. An edit is rescanned from the declaration it starts in until the
+// scanner lines up with an unchanged declaration after it, and only the declarations in
+// between are parsed again: the ones after it are neither copied nor renumbered, so an edit
+// costs about as much as the declarations it touches. Whenever that does not work out, the
+// program does not split into declarations or an edit breaks it, the whole source is scanned
+// and parsed again, so tokens, tree and errors always match a fresh scan and parse of the text.
+public class IncrementalParser {
+
+    // One top-level declaration. Texts after the first start at the declaration's first
+    // token and run up to the next one, so together they are the whole source.
+    private static final class Segment {
+        final char[] text;
+        final TokenBuffer tokens;
+        final ParseTreeNode declaration;
+        final int newlines;
+        final int column; // of text[0]
+        // Source offset of text[0] and newlines before it; counted back from the end of the
+        // source for segments behind the gap, so an edit in front of them does not move them
+        int start;
+        int before;
+
+        Segment(char[] text, TokenBuffer tokens, ParseTreeNode declaration, int column) {
+            this.text = text;
+            this.tokens = tokens;
+            this.declaration = declaration;
+            this.column = column;
+            int count = 0;
+            for (char c : text) {
+                if (c == '\n') {
+                    count++;
+                }
+            }
+            this.newlines = count;
+        }
+    }
+
+    private Identifiers identifiers;
+    // The declarations in source order with a gap at the last edit: segments [gapStart, gapEnd)
+    // are unused. Null while the source does not split into declarations.
+    private Segment[] segments;
+    private int gapStart;
+    private int gapEnd;
+    // The whole source and its tokens while it does not split, null otherwise
+    private char[] source;
+    private TokenBuffer tokens;
+    private int length;
+    private int newlines;
+    private int size;
+    private ParseTreeNode tree;
+    // tree() with lines counted from the start of the source, null until asked for after an edit
+    private ParseTreeNode absolute;
+    private int reparsedTokens;
+
+    public IncrementalParser(char[] source, int length) throws ScannerException, Parser.ParserException {
+        reparseAll(source, length);
+    }
+
+    // The Program node with every token on its line in the source. The kept declarations count
+    // their lines from their own first line, so it is a copy of them made on the first call
+    // after an edit; declaration(i) and line(i) give the kept subtrees without one.
+    public ParseTreeNode tree() {
+        if (segments == null || tree == null) {
+            return tree;
+        }
+        if (absolute == null) {
+            absolute = new ParseTreeNode(tree.name);
+            for (int i = 0; i < tree.children.size(); i++) {
+                absolute.addChild(moved(tree.children.get(i), line(i) - 1));
+            }
+        }
+        return absolute;
+    }
+
+    // Declarations in the tree
+    public int declarations() {
+        return tree == null ? 0 : tree.children.size();
+    }
+
+    // The subtree of declaration i as kept, its line numbers counting from line(i)
+    public ParseTreeNode declaration(int i) {
+        return tree.children.get(i);
+    }
+
+    // Source line the tokens of declaration i count their lines from: line L of declaration i
+    // is line line(i) + L - 1 of the source
+    public int line(int declaration) {
+        return segments == null ? 1 : before(declaration) + 1;
+    }
+
+    // Every token with its line in the source, put together from the declarations
+    public TokenBuffer tokens() {
+        if (segments == null) {
+            return tokens;
+        }
+        TokenBuffer all = new TokenBuffer(text(), size, identifiers);
+        for (int i = 0; i < count(); i++) {
+            all.append(segment(i).tokens, start(i), before(i));
+        }
+        all.add(Token.TokenType.TOKEN_EOF, length, length, newlines + 1, 0, 0);
+        return all;
+    }
+
+    // Tokens, the EOF token included
+    public int size() {
+        return size;
+    }
+
+    // Tokens scanned and parsed again by the last edit
+    public int reparsedTokens() {
+        return reparsedTokens;
+    }
+
+    // Brings the source up to date with text, a later version of it, as one edit of the part
+    // between what they start and end with in common
+    public void update(char[] text, int length) throws ScannerException, Parser.ParserException {
+        int prefix = 0;
+        int suffix = 0;
+        if (segments == null) {
+            prefix = Arrays.mismatch(source, 0, this.length, text, 0, length);
+            if (prefix < 0) {
+                reparsedTokens = 0;
+                return;
+            }
+            while (suffix < Math.min(this.length, length) - prefix
+                    && source[this.length - 1 - suffix] == text[length - 1 - suffix]) {
+                suffix++;
+            }
+            edit(prefix, this.length - prefix - suffix, new String(text, prefix, length - prefix - suffix));
+            return;
+        }
+        // Whole declarations are compared at once, and only the first that differs from each
+        // end character by character
+        int first = 0;
+        while (first < count()) {
+            char[] part = segment(first).text;
+            int mismatch = Arrays.mismatch(part, 0, part.length, text, prefix, Math.min(length, prefix + part.length));
+            if (mismatch >= 0) {
+                prefix += mismatch;
+                break;
+            }
+            prefix += part.length;
+            first++;
+        }
+        if (first == count() && prefix == length) {
+            reparsedTokens = 0;
+            return;
+        }
+        int most = Math.min(this.length, length) - prefix;
+        for (int i = count() - 1; i >= 0 && suffix < most; i--) {
+            char[] part = segment(i).text;
+            int n = Math.min(part.length, most - suffix);
+            if (n == part.length && Arrays.equals(part, 0, n, text, length - suffix - n, length - suffix)) {
+                suffix += n;
+                continue;
+            }
+            int after = suffix;
+            while (suffix - after < n && part[part.length - 1 - (suffix - after)] == text[length - 1 - suffix]) {
+                suffix++;
+            }
+            break;
+        }
+        edit(prefix, this.length - prefix - suffix, new String(text, prefix, length - prefix - suffix));
+    }
+
+    // Replaces removed characters at offset by inserted. The declarations before and after
+    // the edited ones keep their tokens and subtrees as they are.
+    public void edit(int offset, int removed, String inserted) throws ScannerException, Parser.ParserException {
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " outside 0.." + length);
+        }
+        if (segments == null) {
+            char[] edited = new char[length + inserted.length() - removed];
+            System.arraycopy(source, 0, edited, 0, offset);
+            inserted.getChars(0, inserted.length(), edited, offset);
+            System.arraycopy(source, offset + removed, edited, offset + inserted.length(), length - offset - removed);
+            reparseAll(edited, edited.length);
+            return;
+        }
+
+        // Starting in the declaration before the edited character, so that text inserted in
+        // front of a declaration is never taken as the start of one
+        int first = offset == 0 ? 0 : declarationAt(offset - 1);
+        int last = declarationAt(offset + removed);
+        int from = start(first);
+        while (true) {
+            boolean toEnd = last == count() - 1;
+            int to = toEnd ? length : start(last + 1);
+            int regionLength = to - from + inserted.length() - removed;
+            // The text after the region is appended, so that a token running past its end
+            // scans as it would in the whole source
+            char[] next = toEnd ? new char[0] : segment(last + 1).text;
+            char[] old = new char[to - from];
+            for (int i = first; i <= last; i++) {
+                char[] text = segment(i).text;
+                System.arraycopy(text, 0, old, start(i) - from, text.length);
+            }
+            char[] region = new char[regionLength + next.length];
+            System.arraycopy(old, 0, region, 0, offset - from);
+            inserted.getChars(0, inserted.length(), region, offset - from);
+            System.arraycopy(old, offset + removed - from, region, offset + inserted.length() - from, to - offset - removed);
+            System.arraycopy(next, 0, region, regionLength, next.length);
+
+            ArrayScanner scanner = new ArrayScanner(region, region.length, 0, 1, segment(first).column, regionLength, identifiers);
+            TokenBuffer scanned;
+            try {
+                scanned = scanner.scanRange();
+            } catch (ScannerException e) {
+                if (!toEnd && scanner.position >= regionLength) {
+                    last++; // the error may be in a token the next declarations would end
+                    continue;
+                }
+                reparseAll(text(offset, removed, inserted), length + inserted.length() - removed);
+                return;
+            }
+            if (toEnd ? scanner.position != regionLength
+                    : scanner.ended || scanner.position != regionLength || scanner.columnNumber != segment(last + 1).column) {
+                if (toEnd) {
+                    reparseAll(text(offset, removed, inserted), length + inserted.length() - removed);
+                return;
+                }
+                last++; // the edit changed how the text after it scans
+                continue;
+            }
+            List<int[]> ranges = ParallelParser.split(scanned, 0, toEnd ? scanned.size() - 1 : scanned.size());
+            Segment[] parsed = ranges == null || ranges.isEmpty()
+                    ? null : parse(scanned, ranges, region, regionLength, segment(first).column);
+            if (parsed == null) {
+                reparseAll(text(offset, removed, inserted), length + inserted.length() - removed);
+                return;
+            }
+            replace(first, last, parsed, inserted.length() - removed);
+            reparsedTokens = scanned.size();
+            return;
+        }
+    }
+
+    // Declarations [first, last] replaced by parsed, which start where first did
+    private void replace(int first, int last, Segment[] parsed, int charDelta) {
+        int start = start(first);
+        int before = before(first);
+        int removedNewlines = 0;
+        for (int i = first; i <= last; i++) {
+            removedNewlines += segment(i).newlines;
+            size -= segment(i).tokens.size();
+        }
+        moveGap(last + 1);
+        Arrays.fill(segments, first, gapStart, null);
+        gapStart = first;
+        if (gapEnd - gapStart < parsed.length) {
+            int capacity = segments.length + Math.max(parsed.length, segments.length >> 1);
+            Segment[] grown = new Segment[capacity];
+            System.arraycopy(segments, 0, grown, 0, gapStart);
+            int behind = segments.length - gapEnd;
+            System.arraycopy(segments, gapEnd, grown, capacity - behind, behind);
+            segments = grown;
+            gapEnd = capacity - behind;
+        }
+        for (Segment segment : parsed) {
+            segment.start = start;
+            segment.before = before;
+            start += segment.text.length;
+            before += segment.newlines;
+            newlines += segment.newlines;
+            size += segment.tokens.size();
+            segments[gapStart++] = segment;
+        }
+        newlines -= removedNewlines;
+        length += charDelta;
+        absolute = null;
+
+        List<ParseTreeNode> declarations = tree.children;
+        int kept = Math.min(parsed.length, last - first + 1);
+        for (int i = 0; i < kept; i++) {
+            declarations.set(first + i, parsed[i].declaration);
+        }
+        if (parsed.length > kept) {
+            List<ParseTreeNode> added = new ArrayList<>();
+            for (int i = kept; i < parsed.length; i++) {
+                added.add(parsed[i].declaration);
+            }
+            declarations.addAll(first + kept, added);
+        } else {
+            declarations.subList(first + kept, last + 1).clear();
+        }
+    }
+
+    // Moves the gap in front of declaration index, converting the positions of the
+    // declarations it passes between counted from the start and from the end
+    private void moveGap(int index) {
+        while (gapStart > index) {
+            Segment segment = segments[--gapStart];
+            segments[gapStart] = null;
+            segment.start = length - segment.start;
+            segment.before = newlines - segment.before;
+            segments[--gapEnd] = segment;
+        }
+        while (gapStart < index) {
+            Segment segment = segments[gapEnd];
+            segments[gapEnd++] = null;
+            segment.start = length - segment.start;
+            segment.before = newlines - segment.before;
+            segments[gapStart++] = segment;
+        }
+    }
+
+    // Parses the declarations of scanned, the tokens of text[0, textLength) where text[0] is
+    // in the given column, each into a segment of its own; null if one does not parse alone
+    private Segment[] parse(TokenBuffer scanned, List<int[]> ranges, char[] text, int textLength, int column) {
+        Segment[] parsed = new Segment[ranges.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            int[] range = ranges.get(i);
+            int start = i == 0 ? 0 : scanned.start(range[0]);
+            int end = i == parsed.length - 1 ? textLength : scanned.start(ranges.get(i + 1)[0]);
+            int lineOffset = i == 0 ? 0 : scanned.line(range[0]) - 1;
+            char[] part = Arrays.copyOfRange(text, start, end);
+            TokenBuffer tokens = scanned.slice(range[0], range[1], part, start, lineOffset);
+            TokenStream.Range stream = TokenStream.range(tokens, 0, tokens.size());
+            ParseTreeNode declaration = new Parser(stream, true).parseSingleDeclaration();
+            if (declaration == null || !stream.consumedExactly()) {
+                return null;
+            }
+            parsed[i] = new Segment(part, tokens, declaration, i == 0 ? column : scanned.column(range[0]));
+        }
+        return parsed;
+    }
+
+    private void reparseAll(char[] text, int length) throws ScannerException, Parser.ParserException {
+        segments = null;
+        source = text;
+        tokens = null;
+        tree = null;
+        absolute = null;
+        this.length = length;
+        identifiers = new Identifiers();
+        ArrayScanner scanner = new ArrayScanner(text, length, 0, 1, 1, length, identifiers);
+        TokenBuffer scanned = scanner.scanRange();
+        reparsedTokens = scanned.size();
+        size = scanned.size();
+        newlines = scanned.line(scanned.size() - 1) - 1;
+
+        // A NUL character ends the tokens early, and the text after it belongs to no declaration
+        List<int[]> ranges = scanner.position == length ? ParallelParser.split(scanned, 0, scanned.size() - 1) : null;
+        Segment[] parsed = ranges == null || ranges.isEmpty() ? null : parse(scanned, ranges, text, length, 1);
+        if (parsed != null) {
+            segments = new Segment[parsed.length + 16];
+            gapStart = 0;
+            gapEnd = segments.length;
+            tree = new ParseTreeNode("Program");
+            int start = 0;
+            int before = 0;
+            for (Segment segment : parsed) {
+                segment.start = start;
+                segment.before = before;
+                start += segment.text.length;
+                before += segment.newlines;
+                segments[gapStart++] = segment;
+                tree.addChild(segment.declaration);
+            }
+            source = null;
+            return;
+        }
+        tree = new Parser(TokenStream.of(scanned), true).parse();
+        tokens = scanned;
+    }
+
+    // A copy of node with its tokens lineOffset lines further down
+    private static ParseTreeNode moved(ParseTreeNode node, int lineOffset) {
+        Token token = node.token;
+        ParseTreeNode copy = new ParseTreeNode(node.name, token == null ? null
+                : new Token(token.type, token.lexeme, token.lineNumber + lineOffset, token.columnNumber));
+        for (ParseTreeNode child : node.children) {
+            copy.addChild(moved(child, lineOffset));
+        }
+        return copy;
+    }
+
+    private int count() {
+        return segments.length - (gapEnd - gapStart);
+    }
+
+    private Segment segment(int i) {
+        return segments[i < gapStart ? i : i + gapEnd - gapStart];
+    }
+
+    private int start(int i) {
+        return i < gapStart ? segments[i].start : length - segment(i).start;
+    }
+
+    private int before(int i) {
+        return i < gapStart ? segments[i].before : newlines - segment(i).before;
+    }
+
+    // The declaration whose text contains offset, the last one for the end of the source
+    private int declarationAt(int offset) {
+        int low = 0;
+        int high = count() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (start(middle) <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private char[] text() {
+        if (segments == null) {
+            return Arrays.copyOf(source, length);
+        }
+        char[] text = new char[length];
+        for (int i = 0; i < count(); i++) {
+            char[] part = segment(i).text;
+            System.arraycopy(part, 0, text, start(i), part.length);
+        }
+        return text;
+    }
+
+    // The source with an edit made
+    private char[] text(int offset, int removed, String inserted) {
+        char[] text = text();
+        char[] edited = new char[length + inserted.length() - removed];
+        System.arraycopy(text, 0, edited, 0, offset);
+        inserted.getChars(0, inserted.length(), edited, offset);
+        System.arraycopy(text, offset + removed, edited, offset + inserted.length(), length - offset - removed);
+        return edited;
+    }
+
+    // The first way the source, tokens and tree differ from text and a fresh scan and parse of
+    // it, null if they do not; ParseBenchmark --edits checks it after every edit
+    String difference(char[] text) {
+        if (!Arrays.equals(text(), text)) {
+            return "the source is not the edited text";
+        }
+        TokenBuffer fresh;
+        ParseTreeNode freshTree;
+        try {
+            fresh = new ArrayScanner(text, text.length).scanTokens();
+            freshTree = new Parser(TokenStream.of(fresh), true).parse();
+        } catch (ScannerException | Parser.ParserException e) {
+            return tree == null ? null : "kept a tree for a source that fails: " + e.getMessage();
+        }
+        if (tree == null) {
+            return "kept no tree for a source that parses";
+        }
+        TokenBuffer kept = tokens();
+        if (kept.size() != fresh.size()) {
+            return kept.size() + " tokens instead of " + fresh.size();
+        }
+        for (int i = 0; i < kept.size(); i++) {
+            if (kept.type(i) != fresh.type(i) || !kept.lexeme(i).equals(fresh.lexeme(i))
+                    || kept.line(i) != fresh.line(i) || kept.column(i) != fresh.column(i)) {
+                return "token " + i + " is " + kept.token(i) + " instead of " + fresh.token(i);
+            }
+        }
+        if (tree.children.size() != freshTree.children.size()) {
+            return tree.children.size() + " declarations instead of " + freshTree.children.size();
+        }
+        for (int i = 0; i < tree.children.size(); i++) {
+            String difference = difference(declaration(i), freshTree.children.get(i), line(i) - 1);
+            if (difference != null) {
+                return "declaration " + i + ": " + difference;
+            }
+        }
+        String difference = difference(tree(), freshTree, 0);
+        return difference == null ? null : "tree(): " + difference;
+    }
+
+    private static String difference(ParseTreeNode kept, ParseTreeNode fresh, int lineOffset) {
+        if (!kept.name.equals(fresh.name) || kept.children.size() != fresh.children.size()
+                || (kept.token == null) != (fresh.token == null)) {
+            return kept.name + " instead of " + fresh.name;
+        }
+        if (kept.token != null && (kept.token.type != fresh.token.type || !kept.token.lexeme.equals(fresh.token.lexeme)
+                || kept.token.lineNumber + lineOffset != fresh.token.lineNumber
+                || kept.token.columnNumber != fresh.token.columnNumber)) {
+            return "token " + kept.token + " at line offset " + lineOffset + " instead of " + fresh.token;
+        }
+        for (int i = 0; i < kept.children.size(); i++) {
+            String difference = difference(kept.children.get(i), fresh.children.get(i), lineOffset);
+            if (difference != null) {
+                return difference;
+            }
+        }
+        return null;
+    }
+}
@@ -1,40 +1,395 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
 
 public class Interpreter {
 
+    // Part of every ProgramCache key, so that another build never reads the entries of this one
+    static final String VERSION = "1.0-SNAPSHOT";
+
+    // Sources checked with --incremental, by path: in a Daemon each check of a file reparses
+    // only the declarations changed since the one before. The files checked least recently
+    // are dropped beyond EDITED_FILES of them.
+    static final int EDITED_FILES = 64;
+    private static final Map<String, Edited> EDITED = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Edited> eldest) {
+                    return size() > EDITED_FILES;
+                }
+            });
+
+    // The parser kept for one path, null until its first check succeeds. Checks of the same
+    // path take turns on it; those of other paths do not wait for them.
+    private static final class Edited {
+        IncrementalParser parser;
+    }
+
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java Interpreter <filename.core>");
-            return;
+        int status = run(args, Paths.get(""), System.in);
+        if (status != 0) {
+            System.exit(status);
         }
+    }
 
-        String filename = args[0];
-        if (!filename.endsWith(".core")) {
+    // The command line of main, with relative paths resolved against workingDirectory and
+    // programs reading from in; the exit status
+    static int run(String[] args, Path workingDirectory, InputStream in) {
+        String engine = null;
+        String scannerMode = "reader";
+        boolean stream = false;
+        String parseMode = "sequential";
+        String chains = "nested";
+        String treeFormat = "text";
+        String symbolFormat = "text";
+        String cacheDirectory = null;
+        String batchOutput = null;
+        long cacheSize = ProgramCache.DEFAULT_CAPACITY;
+        boolean report = false;
+        boolean fold = false;
+        boolean check = false;
+        boolean incremental = false;
+        String filename = null;
+        for (String arg : args) {
+            if (arg.equals("--run")) {
+                engine = "tree";
+            } else if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            } else if (arg.equals("--fold")) {
+                fold = true;
+            } else if (arg.equals("--check")) {
+                check = true;
+            } else if (arg.equals("--incremental")) {
+                incremental = true;
+            } else if (arg.equals("--metrics")) {
+                report = true;
+            } else if (arg.equals("--stream")) {
+                stream = true;
+            } else if (arg.startsWith("--parse=")) {
+                parseMode = arg.substring("--parse=".length());
+            } else if (arg.startsWith("--batch=")) {
+                batchOutput = arg.substring("--batch=".length());
+            } else if (arg.startsWith("--cache=")) {
+                cacheDirectory = arg.substring("--cache=".length());
+            } else if (arg.startsWith("--cache-size=")) {
+                try {
+                    cacheSize = Long.parseLong(arg.substring("--cache-size=".length())) << 20;
+                } catch (NumberFormatException e) {
+                    cacheSize = -1;
+                }
+            } else if (arg.startsWith("--symbols=")) {
+                symbolFormat = arg.substring("--symbols=".length());
+            } else if (arg.startsWith("--tree=")) {
+                treeFormat = arg.substring("--tree=".length());
+            } else if (arg.startsWith("--chains=")) {
+                chains = arg.substring("--chains=".length());
+            } else if (arg.startsWith("--scanner=")) {
+                scannerMode = arg.substring("--scanner=".length());
+            } else if (filename == null && !arg.startsWith("--")) {
+                filename = arg;
+            } else {
+                filename = null;
+                break;
+            }
+        }
+        if (filename == null || (engine != null && !List.of("tree", "ast", "vm", "jit").contains(engine))
+                || !List.of("reader", "mapped", "parallel").contains(scannerMode) || (stream && !scannerMode.equals("reader"))
+                || !List.of("sequential", "parallel").contains(parseMode) || (stream && parseMode.equals("parallel"))
+                || !List.of("nested", "flat").contains(chains) || !List.of("text", "binary").contains(treeFormat)
+                || !List.of("text", "binary").contains(symbolFormat) || (stream && symbolFormat.equals("binary"))
+                || cacheSize < 0 || (stream && cacheDirectory != null)
+                || (batchOutput != null && (engine != null || stream || parseMode.equals("parallel") || report || check))
+                || (incremental && (engine != null || stream || batchOutput != null || cacheDirectory != null || fold || check
+                        || !scannerMode.equals("reader") || !parseMode.equals("sequential") || !chains.equals("nested")
+                        || !treeFormat.equals("text") || !symbolFormat.equals("text")))) {
+            System.err.println("Usage: java Interpreter [--run | --engine=tree|ast|vm|jit] [--scanner=reader|mapped|parallel | --stream]"
+                    + " [--parse=sequential|parallel] [--chains=nested|flat] [--fold] [--tree=text|binary] [--symbols=text|binary]"
+                    + " [--cache=<directory> [--cache-size=<MB>]] [--check] [--metrics] <filename.core>");
+            System.err.println("       java Interpreter --batch=<output directory> [--scanner=...] [--chains=...] [--fold] [--tree=...]"
+                    + " [--symbols=...] [--cache=...] <directory | file list>");
+            System.err.println("       java Interpreter --incremental [--metrics] <filename.core>");
+            return 0;
+        }
+
+        if (batchOutput == null && !filename.endsWith(".core")) {
             System.err.println("Input file must have a .core extension.");
-            return;
+            return 0;
         }
+        filename = workingDirectory.resolve(filename).toString();
 
+        boolean flatChains = chains.equals("flat");
+        Metrics metrics = batchOutput == null ? new Metrics(filename, report) : null;
         try {
-            // Scanning phase
-            Scanner scanner = new Scanner(filename);
-            List<Token> tokens = scanner.scan();
-            ScannerSymbolTablePrinter symbolTableWriter = new ScannerSymbolTablePrinter("symbol_table.txt");
-            symbolTableWriter.write(tokens);
-
-            // Parsing phase
-            Parser parser = new Parser(tokens);
-            ParseTreeNode parseTree = parser.parse();
+            if (incremental) {
+                checkIncrementally(filename, metrics);
+                return 0;
+            }
+            ParseTreeNode parseTree;
+            if (stream) {
+                // Scanning and parsing in one pass, the symbol table written as tokens are pulled
+                Path symbolTable = workingDirectory.resolve("symbol_table.txt");
+                ScannerSymbolTablePrinter symbolTableWriter = new ScannerSymbolTablePrinter(symbolTable.toString());
+                Scanner scanner = new Scanner(filename);
+                TokenStream tokens = TokenStream.pull(scanner::nextToken, metrics.tokens(symbolTableWriter.open()));
+                Metrics.Phase scanAndParse = metrics.phase("scan and parse");
+                try {
+                    Parser parser = new Parser(tokens);
+                    parser.setFlatChains(flatChains);
+                    parseTree = parser.parse();
+                } catch (TokenStream.ScanFailure e) {
+                    throw e.getCause();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    scanAndParse.close();
+                    // After a syntax error the rest is scanned too, as without --stream
+                    tokens.drain();
+                    symbolTableWriter.close();
+                    metrics.countedTokens();
+                }
+                metrics.output(symbolTable);
+                if (fold) {
+                    fold(parseTree, false, metrics);
+                }
+                metrics.tree(parseTree);
+                writeParseTree(parseTree, workingDirectory, treeFormat, metrics);
+            } else {
+                ProgramCache cache = cacheDirectory != null ? new ProgramCache(workingDirectory.resolve(cacheDirectory), cacheSize) : null;
+                Options options = new Options(scannerMode, parseMode, flatChains, fold, symbolFormat, treeFormat, cache);
+                if (batchOutput != null) {
+                    return Batch.run(Paths.get(filename), workingDirectory.resolve(batchOutput), workingDirectory, options) ? 0 : 1;
+                }
+                parseTree = translate(filename, workingDirectory, options, false, metrics);
+            }
 
-            // Print Parse Tree.
-            ParseTreePrinter printer = new ParseTreePrinter("parse_tree_output.ebnf");
-            printer.print(parseTree);
+            // Semantic check: scopes, slots and static types, as the engines resolve them
+            if (check) {
+                List<EvaluationException> errors;
+                Metrics.Phase checking = metrics.phase("check");
+                try {
+                    errors = new Resolver().check(parseTree);
+                } finally {
+                    checking.close();
+                }
+                for (EvaluationException error : errors) {
+                    System.err.println("Error: " + error.getMessage());
+                }
+                if (!errors.isEmpty()) {
+                    return 1;
+                }
+                System.out.println("Semantic check successful!");
+            }
 
+            // Execution phase
+            if (engine != null) {
+                Reader input = new InputStreamReader(in);
+                ExecutionEngine executor = switch (engine) {
+                    case "ast" -> new AstInterpreter(System.out, input);
+                    case "vm" -> new BytecodeVm(System.out, input);
+                    case "jit" -> new BytecodeVm(System.out, input, BytecodeVm.JIT_THRESHOLD);
+                    default -> new Evaluator(System.out, input);
+                };
+                ParseTreeNode program = parseTree;
+                try {
+                    runProgram(() -> {
+                        Metrics.Phase execution = metrics.phase("execute");
+                        try {
+                            executor.run(program);
+                        } finally {
+                            execution.close();
+                        }
+                        return null;
+                    });
+                } finally {
+                    metrics.arrays(executor.arrays());
+                }
+            }
 
-        } catch (IOException | ScannerException | Parser.ParserException e) {
+        } catch (IOException | ScannerException | Parser.ParserException | EvaluationException e) {
             System.err.println("Error: " + e.getMessage());
+        } finally {
+            if (report) {
+                System.out.flush();
+                metrics.report(System.err);
+            }
+        }
+        return 0;
+    }
+
+    // Runs program on a thread with ExecutionEngine.STACK_SIZE bytes of stack, so that calls
+    // nest as deep as ExecutionEngine.MAX_CALL_DEPTH in every engine
+    private static void runProgram(Callable<Void> program) throws EvaluationException {
+        FutureTask<Void> task = new FutureTask<>(program);
+        Thread thread = new Thread(null, task, "program", ExecutionEngine.STACK_SIZE);
+        thread.start();
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while the program ran", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof EvaluationException error) {
+                throw error;
+            } else if (cause instanceof RuntimeException error) {
+                throw error;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // How translate scans, parses and writes out a file
+    record Options(String scannerMode, String parseMode, boolean flatChains, boolean fold, String symbolFormat,
+                   String treeFormat, ProgramCache cache) {
+    }
+
+    // Scans and parses filename and writes its symbol table and parse tree into directory. When
+    // quiet nothing is printed and a syntax error only reaches the caller as the exception.
+    static ParseTreeNode translate(String filename, Path directory, Options options, boolean quiet, Metrics metrics)
+            throws IOException, ScannerException, Parser.ParserException {
+        // A cached program skips both phases
+        String key = null;
+        ProgramCache.Entry cached = null;
+        if (options.cache() != null) {
+            Metrics.Phase cacheLoad = metrics.phase("cache load");
+            try {
+                key = ProgramCache.key(Files.readAllBytes(Paths.get(filename)), options.flatChains());
+                cached = options.cache().load(key);
+            } finally {
+                cacheLoad.close();
+            }
+        }
+
+        // Scanning phase
+        TokenBuffer tokens;
+        Metrics.Phase scan = metrics.phase("scan");
+        try {
+            tokens = cached != null ? cached.tokens() : switch (options.scannerMode()) {
+                case "mapped" -> ArrayScanner.open(filename).scanTokens();
+                case "parallel" -> ArrayScanner.open(filename).scanParallel(ForkJoinPool.commonPool());
+                default -> TokenBuffer.of(new Scanner(filename).scan());
+            };
+        } finally {
+            scan.close();
+        }
+        metrics.tokens(tokens);
+        Path symbolTable = directory.resolve(options.symbolFormat().equals("binary") ? "symbol_table.bin" : "symbol_table.txt");
+        Metrics.Phase printSymbols = metrics.phase("print symbol table");
+        try {
+            if (options.symbolFormat().equals("binary")) {
+                new ScannerSymbolTablePrinter(symbolTable.toString()).writeBinary(tokens);
+            } else {
+                ScannerSymbolTablePrinter symbolTableWriter = new ScannerSymbolTablePrinter(symbolTable.toString());
+                symbolTableWriter.write(tokens);
+            }
+        } finally {
+            printSymbols.close();
+        }
+        metrics.output(symbolTable);
+
+        // Parsing phase
+        ParseTreeNode parseTree;
+        Metrics.Phase parse = metrics.phase("parse");
+        try {
+            if (cached != null) {
+                parseTree = cached.tree();
+                if (!quiet) {
+                    System.out.println("Parsing successful!");
+                }
+            } else if (options.parseMode().equals("parallel")) {
+                parseTree = ParallelParser.parse(tokens, ForkJoinPool.commonPool(), options.flatChains(), quiet);
+            } else {
+                Parser parser = new Parser(TokenStream.of(tokens), quiet);
+                parser.setFlatChains(options.flatChains());
+                parseTree = parser.parse();
+            }
+        } finally {
+            parse.close();
+        }
+        if (options.cache() != null && cached == null) {
+            Metrics.Phase cacheStore = metrics.phase("cache store");
+            try {
+                options.cache().store(key, tokens, parseTree);
+            } finally {
+                cacheStore.close();
+            }
+        }
+        if (options.fold()) {
+            fold(parseTree, quiet, metrics);
+        }
+        metrics.tree(parseTree);
+
+        writeParseTree(parseTree, directory, options.treeFormat(), metrics);
+        return parseTree;
+    }
+
+    // Scans and parses filename through the IncrementalParser kept for it, writing nothing: a
+    // syntax check for an editor, which after the first only costs the edited declarations
+    private static void checkIncrementally(String filename, Metrics metrics)
+            throws IOException, ScannerException, Parser.ParserException {
+        Path path = Paths.get(filename).toAbsolutePath().normalize();
+        char[] text = Files.readString(path).toCharArray();
+        Edited edited = EDITED.computeIfAbsent(path.toString(), key -> new Edited());
+        synchronized (edited) {
+            Metrics.Phase parse = metrics.phase("parse");
+            try {
+                if (edited.parser == null) {
+                    edited.parser = new IncrementalParser(text, text.length);
+                } else {
+                    edited.parser.update(text, text.length);
+                }
+            } finally {
+                parse.close();
+            }
+            System.out.println("Parsing successful!");
+            System.out.println("Reparsed " + edited.parser.reparsedTokens() + " of " + edited.parser.size() + " tokens");
         }
     }
+
+    // Constant folding, after the cache has the tree as parsed
+    private static void fold(ParseTreeNode parseTree, boolean quiet, Metrics metrics) {
+        ConstantFolder folder = new ConstantFolder();
+        Metrics.Phase folding = metrics.phase("fold");
+        try {
+            folder.fold(parseTree);
+        } finally {
+            folding.close();
+        }
+        if (!quiet) {
+            System.out.println("Folded " + folder.folded() + " constant expression(s) and pruned " + folder.pruned()
+                    + " branch(es): " + folder.removed() + " fewer nodes");
+        }
+    }
+
+    private static void writeParseTree(ParseTreeNode parseTree, Path directory, String treeFormat, Metrics metrics)
+            throws IOException {
+        Path output = directory.resolve(treeFormat.equals("binary") ? "parse_tree_output.tree" : "parse_tree_output.ebnf");
+        Metrics.Phase printTree = metrics.phase("print parse tree");
+        try {
+            if (treeFormat.equals("binary")) {
+                TreeFile.write(parseTree, output);
+            } else {
+                ParseTreePrinter printer = new ParseTreePrinter(output.toString());
+                printer.print(parseTree);
+            }
+        } finally {
+            printTree.close();
+        }
+        metrics.output(output);
+    }
+
     private static void writeSymbolTable(List<Token> tokens) {
         try (PrintWriter writer = new PrintWriter("symbol_table.txt")) {
             String header = """
@@ -0,0 +1,737 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Translates a hot Chunk into a JVM class so HotSpot can compile it like any other Java
+// method. Every register becomes a long local (arrays get an Object local), constants become
+// immediates, and jumps become JVM branches; I/O, calls, errors and array allocation go back
+// through BytecodeVm helpers and off-heap elements through CoreArrays, so both execution paths
+// behave identically. Element accesses are in bounds by construction, leaving the JVM's own
+// array check, which HotSpot hoists out of loops or drops for a constant index.
+//
+// A compiled chunk can also take over a frame the VM is running: resume() loads the frame's
+// registers from the VM and enters the code at the header of the loop the VM was in, so a
+// loop that turns the chunk hot finishes as JVM bytecode even in a function called once.
+//
+// Classes are written as version 49 files, which need no StackMapTable, and are defined as
+// non-strong hidden classes: nothing but the VM's compiled table refers to them, so they are
+// unloaded with it. Chunks that do not fit a single JVM method stay interpreted.
+final class JitCompiler {
+
+    interface Compiled {
+        long invoke(BytecodeVm vm, Chunk chunk, int base) throws EvaluationException;
+
+        // Runs the rest of a frame of chunk at base from pc, the header of one of its loops
+        long resume(BytecodeVm vm, Chunk chunk, int base, int pc) throws EvaluationException;
+    }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String VM = "BytecodeVm";
+    private static final String CHUNK = "Chunk";
+    private static final String ARRAYS = "CoreArrays";
+    private static final String PRINT_SITE = "LBytecode$PrintSite;";
+    private static final String VALUE_SITE = "LBytecode$ValueSite;";
+    private static final String ERROR_SITE = "LBytecode$ErrorSite;";
+    private static final String EXCEPTION = "LEvaluationException;";
+
+    // JVM opcodes
+    private static final int ACONST_NULL = 1, ICONST_0 = 3, LCONST_0 = 9, LCONST_1 = 10, DCONST_0 = 14;
+    private static final int BIPUSH = 16, SIPUSH = 17, LDC_W = 19, LDC2_W = 20;
+    private static final int ILOAD = 21, LLOAD = 22, ALOAD = 25, LALOAD = 47, DALOAD = 49, AALOAD = 50;
+    private static final int LSTORE = 55, ASTORE = 58, LASTORE = 80, DASTORE = 82, AASTORE = 83;
+    private static final int DUP = 89, IADD = 96, LADD = 97, DADD = 99, LSUB = 101, DSUB = 103;
+    private static final int LMUL = 105, DMUL = 107, LDIV = 109, DDIV = 111, LREM = 113, DREM = 115;
+    private static final int LNEG = 117, DNEG = 119, L2I = 136, L2D = 138, D2L = 143, I2L = 133, I2C = 146;
+    private static final int LCMP = 148, DCMPL = 151, DCMPG = 152, IFEQ = 153, IFNE = 154, IFLT = 155, IFGE = 156;
+    private static final int IFGT = 157, IFLE = 158, IF_ICMPEQ = 159;
+    private static final int GOTO = 167, LRETURN = 173, RETURN = 177;
+    private static final int GETFIELD = 180, INVOKEVIRTUAL = 182, INVOKESPECIAL = 183, INVOKESTATIC = 184;
+    private static final int NEWARRAY = 188, ATHROW = 191, CHECKCAST = 192, WIDE = 196, IFNULL = 198;
+    private static final int T_LONG = 11;
+
+    // Locals of invoke() and resume(): this, vm, chunk, base, pc, then registers
+    private static final int VM_LOCAL = 1, CHUNK_LOCAL = 2, BASE_LOCAL = 3, PC_LOCAL = 4, FIRST_REGISTER = 5;
+
+    private static final class Label {
+        int position = -1;
+        final List<Integer> patches = new ArrayList<>();
+    }
+
+    private final Chunk chunk;
+    private final Chunk[] functions;
+    private final boolean[] immediate;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolEntries = new HashMap<>();
+    private int poolCount = 1;
+
+    private byte[] code = new byte[256];
+    private int size;
+    private boolean tooLarge;
+
+    private JitCompiler(Chunk chunk, Chunk[] functions) {
+        this.chunk = chunk;
+        this.functions = functions;
+        this.immediate = new boolean[chunk.registerCount];
+    }
+
+    // Returns null if the chunk cannot be compiled; the caller keeps interpreting it
+    static Compiled compile(Chunk chunk, Chunk[] functions) {
+        try {
+            byte[] classFile = new JitCompiler(chunk, functions).classFile();
+            if (classFile == null) {
+                return null;
+            }
+            Class<?> type = LOOKUP.defineHiddenClass(classFile, true).lookupClass();
+            return (Compiled) type.getDeclaredConstructor().newInstance();
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private byte[] classFile() throws IOException {
+        int thisClass = classEntry("Jit$" + chunk.name);
+        int superClass = classEntry("java/lang/Object");
+        int compiledInterface = classEntry("JitCompiler$Compiled");
+        int objectInit = methodEntry("java/lang/Object", "<init>", "()V");
+        int initName = utf8("<init>");
+        int initType = utf8("()V");
+        int invokeName = utf8("invoke");
+        int invokeType = utf8("(L" + VM + ";L" + CHUNK + ";I)J");
+        int resumeName = utf8("resume");
+        int resumeType = utf8("(L" + VM + ";L" + CHUNK + ";II)J");
+        int codeName = utf8("Code");
+
+        byte[] body = translate(false);
+        byte[] resumeBody = body == null ? null : translate(true);
+        if (resumeBody == null) {
+            return null;
+        }
+        int maxLocals = local(chunk.registerCount) + chunk.registerCount + 1;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolCount);
+        pool.writeTo(out);
+        out.writeShort(0x0031); // public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(compiledInterface);
+        out.writeShort(0);
+        out.writeShort(3);
+
+        out.writeShort(0x0001);
+        out.writeShort(initName);
+        out.writeShort(initType);
+        out.writeShort(1);
+        writeCode(out, codeName, 1, 1, new byte[]{ALOAD, 0, (byte) INVOKESPECIAL,
+                (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN});
+
+        out.writeShort(0x0011); // public final
+        out.writeShort(invokeName);
+        out.writeShort(invokeType);
+        out.writeShort(1);
+        writeCode(out, codeName, 8, maxLocals, body);
+
+        out.writeShort(0x0011);
+        out.writeShort(resumeName);
+        out.writeShort(resumeType);
+        out.writeShort(1);
+        writeCode(out, codeName, 8, maxLocals, resumeBody);
+
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals, byte[] body)
+            throws IOException {
+        out.writeShort(codeName);
+        out.writeInt(12 + body.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    // The code of invoke(), or of resume() when resuming
+    private byte[] translate(boolean resuming) throws IOException {
+        int[] program = chunk.code;
+        code = new byte[256];
+        size = 0;
+        for (int i = 0; i < chunk.constants.length; i++) {
+            immediate[chunk.constantBase + i] = true;
+        }
+        Label[] targets = new Label[program.length];
+        List<Integer> loops = new ArrayList<>();
+        for (int pc = 0; pc < program.length; pc += Bytecode.length(program[pc])) {
+            int opcode = program[pc];
+            if (writesRegister(opcode)) {
+                immediate[program[pc + 1]] = false;
+            } else if (opcode == Bytecode.SCAN) {
+                immediate[program[pc + 2]] = false;
+            }
+            int target = Bytecode.targetOperand(opcode);
+            if (target != 0) {
+                targets[program[pc + target]] = new Label();
+                if (program[pc + target] < pc && !loops.contains(program[pc + target])) {
+                    loops.add(program[pc + target]);
+                }
+            }
+            if (opcode == Bytecode.CALL && functions[program[pc + 2]] == null) {
+                return null;
+            }
+        }
+
+        if (resuming) {
+            // Every register of the frame is in the VM, and the code goes on at the loop
+            // header in the pc argument
+            for (int register = 0; register < chunk.registerCount; register++) {
+                if (immediate[register]) {
+                    continue;
+                }
+                vmRegister(register);
+                emit(LALOAD);
+                localOp(LSTORE, local(register));
+                vmField("references", "[Ljava/lang/Object;");
+                localOp(ILOAD, BASE_LOCAL);
+                pushInt(register);
+                emit(IADD);
+                emit(AALOAD);
+                localOp(ASTORE, reference(register));
+            }
+            for (int loop : loops) {
+                localOp(ILOAD, PC_LOCAL);
+                pushInt(loop);
+                branch(IF_ICMPEQ, targets[loop]);
+            }
+            emit(ACONST_NULL);
+            emit(ATHROW);
+        } else {
+            // Parameters arrive in the VM registers; every other local starts at zero so the
+            // verifier sees each one typed on every path
+            int parameters = chunk.function.parameterTypes.length;
+            for (int register = 0; register < chunk.registerCount; register++) {
+                if (immediate[register]) {
+                    continue;
+                }
+                if (register < parameters) {
+                    vmRegister(register);
+                    emit(LALOAD);
+                } else {
+                    emit(LCONST_0);
+                }
+                localOp(LSTORE, local(register));
+                emit(ACONST_NULL);
+                localOp(ASTORE, reference(register));
+            }
+        }
+
+        for (int pc = 0; pc < program.length; pc += Bytecode.length(program[pc])) {
+            if (targets[pc] != null) {
+                bind(targets[pc]);
+            }
+            int opcode = program[pc];
+            int a = pc + 1 < program.length ? program[pc + 1] : 0;
+            int b = pc + 2 < program.length ? program[pc + 2] : 0;
+            int c = pc + 3 < program.length ? program[pc + 3] : 0;
+            switch (opcode) {
+                case Bytecode.MOVE -> {
+                    load(b);
+                    store(a);
+                }
+                case Bytecode.ADD_I -> binary(a, b, c, LADD);
+                case Bytecode.SUB_I -> binary(a, b, c, LSUB);
+                case Bytecode.MUL_I -> binary(a, b, c, LMUL);
+                case Bytecode.DIV_I, Bytecode.MOD_I -> {
+                    if (!immediate[c] || chunk.constants[c - chunk.constantBase] == 0) {
+                        Label nonZero = new Label();
+                        load(c);
+                        emit(LCONST_0);
+                        emit(LCMP);
+                        branch(IFNE, nonZero);
+                        throwDivisionByZero(pc);
+                        bind(nonZero);
+                    }
+                    binary(a, b, c, opcode == Bytecode.DIV_I ? LDIV : LREM);
+                }
+                case Bytecode.POW_I -> {
+                    Label valid = new Label();
+                    load(c);
+                    emit(LCONST_0);
+                    emit(LCMP);
+                    branch(IFGE, valid);
+                    load(b);
+                    emit(LCONST_0);
+                    emit(LCMP);
+                    branch(IFNE, valid);
+                    throwDivisionByZero(pc);
+                    bind(valid);
+                    load(b);
+                    load(c);
+                    invoke(INVOKESTATIC, "CoreOps", "pow", "(JJ)J");
+                    store(a);
+                }
+                case Bytecode.ADD_F -> floatBinary(a, b, c, DADD);
+                case Bytecode.SUB_F -> floatBinary(a, b, c, DSUB);
+                case Bytecode.MUL_F -> floatBinary(a, b, c, DMUL);
+                case Bytecode.DIV_F -> floatBinary(a, b, c, DDIV);
+                case Bytecode.MOD_F -> floatBinary(a, b, c, DREM);
+                case Bytecode.POW_F -> {
+                    loadFloat(b);
+                    loadFloat(c);
+                    invoke(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+                    storeFloat(a);
+                }
+                case Bytecode.NEG_I -> {
+                    load(b);
+                    emit(LNEG);
+                    store(a);
+                }
+                case Bytecode.NEG_F -> {
+                    loadFloat(b);
+                    emit(DNEG);
+                    storeFloat(a);
+                }
+                case Bytecode.NOT_I, Bytecode.I2B -> {
+                    load(b);
+                    emit(LCONST_0);
+                    emit(LCMP);
+                    booleanValue(opcode == Bytecode.NOT_I ? IFEQ : IFNE, a);
+                }
+                case Bytecode.NOT_F, Bytecode.F2B -> {
+                    loadFloat(b);
+                    emit(DCONST_0);
+                    emit(DCMPL);
+                    booleanValue(opcode == Bytecode.NOT_F ? IFEQ : IFNE, a);
+                }
+                case Bytecode.I2F -> {
+                    load(b);
+                    emit(L2D);
+                    storeFloat(a);
+                }
+                case Bytecode.F2I -> {
+                    loadFloat(b);
+                    emit(D2L);
+                    store(a);
+                }
+                case Bytecode.I2C -> {
+                    load(b);
+                    emit(L2I);
+                    emit(I2C);
+                    emit(I2L);
+                    store(a);
+                }
+                case Bytecode.LT_I, Bytecode.LE_I, Bytecode.GT_I, Bytecode.GE_I, Bytecode.EQ_I, Bytecode.NE_I,
+                     Bytecode.LT_F, Bytecode.LE_F, Bytecode.GT_F, Bytecode.GE_F, Bytecode.EQ_F, Bytecode.NE_F -> {
+                    boolean isFloat = opcode >= Bytecode.LT_F;
+                    booleanValue(compare(isFloat, opcode - (isFloat ? Bytecode.LT_F : Bytecode.LT_I), b, c), a);
+                }
+                case Bytecode.JMP -> branch(GOTO, targets[a]);
+                case Bytecode.JMPF, Bytecode.JMPT -> {
+                    load(a);
+                    emit(LCONST_0);
+                    emit(LCMP);
+                    branch(opcode == Bytecode.JMPF ? IFEQ : IFNE, targets[b]);
+                }
+                case Bytecode.JLT_I, Bytecode.JLE_I, Bytecode.JGT_I, Bytecode.JGE_I, Bytecode.JEQ_I, Bytecode.JNE_I,
+                     Bytecode.JLT_F, Bytecode.JLE_F, Bytecode.JGT_F, Bytecode.JGE_F, Bytecode.JEQ_F, Bytecode.JNE_F -> {
+                    boolean isFloat = opcode >= Bytecode.JLT_F;
+                    branch(compare(isFloat, opcode - (isFloat ? Bytecode.JLT_F : Bytecode.JLT_I), a, b), targets[c]);
+                }
+                case Bytecode.GETG -> {
+                    vmField("globals", "[J");
+                    pushInt(b);
+                    emit(LALOAD);
+                    store(a);
+                }
+                case Bytecode.SETG -> {
+                    vmField("globals", "[J");
+                    pushInt(a);
+                    load(b);
+                    emit(LASTORE);
+                }
+                case Bytecode.GETGREF -> {
+                    vmField("globalReferences", "[Ljava/lang/Object;");
+                    pushInt(b);
+                    emit(AALOAD);
+                    localOp(ASTORE, reference(a));
+                }
+                case Bytecode.SETGREF -> {
+                    vmField("globalReferences", "[Ljava/lang/Object;");
+                    pushInt(a);
+                    localOp(ALOAD, reference(b));
+                    emit(AASTORE);
+                }
+                case Bytecode.NEWARR -> {
+                    localOp(ALOAD, VM_LOCAL);
+                    pushInt(b);
+                    pushInt(c);
+                    invoke(INVOKEVIRTUAL, VM, "newArray", "(II)Ljava/lang/Object;");
+                    localOp(ASTORE, reference(a));
+                }
+                case Bytecode.ALOAD_I, Bytecode.ALOAD_F -> {
+                    array(b, opcode == Bytecode.ALOAD_I ? "[J" : "[D");
+                    pushInt(c);
+                    if (opcode == Bytecode.ALOAD_I) {
+                        emit(LALOAD);
+                        store(a);
+                    } else {
+                        emit(DALOAD);
+                        storeFloat(a);
+                    }
+                }
+                case Bytecode.ALOAD_M -> {
+                    localOp(ALOAD, reference(b));
+                    pushInt(c);
+                    invoke(INVOKESTATIC, ARRAYS, "get", "(Ljava/lang/Object;I)J");
+                    store(a);
+                }
+                case Bytecode.ASTORE_I, Bytecode.ASTORE_F -> {
+                    array(a, opcode == Bytecode.ASTORE_I ? "[J" : "[D");
+                    pushInt(b);
+                    if (opcode == Bytecode.ASTORE_I) {
+                        load(c);
+                        emit(LASTORE);
+                    } else {
+                        loadFloat(c);
+                        emit(DASTORE);
+                    }
+                }
+                case Bytecode.ASTORE_M -> {
+                    localOp(ALOAD, reference(a));
+                    pushInt(b);
+                    load(c);
+                    invoke(INVOKESTATIC, ARRAYS, "set", "(Ljava/lang/Object;IJ)V");
+                }
+                case Bytecode.AFILL -> {
+                    localOp(ALOAD, reference(a));
+                    site(b);
+                    invoke(INVOKESTATIC, ARRAYS, "fill", "(Ljava/lang/Object;Ljava/lang/Object;)V");
+                }
+                case Bytecode.CALL -> {
+                    int arguments = functions[b].function.parameterTypes.length;
+                    for (int i = 0; i < arguments; i++) {
+                        vmRegister(c + i);
+                        load(c + i);
+                        emit(LASTORE);
+                    }
+                    localOp(ALOAD, VM_LOCAL);
+                    pushInt(b);
+                    localOp(ILOAD, BASE_LOCAL);
+                    pushInt(c);
+                    emit(IADD);
+                    invoke(INVOKEVIRTUAL, VM, "invoke", "(II)J");
+                    store(a);
+                }
+                case Bytecode.RET -> {
+                    load(a);
+                    emit(LRETURN);
+                }
+                case Bytecode.PRINT -> {
+                    int count = ((Bytecode.PrintSite) chunk.sites[a]).types().length;
+                    localOp(ALOAD, VM_LOCAL);
+                    site(a, PRINT_SITE);
+                    pushInt(count);
+                    emit(NEWARRAY);
+                    emit(T_LONG);
+                    for (int i = 0; i < count; i++) {
+                        emit(DUP);
+                        pushInt(i);
+                        load(b + i);
+                        emit(LASTORE);
+                    }
+                    invoke(INVOKEVIRTUAL, VM, "print", "(" + PRINT_SITE + "[J)V");
+                }
+                case Bytecode.PRINTV -> {
+                    localOp(ALOAD, VM_LOCAL);
+                    site(a, VALUE_SITE);
+                    load(b);
+                    invoke(INVOKEVIRTUAL, VM, "print", "(" + VALUE_SITE + "J)V");
+                }
+                case Bytecode.SCAN -> {
+                    int word = reference(chunk.registerCount);
+                    localOp(ALOAD, VM_LOCAL);
+                    site(a, VALUE_SITE);
+                    invoke(INVOKEVIRTUAL, VM, "readWord", "(" + VALUE_SITE + ")Ljava/lang/String;");
+                    localOp(ASTORE, word);
+                    localOp(ALOAD, word);
+                    branch(IFNULL, targets[c]);
+                    site(a, VALUE_SITE);
+                    localOp(ALOAD, word);
+                    invoke(INVOKESTATIC, VM, "parseWord", "(" + VALUE_SITE + "Ljava/lang/String;)J");
+                    store(b);
+                }
+                case Bytecode.ERROR -> {
+                    site(a, ERROR_SITE);
+                    invoke(INVOKESTATIC, VM, "siteError", "(" + ERROR_SITE + ")" + EXCEPTION);
+                    emit(ATHROW);
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        if (tooLarge || size > 65535) {
+            return null;
+        }
+        return java.util.Arrays.copyOf(code, size);
+    }
+
+    private static boolean writesRegister(int opcode) {
+        return opcode <= Bytecode.NE_F || opcode == Bytecode.GETG || opcode == Bytecode.ALOAD_I
+                || opcode == Bytecode.ALOAD_F || opcode == Bytecode.ALOAD_M || opcode == Bytecode.CALL;
+    }
+
+    private static int local(int register) {
+        return FIRST_REGISTER + 2 * register;
+    }
+
+    private int reference(int register) {
+        return local(chunk.registerCount) + register;
+    }
+
+    private void load(int register) throws IOException {
+        if (immediate[register]) {
+            long value = chunk.constants[register - chunk.constantBase];
+            if (value == 0 || value == 1) {
+                emit(value == 0 ? LCONST_0 : LCONST_1);
+            } else {
+                emitShort(LDC2_W, longEntry(value));
+            }
+        } else {
+            localOp(LLOAD, local(register));
+        }
+    }
+
+    private void store(int register) {
+        localOp(LSTORE, local(register));
+    }
+
+    private void loadFloat(int register) throws IOException {
+        load(register);
+        invoke(INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D");
+    }
+
+    private void storeFloat(int register) throws IOException {
+        invoke(INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J");
+        store(register);
+    }
+
+    private void binary(int a, int b, int c, int operation) throws IOException {
+        load(b);
+        load(c);
+        emit(operation);
+        store(a);
+    }
+
+    private void floatBinary(int a, int b, int c, int operation) throws IOException {
+        loadFloat(b);
+        loadFloat(c);
+        emit(operation);
+        storeFloat(a);
+    }
+
+    // Leaves the comparison result on the stack and returns the branch opcode taken when the
+    // relation (LT, LE, GT, GE, EQ, NE) holds. A NaN operand makes every relation but NE false.
+    private int compare(boolean isFloat, int relation, int left, int right) throws IOException {
+        if (isFloat) {
+            loadFloat(left);
+            loadFloat(right);
+            emit(relation <= 1 ? DCMPG : DCMPL);
+        } else {
+            load(left);
+            load(right);
+            emit(LCMP);
+        }
+        return switch (relation) {
+            case 0 -> IFLT;
+            case 1 -> IFLE;
+            case 2 -> IFGT;
+            case 3 -> IFGE;
+            case 4 -> IFEQ;
+            default -> IFNE;
+        };
+    }
+
+    // Stores 1 into the register if the branch on the int at the top of the stack is taken
+    private void booleanValue(int branch, int register) {
+        Label taken = new Label();
+        Label done = new Label();
+        branch(branch, taken);
+        emit(LCONST_0);
+        branch(GOTO, done);
+        bind(taken);
+        emit(LCONST_1);
+        bind(done);
+        store(register);
+    }
+
+    private void throwDivisionByZero(int pc) throws IOException {
+        localOp(ALOAD, CHUNK_LOCAL);
+        pushInt(pc);
+        invoke(INVOKESTATIC, VM, "divisionByZero", "(L" + CHUNK + ";I)" + EXCEPTION);
+        emit(ATHROW);
+    }
+
+    private void array(int register, String type) throws IOException {
+        localOp(ALOAD, reference(register));
+        emitShort(CHECKCAST, classEntry(type));
+    }
+
+    private void site(int index, String descriptor) throws IOException {
+        site(index);
+        emitShort(CHECKCAST, classEntry(descriptor.substring(1, descriptor.length() - 1)));
+    }
+
+    private void site(int index) throws IOException {
+        localOp(ALOAD, CHUNK_LOCAL);
+        emitShort(GETFIELD, fieldEntry(CHUNK, "sites", "[Ljava/lang/Object;"));
+        pushInt(index);
+        emit(AALOAD);
+    }
+
+    private void vmField(String name, String descriptor) throws IOException {
+        localOp(ALOAD, VM_LOCAL);
+        emitShort(GETFIELD, fieldEntry(VM, name, descriptor));
+    }
+
+    // Pushes vm.registers and the absolute index of a register of this frame
+    private void vmRegister(int register) throws IOException {
+        vmField("registers", "[J");
+        localOp(ILOAD, BASE_LOCAL);
+        pushInt(register);
+        emit(IADD);
+    }
+
+    private void invoke(int opcode, String owner, String name, String descriptor) throws IOException {
+        emitShort(opcode, methodEntry(owner, name, descriptor));
+    }
+
+    private void pushInt(int value) throws IOException {
+        if (value >= -1 && value <= 5) {
+            emit(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            emit(BIPUSH);
+            emit(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            emitShort(SIPUSH, value);
+        } else {
+            emitShort(LDC_W, entry("I" + value, 3, out -> out.writeInt(value)));
+        }
+    }
+
+    private void localOp(int opcode, int index) {
+        if (index > 255) {
+            emit(WIDE);
+            emitShort(opcode, index);
+        } else {
+            emit(opcode);
+            emit(index);
+        }
+    }
+
+    private void branch(int opcode, Label label) {
+        int start = size;
+        emitShort(opcode, 0);
+        if (label.position >= 0) {
+            patch(start, label.position);
+        } else {
+            label.patches.add(start);
+        }
+    }
+
+    private void bind(Label label) {
+        label.position = size;
+        for (int start : label.patches) {
+            patch(start, size);
+        }
+    }
+
+    private void patch(int start, int target) {
+        int offset = target - start;
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            tooLarge = true;
+        }
+        code[start + 1] = (byte) (offset >> 8);
+        code[start + 2] = (byte) offset;
+    }
+
+    private void emit(int value) {
+        if (size == code.length) {
+            code = java.util.Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = (byte) value;
+    }
+
+    private void emitShort(int opcode, int operand) {
+        emit(opcode);
+        emit(operand >> 8);
+        emit(operand);
+    }
+
+    // Constant pool
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, int tag, EntryWriter writer) throws IOException {
+        Integer index = poolEntries.get(key);
+        if (index == null) {
+            index = poolCount;
+            poolOut.writeByte(tag);
+            writer.write(poolOut);
+            poolCount += tag == 5 || tag == 6 ? 2 : 1;
+            poolEntries.put(key, index);
+        }
+        return index;
+    }
+
+    private int utf8(String value) throws IOException {
+        return entry("U" + value, 1, out -> out.writeUTF(value));
+    }
+
+    private int longEntry(long value) throws IOException {
+        return entry("J" + value, 5, out -> out.writeLong(value));
+    }
+
+    private int classEntry(String name) throws IOException {
+        int nameIndex = utf8(name);
+        return entry("C" + name, 7, out -> out.writeShort(nameIndex));
+    }
+
+    private int memberEntry(int tag, String owner, String name, String descriptor) throws IOException {
+        int ownerIndex = classEntry(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ":" + descriptor, 12, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry(tag + owner + "." + name + ":" + descriptor, tag, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private int fieldEntry(String owner, String name, String descriptor) throws IOException {
+        return memberEntry(9, owner, name, descriptor);
+    }
+
+    private int methodEntry(String owner, String name, String descriptor) throws IOException {
+        return memberEntry(10, owner, name, descriptor);
+    }
+}
@@ -0,0 +1,100 @@
+// Keyword recognition on a range of characters without creating a String. The hash
+// (first + 7 * last + 2 * length) & 31 of the lowercased spelling is distinct for every
+// keyword, so one table probe and a case-folding compare decide whether a range is one.
+final class Keywords {
+
+    private static final String[] SPELLINGS = new String[32];
+    private static final Token.TokenType[] TYPES = new Token.TokenType[32];
+
+    static {
+        for (Token.TokenType type : Token.TokenType.values()) {
+            if (type.isKeyword()) {
+                String spelling = spelling(type);
+                int slot = hash(spelling.charAt(0), spelling.charAt(spelling.length() - 1), spelling.length());
+                if (SPELLINGS[slot] != null) {
+                    throw new IllegalStateException("Keyword hash collision: " + spelling + ", " + SPELLINGS[slot]);
+                }
+                SPELLINGS[slot] = spelling;
+                TYPES[slot] = type;
+            }
+        }
+    }
+
+    private Keywords() {
+    }
+
+    private static int hash(int first, int last, int length) {
+        return (first + 7 * last + 2 * length) & 31;
+    }
+
+    // The lowercase spelling of a keyword type, e.g. "printf" for PRINTF_KW
+    static String spelling(Token.TokenType type) {
+        String name = type.name();
+        return name.substring(0, name.length() - "_KW".length()).toLowerCase();
+    }
+
+    // Matches keywords regardless of case, like the toLowerCase switch it replaces
+    static Token.TokenType lookup(char[] chars, int start, int end) {
+        int length = end - start;
+        if (length < 2 || length > 6) {
+            return Token.TokenType.IDENTIFIER;
+        }
+        char first = chars[start];
+        char last = chars[end - 1];
+        if (first >= 128 || last >= 128) {
+            return lookupSlow(new String(chars, start, length));
+        }
+        int slot = hash(first | 0x20, last | 0x20, length);
+        String spelling = SPELLINGS[slot];
+        if (spelling == null || spelling.length() != length) {
+            return Token.TokenType.IDENTIFIER;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = chars[start + i];
+            if (c >= 128) {
+                return lookupSlow(new String(chars, start, length));
+            }
+            if ((c | 0x20) != spelling.charAt(i)) {
+                return Token.TokenType.IDENTIFIER;
+            }
+        }
+        return TYPES[slot];
+    }
+
+    static Token.TokenType lookup(String lexeme) {
+        int length = lexeme.length();
+        if (length < 2 || length > 6) {
+            return Token.TokenType.IDENTIFIER;
+        }
+        char first = lexeme.charAt(0);
+        char last = lexeme.charAt(length - 1);
+        if (first >= 128 || last >= 128) {
+            return lookupSlow(lexeme);
+        }
+        int slot = hash(first | 0x20, last | 0x20, length);
+        String spelling = SPELLINGS[slot];
+        if (spelling == null || spelling.length() != length) {
+            return Token.TokenType.IDENTIFIER;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = lexeme.charAt(i);
+            if (c >= 128) {
+                return lookupSlow(lexeme);
+            }
+            if ((c | 0x20) != spelling.charAt(i)) {
+                return Token.TokenType.IDENTIFIER;
+            }
+        }
+        return TYPES[slot];
+    }
+
+    // Non-ASCII letters go through toLowerCase, whose case mappings are not a simple bit flip
+    private static Token.TokenType lookupSlow(String lexeme) {
+        String lower = lexeme.toLowerCase();
+        if (lower.length() < 2 || lower.length() > 6) {
+            return Token.TokenType.IDENTIFIER;
+        }
+        int slot = hash(lower.charAt(0), lower.charAt(lower.length() - 1), lower.length());
+        return lower.equals(SPELLINGS[slot]) ? TYPES[slot] : Token.TokenType.IDENTIFIER;
+    }
+}
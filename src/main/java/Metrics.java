@@ -0,0 +1,336 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Where the translation of one file goes: the time and heap allocation of each phase, the
+// tokens by type, the size and depth of the parse tree, the bytes of every output file and
+// the arrays the program allocated on and off the heap when it ran. Each is committed as a
+// JFR event when a recording is running, and with --metrics printed after the run. Nothing is
+// measured otherwise, as the allocation counter loads the management classes, which would add
+// to startup.
+//
+// Allocation is that of the thread running the phase, so in parallel scanning and parsing it
+// leaves out the fork-join workers. Virtual threads, which run batch files and daemon requests,
+// have no allocation counter; their phases record -1.
+final class Metrics {
+
+    @Name("jinterpreter.Phase")
+    @Label("Phase")
+    @Category("Jinterpreter")
+    @Description("Scanning, parsing, writing out or executing a program")
+    static final class PhaseEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Phase")
+        String phase;
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("jinterpreter.TokenCount")
+    @Label("Token Count")
+    @Category("Jinterpreter")
+    @Description("Tokens of one type in a program")
+    static final class TokenCountEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Token Type")
+        String type;
+        @Label("Count")
+        long count;
+    }
+
+    @Name("jinterpreter.ParseTree")
+    @Label("Parse Tree")
+    @Category("Jinterpreter")
+    @Description("Size of the parse tree of a program")
+    static final class ParseTreeEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Nodes")
+        long nodes;
+        @Label("Depth")
+        int depth;
+    }
+
+    @Name("jinterpreter.Output")
+    @Label("Output")
+    @Category("Jinterpreter")
+    @Description("A symbol table or parse tree written for a program")
+    static final class OutputEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Output")
+        String output;
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("jinterpreter.Arrays")
+    @Label("Arrays")
+    @Category("Jinterpreter")
+    @Description("Arrays allocated while executing a program")
+    static final class ArraysEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Arrays")
+        long count;
+        @Label("On Heap")
+        @DataAmount
+        long heapBytes;
+        @Label("Off Heap")
+        @DataAmount
+        long offHeapBytes;
+        @Label("Largest")
+        long largest;
+    }
+
+    private record Timing(String phase, long nanos, long allocated) { // allocated -1 when unknown
+    }
+
+    private record Output(String name, long bytes) {
+    }
+
+    private static final Token.TokenType[] TYPES = Token.TokenType.values();
+    private static final Phase NONE = new Phase(null, null);
+    private static final int LINE_WIDTH = 100;
+
+    private final String file;
+    private final boolean enabled;
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<Timing> timings = new ArrayList<>();
+    private final List<Output> outputs = new ArrayList<>();
+    private long[] tokenCounts; // by ordinal, once counted
+    private long nodes;
+    private int depth = -1;     // until the tree is measured
+    private CoreArrays arrays;  // once executed
+
+    // report: whether report() will be called, which measures even without a recording
+    Metrics(String file, boolean report) {
+        this.file = file;
+        this.enabled = report || FlightRecorder.isInitialized();
+        this.threads = enabled ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+    }
+
+    // Measures from here until the phase is closed:
+    //
+    //   Metrics.Phase scan = metrics.phase("scan");
+    //   try { ... } finally { scan.close(); }
+    Phase phase(String name) {
+        return enabled ? new Phase(this, name) : NONE;
+    }
+
+    void tokens(TokenBuffer tokens) {
+        if (enabled) {
+            long[] counts = new long[TYPES.length];
+            for (int i = 0; i < tokens.size(); i++) {
+                counts[tokens.type(i).ordinal()]++;
+            }
+            countedTokens(counts);
+        }
+    }
+
+    // Tokens passed to consumer, counted on the way; the counts are taken by countedTokens()
+    // once the last one went by
+    Consumer<Token> tokens(Consumer<Token> consumer) {
+        if (!enabled) {
+            return consumer;
+        }
+        tokenCounts = new long[TYPES.length];
+        return token -> {
+            tokenCounts[token.type.ordinal()]++;
+            consumer.accept(token);
+        };
+    }
+
+    void countedTokens() {
+        if (tokenCounts != null) {
+            countedTokens(tokenCounts);
+        }
+    }
+
+    private void countedTokens(long[] counts) {
+        tokenCounts = counts;
+        for (Token.TokenType type : TYPES) {
+            if (counts[type.ordinal()] > 0) {
+                TokenCountEvent event = new TokenCountEvent();
+                if (event.shouldCommit()) {
+                    event.file = file;
+                    event.type = type.name();
+                    event.count = counts[type.ordinal()];
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    // Nodes and depth, the root being at depth 1; walked with a stack of its own as the tree
+    // of a long operator chain can be deeper than the thread's
+    void tree(ParseTreeNode root) {
+        if (!enabled) {
+            return;
+        }
+        List<ParseTreeNode> stack = new ArrayList<>();
+        int[] depths = new int[64];
+        stack.add(root);
+        depths[0] = 1;
+        nodes = 0;
+        depth = 0;
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            ParseTreeNode node = stack.remove(top);
+            int level = depths[top];
+            nodes++;
+            depth = Math.max(depth, level);
+            for (ParseTreeNode child : node.children) {
+                if (stack.size() == depths.length) {
+                    depths = Arrays.copyOf(depths, 2 * depths.length);
+                }
+                depths[stack.size()] = level + 1;
+                stack.add(child);
+            }
+        }
+        ParseTreeEvent event = new ParseTreeEvent();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.nodes = nodes;
+            event.depth = depth;
+            event.commit();
+        }
+    }
+
+    // An output file once it is written and closed
+    void output(Path output) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        long bytes = Files.size(output);
+        outputs.add(new Output(output.getFileName().toString(), bytes));
+        OutputEvent event = new OutputEvent();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.output = output.getFileName().toString();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    // The arrays of an execution, null if it failed before allocating any
+    void arrays(CoreArrays arrays) {
+        if (!enabled || arrays == null) {
+            return;
+        }
+        this.arrays = arrays;
+        ArraysEvent event = new ArraysEvent();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.count = arrays.count();
+            event.heapBytes = arrays.heapBytes();
+            event.offHeapBytes = arrays.offHeapBytes();
+            event.largest = arrays.largest();
+            event.commit();
+        }
+    }
+
+    void report(PrintStream out) {
+        out.println("Metrics of " + file);
+        out.printf("  %-20s %10s %14s%n", "phase", "ms", "allocated KB");
+        long totalNanos = 0;
+        long totalAllocated = 0;
+        for (Timing timing : timings) {
+            out.printf("  %-20s %10.1f %14s%n", timing.phase(), timing.nanos() / 1e6, kilobytes(timing.allocated()));
+            totalNanos += timing.nanos();
+            totalAllocated = timing.allocated() < 0 || totalAllocated < 0 ? -1 : totalAllocated + timing.allocated();
+        }
+        out.printf("  %-20s %10.1f %14s%n", "total", totalNanos / 1e6, kilobytes(totalAllocated));
+        if (tokenCounts != null) {
+            out.printf("  tokens      %,d%n", Arrays.stream(tokenCounts).sum());
+            // by type, most frequent first, wrapped after LINE_WIDTH
+            StringBuilder line = new StringBuilder("             ");
+            Integer[] types = IntStream.range(0, TYPES.length).filter(type -> tokenCounts[type] > 0).boxed()
+                    .sorted(Comparator.comparingLong((Integer type) -> tokenCounts[type]).reversed())
+                    .toArray(Integer[]::new);
+            for (int i = 0; i < types.length; i++) {
+                String count = " " + TYPES[types[i]] + " " + tokenCounts[types[i]] + (i < types.length - 1 ? "," : "");
+                if (line.length() + count.length() > LINE_WIDTH) {
+                    out.println(line);
+                    line.setLength(13);
+                }
+                line.append(count);
+            }
+            out.println(line);
+        }
+        if (depth >= 0) {
+            out.printf("  parse tree  %,d nodes, depth %d%n", nodes, depth);
+        }
+        for (Output output : outputs) {
+            out.printf("  output      %s %,d bytes%n", output.name(), output.bytes());
+        }
+        if (arrays != null) {
+            out.printf("  arrays      %,d allocated, %s KB on heap, %s KB off heap, largest %,d elements%n", arrays.count(),
+                    kilobytes(arrays.heapBytes()), kilobytes(arrays.offHeapBytes()), arrays.largest());
+        }
+    }
+
+    private static String kilobytes(long bytes) {
+        return bytes < 0 ? "-" : String.format("%,d", bytes / 1024);
+    }
+
+    static final class Phase implements AutoCloseable {
+        private final Metrics metrics; // null when nothing is measured
+        private final String name;
+        private final PhaseEvent event;
+        private final long start;
+        private final long allocated;
+
+        private Phase(Metrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+            if (metrics == null) {
+                event = null;
+                start = 0;
+                allocated = 0;
+            } else {
+                event = new PhaseEvent();
+                event.begin();
+                allocated = metrics.threads.getCurrentThreadAllocatedBytes();
+                start = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (metrics == null) {
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            long allocated = this.allocated < 0 ? -1 : metrics.threads.getCurrentThreadAllocatedBytes() - this.allocated;
+            metrics.timings.add(new Timing(name, nanos, allocated));
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = metrics.file;
+                event.phase = name;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+}
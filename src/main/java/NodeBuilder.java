@@ -0,0 +1,321 @@
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds the ExecNode tree for a resolved parse tree from the static types the Resolver gave
+// its expressions. Every operator runs on int or float operands, with a Convert node around an
+// operand of another type, and every value stored, passed or returned is converted to its
+// target's type first, so a program runs on raw long and double values without boxing.
+public class NodeBuilder {
+
+    private final Resolver resolver;
+    private final Object[] constants;
+    private final PrintStream out;
+    private final Reader in;
+
+    final ExecNode.Frame globals;
+    final ExpressionNodes.CallTarget[] targets;
+    final CoreArrays arrays = new CoreArrays();
+
+    private Resolver.Function function;
+
+    public NodeBuilder(Resolver resolver, PrintStream out, Reader in) {
+        this.resolver = resolver;
+        this.constants = resolver.constants.toArray();
+        this.out = out;
+        this.in = in;
+        this.globals = new ExecNode.Frame(resolver.globals.size);
+        this.targets = new ExpressionNodes.CallTarget[resolver.functions.size()];
+        ExpressionNodes.CallDepth calls = new ExpressionNodes.CallDepth();
+        for (Resolver.Function f : resolver.functions) {
+            targets[f.index] = new ExpressionNodes.CallTarget(f, calls);
+        }
+    }
+
+    public ExecNode.Statement buildGlobals(ParseTreeNode program) throws EvaluationException {
+        List<ExecNode.Statement> statements = new ArrayList<>();
+        for (ParseTreeNode declaration : program.children) {
+            ParseTreeNode node = declaration.children.get(0);
+            if (!node.name.equals("Function_Declaration")) {
+                statements.add(statement(node));
+            }
+        }
+        return new StatementNodes.Block(statements.toArray(new ExecNode.Statement[0]));
+    }
+
+    public void buildFunctions() throws EvaluationException {
+        for (Resolver.Function f : resolver.functions) {
+            if (f.body != null) {
+                function = f;
+                targets[f.index].body = statement(f.body);
+            }
+        }
+        function = null;
+    }
+
+    private ExecNode.Statement statement(ParseTreeNode node) throws EvaluationException {
+        List<ParseTreeNode> c = node.children;
+        switch (node.name) {
+            case "Block": {
+                List<ExecNode.Statement> statements = new ArrayList<>();
+                for (ParseTreeNode item : c.get(1).children) {
+                    statements.add(statement(item.children.get(0)));
+                }
+                return new StatementNodes.Block(statements.toArray(new ExecNode.Statement[0]));
+            }
+            case "Statement":
+                if (c.size() == 2) {
+                    return new StatementNodes.ExpressionStatement(expression(c.get(0)));
+                }
+                if (c.get(0).name.equals("SEMICOLON")) {
+                    return new StatementNodes.Block(new ExecNode.Statement[0]);
+                }
+                return statement(c.get(0));
+            case "Expression_Statement":
+                return new StatementNodes.ExpressionStatement(expression(c.get(0)));
+            case "Variable_Declaration":
+                return declareVariables(node);
+            case "Array_Declaration":
+                return declareArray(node);
+            case "Return_Statement":
+                return new StatementNodes.Return(function.returnType, expression(c.get(1), function.returnType));
+            case "If_Statement":
+                return new StatementNodes.If(expression(c.get(2)), statement(c.get(4)),
+                        c.size() > 5 ? statement(c.get(5).children.get(1)) : null);
+            case "While_Statement":
+                return new StatementNodes.Loop(null, expression(c.get(2)), null, statement(c.get(4)));
+            case "For_Statement": {
+                ParseTreeNode init = c.get(2);
+                if (init.name.equals("Variable_Declaration") || init.name.equals("Array_Declaration")) {
+                    return new StatementNodes.Loop(statement(init), expression(c.get(3)), expression(c.get(5)),
+                            statement(c.get(7)));
+                }
+                return new StatementNodes.Loop(new StatementNodes.ExpressionStatement(expression(init)),
+                        expression(c.get(4)), expression(c.get(6)), statement(c.get(8)));
+            }
+            case "Input_Statement": {
+                List<ExpressionNodes.Read> targets = new ArrayList<>();
+                for (ParseTreeNode target : c) {
+                    if (target.name.equals("Identifier")) {
+                        targets.add(read(target));
+                    }
+                }
+                return new StatementNodes.Input(out, in, targets.toArray(new ExpressionNodes.Read[0]));
+            }
+            case "Output_Statement": {
+                ParseTreeNode first = c.get(2);
+                if (first.name.equals("Identifier")) {
+                    return new StatementNodes.Output(out, null, new ExecNode.Expression[]{read(first)});
+                }
+                ExecNode.Expression[] arguments = new ExecNode.Expression[(c.size() - 5) / 2];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = expression(c.get(4 + 2 * i));
+                }
+                return new StatementNodes.Output(out, first.token, arguments);
+            }
+            default:
+                throw new EvaluationException("Cannot execute " + node.name, node.firstToken());
+        }
+    }
+
+    private ExecNode.Statement declareVariables(ParseTreeNode declaration) throws EvaluationException {
+        List<ParseTreeNode> c = declaration.children;
+        CoreType type = CoreType.of(c.get(0));
+        List<ExecNode.Statement> writes = new ArrayList<>();
+        for (int i = 1; i < c.size(); i++) {
+            ParseTreeNode identifier = c.get(i);
+            if (!identifier.name.equals("Identifier")) {
+                continue;
+            }
+            ExecNode.Expression value;
+            if (c.get(i + 1).name.equals("ASSIGN")) {
+                value = expression(c.get(i + 2), type);
+                i += 2;
+            } else {
+                value = new ExpressionNodes.Literal(Evaluator.box(type, 0));
+            }
+            writes.add(new StatementNodes.ExpressionStatement(write(identifier, value)));
+        }
+        return writes.size() == 1 ? writes.get(0) : new StatementNodes.Block(writes.toArray(new ExecNode.Statement[0]));
+    }
+
+    private ExecNode.Statement declareArray(ParseTreeNode declaration) throws EvaluationException {
+        List<ParseTreeNode> c = declaration.children;
+        CoreType type = CoreType.of(c.get(0));
+        ParseTreeNode identifier = c.get(1);
+        List<ParseTreeNode> elements = new ArrayList<>();
+        for (ParseTreeNode child : c) {
+            if (child.name.equals("Argument_List")) {
+                for (ParseTreeNode element : child.children) {
+                    if (element.name.equals("Exp")) {
+                        elements.add(element);
+                    }
+                }
+            }
+        }
+        Object values = CoreArrays.initializer(elements, type, resolver.constants);
+        List<ExecNode.Expression> initializers = new ArrayList<>();
+        if (values == null) {
+            for (ParseTreeNode element : elements) {
+                initializers.add(expression(element, type));
+            }
+        }
+        return new StatementNodes.DeclareArray(identifier.global ? globals : null, identifier.slot, type,
+                identifier.token, lengthOf(identifier), arrays, values, initializers.toArray(new ExecNode.Expression[0]));
+    }
+
+    // An element of the array identifier names at the Const index, or the error of an index
+    // outside its declared length; value is written to the element unless null
+    private ExecNode.Expression element(ParseTreeNode identifier, ParseTreeNode index, ExecNode.Expression value) {
+        long i = Evaluator.toInt(constants[index.slot]);
+        long length = lengthOf(identifier);
+        if (i < 0 || i >= length) {
+            return new ExpressionNodes.OutOfBounds(identifier.token, i, length, value);
+        }
+        ExecNode.Frame frame = identifier.global ? globals : null;
+        boolean offHeap = CoreArrays.offHeap(length);
+        if (value == null) {
+            return new ExpressionNodes.ReadElement(frame, identifier.slot, typeOf(identifier), identifier.token, (int) i, offHeap);
+        }
+        return new ExpressionNodes.WriteElement(frame, identifier.slot, typeOf(identifier), identifier.token, (int) i, offHeap,
+                value);
+    }
+
+    private ExecNode.Expression expression(ParseTreeNode node) throws EvaluationException {
+        List<ParseTreeNode> c = node.children;
+        switch (node.name) {
+            case "Factor":
+                return factor(node);
+            case "Const":
+                return new ExpressionNodes.Literal(constants[node.slot]);
+            case "Additive":
+            case "Multiplicative":
+            case "Exponent": {
+                ExecNode.Expression value = expression(c.get(0));
+                CoreType type = c.get(0).type;
+                for (int i = 1; i < c.size(); i += 2) {
+                    CoreType operands = operandType(type, c.get(i + 1).type);
+                    ExecNode.Expression left = convert(value, type, operands);
+                    ExecNode.Expression right = expression(c.get(i + 1), operands);
+                    value = operands == CoreType.FLOAT
+                            ? new ExpressionNodes.FloatArithmetic(c.get(i), left, right)
+                            : new ExpressionNodes.IntArithmetic(c.get(i), left, right);
+                    type = operands;
+                }
+                return value;
+            }
+            case "Relational":
+            case "Equality": {
+                ExecNode.Expression value = expression(c.get(0));
+                CoreType type = c.get(0).type;
+                for (int i = 1; i < c.size(); i += 2) {
+                    CoreType operands = operandType(type, c.get(i + 1).type);
+                    ExecNode.Expression left = convert(value, type, operands);
+                    ExecNode.Expression right = expression(c.get(i + 1), operands);
+                    value = operands == CoreType.FLOAT
+                            ? new ExpressionNodes.FloatComparison(c.get(i).token.type, left, right)
+                            : new ExpressionNodes.IntComparison(c.get(i).token.type, left, right);
+                    type = CoreType.BOOL;
+                }
+                return value;
+            }
+            case "Logical_Or":
+            case "Logical_And": {
+                ExecNode.Expression value = expression(c.get(0));
+                for (int i = 2; i < c.size(); i += 2) {
+                    value = new ExpressionNodes.Logical(node.name.equals("Logical_And"), value, expression(c.get(i)));
+                }
+                return value;
+            }
+            case "Unary_Exp":
+                if (c.get(0).token.type == Token.TokenType.NOT) {
+                    return new ExpressionNodes.Unary(Token.TokenType.NOT, expression(c.get(1)));
+                }
+                return new ExpressionNodes.Unary(c.get(0).token.type, expression(c.get(1), node.type));
+            case "Exp":
+                if (c.size() == 1) {
+                    return expression(c.get(0));
+                }
+                if (c.get(1).name.equals("LEFT_BRACKET")) {
+                    return element(c.get(0), c.get(2), expression(c.get(4), c.get(0).type));
+                }
+                return write(c.get(0), expression(c.get(2), c.get(0).type));
+            default:
+                throw new EvaluationException("Cannot evaluate " + node.name, node.firstToken());
+        }
+    }
+
+    private ExecNode.Expression factor(ParseTreeNode factor) throws EvaluationException {
+        List<ParseTreeNode> c = factor.children;
+        ParseTreeNode first = c.get(0);
+        switch (first.name) {
+            case "Const":
+                return new ExpressionNodes.Literal(constants[first.slot]);
+            case "Identifier":
+                if (c.size() == 1) {
+                    return read(first);
+                }
+                if (c.get(1).name.equals("LEFT_PARENTHESIS")) {
+                    CoreType[] parameterTypes = resolver.functions.get(first.slot).parameterTypes;
+                    List<ExecNode.Expression> arguments = new ArrayList<>();
+                    if (c.size() > 2) {
+                        for (ParseTreeNode argument : c.get(2).children) {
+                            if (argument.name.equals("Exp")) {
+                                arguments.add(expression(argument, parameterTypes[arguments.size()]));
+                            }
+                        }
+                    }
+                    return new ExpressionNodes.Call(targets[first.slot], arguments.toArray(new ExecNode.Expression[0]));
+                }
+                return element(first, c.get(1), null);
+            default:
+                return expression(first);
+        }
+    }
+
+    private ExpressionNodes.Read read(ParseTreeNode identifier) {
+        return new ExpressionNodes.Read(identifier.global ? globals : null, identifier.slot, typeOf(identifier),
+                identifier.token);
+    }
+
+    // value already of the identifier's type
+    private ExecNode.Expression write(ParseTreeNode identifier, ExecNode.Expression value) {
+        ExecNode.Frame frame = identifier.global ? globals : null;
+        CoreType type = typeOf(identifier);
+        return switch (type) {
+            case INT -> new ExpressionNodes.IntWrite(frame, identifier.slot, type, identifier.token, value);
+            case FLOAT -> new ExpressionNodes.FloatWrite(frame, identifier.slot, type, identifier.token, value);
+            default -> new ExpressionNodes.BitsWrite(frame, identifier.slot, type, identifier.token, value);
+        };
+    }
+
+    // The value of an expression as the given type
+    private ExecNode.Expression expression(ParseTreeNode node, CoreType type) throws EvaluationException {
+        return convert(expression(node), node.type, type);
+    }
+
+    private static ExecNode.Expression convert(ExecNode.Expression value, CoreType from, CoreType to) {
+        if (from == to) {
+            return value;
+        }
+        if (value instanceof ExpressionNodes.Literal literal) {
+            return new ExpressionNodes.Literal(Evaluator.convert(literal.value, to));
+        }
+        return new ExpressionNodes.Convert(from, to, value);
+    }
+
+    // Operands of an operator are both converted to float if either is a float, and to int
+    // otherwise, as in Evaluator.arithmetic and compare
+    private static CoreType operandType(CoreType left, CoreType right) {
+        return left == CoreType.FLOAT || right == CoreType.FLOAT ? CoreType.FLOAT : CoreType.INT;
+    }
+
+    private CoreType typeOf(ParseTreeNode identifier) {
+        return identifier.global ? resolver.globals.types[identifier.slot] : function.slots.types[identifier.slot];
+    }
+
+    private long lengthOf(ParseTreeNode identifier) {
+        return identifier.global ? resolver.globals.lengths[identifier.slot] : function.slots.lengths[identifier.slot];
+    }
+}
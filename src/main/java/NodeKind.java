@@ -0,0 +1,81 @@
+import java.util.HashMap;
+import java.util.Map;
+
+// The kinds of ParseTreeNode, by the name Parser gives them. TOKEN is a node for a matched
+// token, named after its type.
+public enum NodeKind {
+    PROGRAM("Program"),
+    DECLARATION("Declaration"),
+    VARIABLE_DECLARATION("Variable_Declaration"),
+    ARRAY_DECLARATION("Array_Declaration"),
+    FUNCTION_DECLARATION("Function_Declaration"),
+    PARAMETER_LIST("Parameter_List"),
+    DATA_TYPE("Data_Type"),
+    TYPE_INT("int"),
+    TYPE_FLOAT("float"),
+    TYPE_CHAR("char"),
+    TYPE_BOOL("bool"),
+    ARGUMENT_LIST("Argument_List"),
+    BLOCK("Block"),
+    BLOCK_ITEM_LIST("Block_Item_List"),
+    BLOCK_ITEM("Block_Item"),
+    STATEMENT("Statement"),
+    FOR_STATEMENT("For_Statement"),
+    WHILE_STATEMENT("While_Statement"),
+    INPUT_STATEMENT("Input_Statement"),
+    OUTPUT_STATEMENT("Output_Statement"),
+    IF_STATEMENT("If_Statement"),
+    ELSE_CLAUSE("Else_Clause"),
+    RETURN_STATEMENT("Return_Statement"),
+    EXPRESSION_STATEMENT("Expression_Statement"),
+    EXP("Exp"),
+    LOGICAL_OR("Logical_Or"),
+    LOGICAL_AND("Logical_And"),
+    EQUALITY("Equality"),
+    RELATIONAL("Relational"),
+    ADDITIVE("Additive"),
+    MULTIPLICATIVE("Multiplicative"),
+    EXPONENT("Exponent"),
+    UNARY_EXP("Unary_Exp"),
+    FACTOR("Factor"),
+    CONST("Const"),
+    IDENTIFIER("Identifier"),
+    STRING("String"),
+    INT("Int"),
+    FLOAT("Float"),
+    CHAR("Char"),
+    BOOL("Bool"),
+    TOKEN(null);
+
+    private static final Map<String, NodeKind> BY_NAME = new HashMap<>();
+
+    static {
+        for (NodeKind kind : values()) {
+            if (kind.label != null) {
+                BY_NAME.put(kind.label, kind);
+            }
+        }
+    }
+
+    private final String label;
+
+    NodeKind(String label) {
+        this.label = label;
+    }
+
+    // ParseTreeNode.name of this kind; null for TOKEN
+    public String label() {
+        return label;
+    }
+
+    public static NodeKind of(ParseTreeNode node) {
+        if (node.token != null && node.name.equals(node.token.type.toString())) {
+            return TOKEN;
+        }
+        NodeKind kind = BY_NAME.get(node.name);
+        if (kind == null) {
+            throw new IllegalArgumentException("Unknown parse tree node " + node.name);
+        }
+        return kind;
+    }
+}
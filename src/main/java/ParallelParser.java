@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Parses top-level declarations concurrently. The type column is split into declaration
+// ranges: each starts at a type keyword followed by an identifier and ends at the first ';'
+// outside braces, or at a '}' that closes them unless a ';' follows. Every range is parsed
+// by its own speculative Parser and the results are put under one Program node in order.
+// Anything irregular, such as tokens between declarations, a parse error or a range that
+// was not consumed exactly, falls back to the sequential parser, so output and errors are
+// always those of Parser.parse.
+public class ParallelParser {
+
+    // Declarations parsed by one task at least, so that small ones are not scheduled one by one
+    private static final int MIN_TASK_TOKENS = 4096;
+
+    private ParallelParser() {
+    }
+
+    public static ParseTreeNode parse(TokenBuffer tokens, ForkJoinPool pool) throws Parser.ParserException {
+        return parse(tokens, pool, false, false);
+    }
+
+    // quiet: nothing is printed, as with a quiet Parser
+    public static ParseTreeNode parse(TokenBuffer tokens, ForkJoinPool pool, boolean flatChains, boolean quiet)
+            throws Parser.ParserException {
+        List<int[]> ranges = split(tokens, 0, tokens.size() - 1);
+        if (ranges == null || ranges.size() < 2) {
+            return sequential(tokens, flatChains, quiet);
+        }
+        tokens.share();
+
+        ParseTreeNode[] declarations = new ParseTreeNode[ranges.size()];
+        int perTask = Math.max(MIN_TASK_TOKENS, tokens.size() / (pool.getParallelism() * 4));
+        List<Batch> batches = new ArrayList<>();
+        int first = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            if (i == ranges.size() - 1 || range[1] - ranges.get(first)[0] >= perTask) {
+                batches.add(new Batch(tokens, ranges.subList(first, i + 1), declarations, first, flatChains));
+                first = i + 1;
+            }
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(batches)));
+
+        for (Batch batch : batches) {
+            if (batch.failed) {
+                return sequential(tokens, flatChains, quiet);
+            }
+        }
+        ParseTreeNode program = new ParseTreeNode("Program");
+        for (ParseTreeNode declaration : declarations) {
+            program.addChild(declaration);
+        }
+        if (!quiet) {
+            System.out.println("Parsing successful!");
+        }
+        return program;
+    }
+
+    private static ParseTreeNode sequential(TokenBuffer tokens, boolean flatChains, boolean quiet)
+            throws Parser.ParserException {
+        Parser parser = new Parser(TokenStream.of(tokens), quiet);
+        parser.setFlatChains(flatChains);
+        return parser.parse();
+    }
+
+    // [start, end) of every top-level declaration in tokens [from, to), where to is the EOF
+    // token or the start of a declaration; null if the tokens do not split cleanly
+    static List<int[]> split(TokenBuffer tokens, int from, int to) {
+        List<int[]> ranges = new ArrayList<>();
+        int i = from;
+        while (i < to) {
+            if (i + 1 >= to || !isDataType(tokens.type(i)) || tokens.type(i + 1) != Token.TokenType.IDENTIFIER) {
+                return null;
+            }
+            int start = i;
+            int depth = 0;
+            while (true) {
+                i++;
+                if (i >= to) {
+                    return null;
+                }
+                Token.TokenType type = tokens.type(i);
+                if (type == Token.TokenType.LEFT_BRACE) {
+                    depth++;
+                } else if (type == Token.TokenType.RIGHT_BRACE) {
+                    if (--depth < 0) {
+                        return null;
+                    }
+                    if (depth == 0 && (i + 1 >= to || tokens.type(i + 1) != Token.TokenType.SEMICOLON)) {
+                        break;
+                    }
+                } else if (type == Token.TokenType.SEMICOLON && depth == 0) {
+                    break;
+                }
+            }
+            i++;
+            ranges.add(new int[]{start, i});
+        }
+        return ranges;
+    }
+
+    private static boolean isDataType(Token.TokenType type) {
+        return type == Token.TokenType.INT_KW || type == Token.TokenType.FLOAT_KW
+                || type == Token.TokenType.CHAR_KW || type == Token.TokenType.BOOL_KW;
+    }
+
+    private static final class Batch extends RecursiveAction {
+        final TokenBuffer tokens;
+        final List<int[]> ranges;
+        final ParseTreeNode[] declarations;
+        final int first;
+        final boolean flatChains;
+        boolean failed;
+
+        Batch(TokenBuffer tokens, List<int[]> ranges, ParseTreeNode[] declarations, int first, boolean flatChains) {
+            this.tokens = tokens;
+            this.ranges = ranges;
+            this.declarations = declarations;
+            this.first = first;
+            this.flatChains = flatChains;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < ranges.size(); i++) {
+                TokenStream.Range range = TokenStream.range(tokens, ranges.get(i)[0], ranges.get(i)[1]);
+                Parser parser = new Parser(range, true);
+                parser.setFlatChains(flatChains);
+                ParseTreeNode declaration = parser.parseSingleDeclaration();
+                if (declaration == null || !range.consumedExactly()) {
+                    failed = true;
+                    return;
+                }
+                declarations[first + i] = declaration;
+            }
+        }
+    }
+}
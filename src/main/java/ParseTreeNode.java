@@ -5,6 +5,13 @@ public class ParseTreeNode {
     String name;
     Token token;
     List<ParseTreeNode> children;
+    // Filled in by Resolver: frame/global slot for identifiers, function index for calls,
+    // constant pool index for Const nodes. -1 while unresolved.
+    int slot = -1;
+    boolean global;
+    // Filled in by Resolver: static type of the value of an expression node, and of the
+    // variable or return value an Identifier names. null for other nodes.
+    CoreType type;
 
     public ParseTreeNode(String name) {
         this.name = name;
@@ -21,4 +28,18 @@ public class ParseTreeNode {
     public void addChild(ParseTreeNode child) {
         this.children.add(child);
     }
-}
\ No newline at end of file
+
+    // First token in source order under this node, used to position diagnostics.
+    public Token firstToken() {
+        if (token != null) {
+            return token;
+        }
+        for (ParseTreeNode child : children) {
+            Token first = child.firstToken();
+            if (first != null) {
+                return first;
+            }
+        }
+        return null;
+    }
+}
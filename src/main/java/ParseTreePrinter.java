@@ -1,26 +1,58 @@
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
+// Writes a parse tree as indented EBNF text, from ParseTreeNode objects or from a TreeFile.
+//
+//   java ParseTreePrinter <tree file> [output.ebnf]
 public class ParseTreePrinter {
 
-    private final PrintWriter writer;
+    // Text is collected here and handed to the writer in blocks of this size: a PrintWriter
+    // takes two locks for every print, most of the time of a batch on virtual threads
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer writer;
+    private final StringBuilder text = new StringBuilder(2 * BLOCK_SIZE);
 
     public ParseTreePrinter(String outputFilename) throws IOException {
-        this.writer = new PrintWriter(Files.newBufferedWriter(Paths.get(outputFilename)));
+        this.writer = new OutputStreamWriter(Files.newOutputStream(Paths.get(outputFilename)), StandardCharsets.UTF_8);
     }
 
-    public void print(ParseTreeNode node) {
-        printNode(node, 0);
-        writer.close();
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ParseTreePrinter <tree file> [output.ebnf]");
+            return;
+        }
+        new ParseTreePrinter(args.length > 1 ? args[1] : "parse_tree_output.ebnf").print(TreeFile.open(Paths.get(args[0])));
     }
 
+    public void print(ParseTreeNode node) throws IOException {
+        try (writer) {
+            printNode(node, 0);
+            flush();
+        }
+    }
 
-    private void printNode(ParseTreeNode node, int indentLevel) {
+    // Same text as print(tree.toTree()), read from the mapped file as it is written
+    public void print(TreeFile tree) throws IOException {
+        try (writer) {
+            printNode(tree, 0, 0);
+            flush();
+        }
+    }
+
+
+    private void printNode(ParseTreeNode node, int indentLevel) throws IOException {
         if (node == null) {
             return;
         }
+        if (text.length() >= BLOCK_SIZE) {
+            flush();
+        }
 
         printIndent(indentLevel);
 
@@ -28,40 +60,82 @@ public class ParseTreePrinter {
             // Terminal node
             //string must not be in ""
             if (node.token.type == Token.TokenType.STRING) {
-                writer.print(node.token.type.name() + ": " + node.token.lexeme);
+                text.append(node.token.type.name()).append(": ").append(node.token.lexeme);
             }
             //keywords must not have ""
             else if (node.token.type.isKeyword()) {
-                writer.print(node.token.lexeme);
+                text.append(node.token.lexeme);
             }
             // nodes like int, char, and bool in data type
             else if(node.name.equals("int") || node.name.equals("bool") || node.name.equals("char") || node.name.equals("float") ){
-                writer.print(node.token.lexeme);
+                text.append(node.token.lexeme);
             }
             // other tokens print type: "lexeme"
             else {
-                writer.print(node.token.type.name() + ": \"" + node.token.lexeme + "\"");
+                text.append(node.token.type.name()).append(": \"").append(node.token.lexeme).append('"');
             }
         } else {
             // Non-terminal node
-            writer.print(node.name + "(");
+            text.append(node.name).append("(");
             if (!node.children.isEmpty()) {
-                writer.println();
+                text.append(LINE_SEPARATOR);
                 for (int i = 0; i < node.children.size(); i++) {
                     printNode(node.children.get(i), indentLevel + 1);
                     if (i < node.children.size() - 1) {
-                        writer.println(",");
+                        text.append(',').append(LINE_SEPARATOR);
                     }
                 }
-                writer.println();
+                text.append(LINE_SEPARATOR);
                 printIndent(indentLevel);
             }
-            writer.print(")");
+            text.append(")");
         }
     }
+
+    private void printNode(TreeFile tree, int node, int indentLevel) throws IOException {
+        if (text.length() >= BLOCK_SIZE) {
+            flush();
+        }
+        printIndent(indentLevel);
+
+        if (tree.hasToken(node)) {
+            Token.TokenType type = tree.type(node);
+            NodeKind kind = tree.kind(node);
+            if (type == Token.TokenType.STRING) {
+                text.append(type.name()).append(": ").append(tree.lexeme(node));
+            } else if (type.isKeyword() || kind == NodeKind.TYPE_INT || kind == NodeKind.TYPE_BOOL
+                    || kind == NodeKind.TYPE_CHAR || kind == NodeKind.TYPE_FLOAT) {
+                text.append(tree.lexeme(node));
+            } else {
+                text.append(type.name()).append(": \"").append(tree.lexeme(node)).append('"');
+            }
+        } else {
+            text.append(tree.name(node)).append("(");
+            int child = tree.firstChild(node);
+            if (child != TreeFile.NONE) {
+                text.append(LINE_SEPARATOR);
+                while (child != TreeFile.NONE) {
+                    printNode(tree, child, indentLevel + 1);
+                    child = tree.nextSibling(child);
+                    if (child != TreeFile.NONE) {
+                        text.append(',').append(LINE_SEPARATOR);
+                    }
+                }
+                text.append(LINE_SEPARATOR);
+                printIndent(indentLevel);
+            }
+            text.append(")");
+        }
+    }
+
+    private void flush() throws IOException {
+        writer.append(text);
+        text.setLength(0);
+    }
+
     private void printIndent(int indentLevel) {
         for (int i = 0; i < indentLevel; i++) {
-            writer.print("  ");
+            text.append("  ");
         }
     }
 }
\ No newline at end of file
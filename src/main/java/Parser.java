@@ -1,50 +1,105 @@
 import java.util.List;
 
+// Recursive descent parser over a TokenStream. Decisions are made on token types alone;
+// Token objects are only materialized for the tokens that end up in the parse tree.
 public class Parser {
 
-    private final List<Token> tokens;
-    private int currentTokenIndex;
+    // Binary operators by level, loosest first; 0 for other tokens
+    private static final byte[] LEVELS = new byte[Token.TokenType.values().length];
+    private static final String[] LEVEL_NAMES = {
+            null, "Logical_Or", "Logical_And", "Equality", "Relational", "Additive", "Multiplicative", "Exponent"
+    };
+    private static final int EXPONENT_LEVEL = 7;
+
+    static {
+        Token.TokenType[][] operators = {
+                {},
+                {Token.TokenType.OR},
+                {Token.TokenType.AND},
+                {Token.TokenType.EQUAL, Token.TokenType.NOT_EQUAL},
+                {Token.TokenType.LESS, Token.TokenType.GREATER, Token.TokenType.LESS_EQUAL, Token.TokenType.GREATER_EQUAL},
+                {Token.TokenType.PLUS, Token.TokenType.MINUS},
+                {Token.TokenType.MULTIPLY, Token.TokenType.DIVIDE, Token.TokenType.MODULO},
+                {Token.TokenType.EXPONENT}
+        };
+        for (int level = 1; level < operators.length; level++) {
+            for (Token.TokenType type : operators[level]) {
+                LEVELS[type.ordinal()] = (byte) level;
+            }
+        }
+    }
+
+    private final TokenStream tokens;
+    private final boolean quiet; // nothing printed, errors are only thrown
+    private boolean flatChains;
     private boolean panicMode = false;
 
     public Parser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens));
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this(TokenStream.of(tokens));
+    }
+
+    public Parser(TokenStream tokens) {
+        this(tokens, false);
+    }
+
+    Parser(TokenStream tokens, boolean quiet) {
         this.tokens = tokens;
-        this.currentTokenIndex = 0;
+        this.quiet = quiet;
+    }
+
+    // Operator chains such as a + b - c as one node [a, +, b, -, c] instead of nesting
+    // [[a, +, b], -, c]; the engines evaluate both left to right
+    public void setFlatChains(boolean flatChains) {
+        this.flatChains = flatChains;
     }
 
     private Token currentToken() {
-        if (currentTokenIndex < tokens.size()) {
-            return tokens.get(currentTokenIndex);
-        }
-        return new Token(Token.TokenType.TOKEN_EOF, "EOF", -1, -1);
+        return tokens.token(0);
     }
 
     private Token peekToken(int offset) {
-        int index = currentTokenIndex + offset;
-        if (index < tokens.size()) {
-            return tokens.get(index);
-        }
-        return new Token(Token.TokenType.TOKEN_EOF, "EOF", -1, -1);
+        return tokens.token(offset);
+    }
+
+    Token.TokenType currentType() {
+        return tokens.type(0);
+    }
+
+    private Token.TokenType peekType(int offset) {
+        return tokens.type(offset);
     }
 
     private void consumeToken() {
-        if (currentTokenIndex < tokens.size()) {
-            currentTokenIndex++;
-        }
+        tokens.advance();
     }
 
-    private ParseTreeNode matchAndCreate(Token.TokenType expectedType) throws ParserException {
-        if (currentToken().type == expectedType) {
+    ParseTreeNode matchAndCreate(Token.TokenType expectedType) throws ParserException {
+        if (currentType() == expectedType) {
             ParseTreeNode node = new ParseTreeNode(expectedType.toString(), currentToken());
             consumeToken();
             return node;
         } else {
-            reportError("Expected token " + expectedType + " but found " + currentToken().type, expectedType);
+            reportError("Expected token " + expectedType + " but found " + currentType(), expectedType);
             synchronize(); // This will throw an exception due to panic mode, need to catch at top level parse().
             return null; // synchronize() method will not return
         }
     }
 
-    private ParseTreeNode createNode(String name) {
+    // matchAndCreate for tokens that are not kept in the tree
+    private void match(Token.TokenType expectedType) throws ParserException {
+        if (currentType() == expectedType) {
+            consumeToken();
+        } else {
+            reportError("Expected token " + expectedType + " but found " + currentType(), expectedType);
+            synchronize();
+        }
+    }
+
+    ParseTreeNode createNode(String name) {
         return new ParseTreeNode(name);
     }
     private ParseTreeNode createNode(String name, Token token) {
@@ -56,9 +111,13 @@ public class Parser {
         try {
             root = parseProgram();
             if (!panicMode) {
-                System.out.println("Parsing successful!");
+                if (!quiet) {
+                    System.out.println("Parsing successful!");
+                }
             } else {
-                System.err.println("Parsing failed due to errors.");
+                if (!quiet) {
+                    System.err.println("Parsing failed due to errors.");
+                }
                 throw new ParserException("Parsing failed", currentToken().lineNumber, currentToken().columnNumber);
             }
         } catch (ParserException e){
@@ -72,7 +131,7 @@ public class Parser {
 
     private ParseTreeNode parseProgram() throws ParserException {
         var programNode = createNode("Program");
-        while (currentToken().type != Token.TokenType.TOKEN_EOF) {
+        while (currentType() != Token.TokenType.TOKEN_EOF) {
             var declarationNode = parseDeclaration();
             if (declarationNode != null) {
                 programNode.addChild(declarationNode);
@@ -83,16 +142,26 @@ public class Parser {
         return programNode;
     }
 
+    // One top-level declaration covering all of the tokens, or null if they are anything else
+    ParseTreeNode parseSingleDeclaration() {
+        try {
+            ParseTreeNode declaration = parseDeclaration();
+            return panicMode ? null : declaration;
+        } catch (ParserException e) {
+            return null;
+        }
+    }
+
     private ParseTreeNode parseDeclaration() throws ParserException {
         var declarationNode = createNode("Declaration");
 
-        if (currentToken().type.isKeyword() && (
-                currentToken().type == Token.TokenType.INT_KW ||
-                        currentToken().type == Token.TokenType.FLOAT_KW ||
-                        currentToken().type == Token.TokenType.CHAR_KW ||
-                        currentToken().type == Token.TokenType.BOOL_KW)) {
-            if (peekToken(1).type == Token.TokenType.IDENTIFIER) {
-                switch (peekToken(2).type) {
+        if (currentType().isKeyword() && (
+                currentType() == Token.TokenType.INT_KW ||
+                        currentType() == Token.TokenType.FLOAT_KW ||
+                        currentType() == Token.TokenType.CHAR_KW ||
+                        currentType() == Token.TokenType.BOOL_KW)) {
+            if (peekType(1) == Token.TokenType.IDENTIFIER) {
+                switch (peekType(2)) {
                     case LEFT_PARENTHESIS:
                         declarationNode.addChild(parseFunctionDeclaration());
                         break;
@@ -117,18 +186,18 @@ public class Parser {
         var varDeclNode = createNode("Variable_Declaration");
         varDeclNode.addChild(parseDataType());
         varDeclNode.addChild(createNode("Identifier", currentToken()));
-        matchAndCreate(Token.TokenType.IDENTIFIER);
+        match(Token.TokenType.IDENTIFIER);
 
-        if (currentToken().type == Token.TokenType.ASSIGN) {
+        if (currentType() == Token.TokenType.ASSIGN) {
             varDeclNode.addChild(matchAndCreate(Token.TokenType.ASSIGN));
             varDeclNode.addChild(parseExp());
         }
 
-        while (currentToken().type == Token.TokenType.COMMA) {
+        while (currentType() == Token.TokenType.COMMA) {
             varDeclNode.addChild(matchAndCreate(Token.TokenType.COMMA));
             varDeclNode.addChild(createNode("Identifier", currentToken()));
-            matchAndCreate(Token.TokenType.IDENTIFIER);
-            if (currentToken().type == Token.TokenType.ASSIGN) {
+            match(Token.TokenType.IDENTIFIER);
+            if (currentType() == Token.TokenType.ASSIGN) {
                 varDeclNode.addChild(matchAndCreate(Token.TokenType.ASSIGN));
                 varDeclNode.addChild(parseExp());
             }
@@ -142,25 +211,25 @@ public class Parser {
         arrayDeclNode.addChild(parseDataType());
         arrayDeclNode.addChild(createNode("Identifier", currentToken()));
 
-        matchAndCreate(Token.TokenType.IDENTIFIER);
+        match(Token.TokenType.IDENTIFIER);
         arrayDeclNode.addChild(matchAndCreate(Token.TokenType.LEFT_BRACKET));
 
-        if (currentToken().type == Token.TokenType.INTEGER_LITERAL ||
-                currentToken().type == Token.TokenType.FLOAT_LITERAL ||
-                currentToken().type == Token.TokenType.CHARACTER_LITERAL ||
-                currentToken().type == Token.TokenType.TRUE_KW ||
-                currentToken().type == Token.TokenType.FALSE_KW) {
+        if (currentType() == Token.TokenType.INTEGER_LITERAL ||
+                currentType() == Token.TokenType.FLOAT_LITERAL ||
+                currentType() == Token.TokenType.CHARACTER_LITERAL ||
+                currentType() == Token.TokenType.TRUE_KW ||
+                currentType() == Token.TokenType.FALSE_KW) {
             arrayDeclNode.addChild(parseConst());
         }
 
         arrayDeclNode.addChild(matchAndCreate(Token.TokenType.RIGHT_BRACKET));
 
 
-        if (currentToken().type == Token.TokenType.ASSIGN) {
+        if (currentType() == Token.TokenType.ASSIGN) {
             arrayDeclNode.addChild(matchAndCreate(Token.TokenType.ASSIGN));
             arrayDeclNode.addChild(matchAndCreate(Token.TokenType.LEFT_BRACE));
 
-            if (currentToken().type != Token.TokenType.RIGHT_BRACE) {
+            if (currentType() != Token.TokenType.RIGHT_BRACE) {
                 arrayDeclNode.addChild(parseArgumentList());
             }
             arrayDeclNode.addChild(matchAndCreate(Token.TokenType.RIGHT_BRACE));
@@ -177,12 +246,12 @@ public class Parser {
         funcDeclNode.addChild(parseDataType());
         funcDeclNode.addChild(createNode("Identifier", currentToken()));
 
-        matchAndCreate(Token.TokenType.IDENTIFIER);
+        match(Token.TokenType.IDENTIFIER);
         funcDeclNode.addChild(matchAndCreate(Token.TokenType.LEFT_PARENTHESIS));
         funcDeclNode.addChild(parseParameterList());
         funcDeclNode.addChild(matchAndCreate(Token.TokenType.RIGHT_PARENTHESIS));
 
-        if (currentToken().type == Token.TokenType.LEFT_BRACE) {
+        if (currentType() == Token.TokenType.LEFT_BRACE) {
             funcDeclNode.addChild(parseBlock());
         } else {
             funcDeclNode.addChild(matchAndCreate(Token.TokenType.SEMICOLON));
@@ -193,22 +262,22 @@ public class Parser {
     private ParseTreeNode parseParameterList() throws ParserException {
         var paramListNode = createNode("Parameter_List");
 
-        if (currentToken().type == Token.TokenType.VOID_KW) {
+        if (currentType() == Token.TokenType.VOID_KW) {
             consumeToken(); // consume void
-        } else if (currentToken().type == Token.TokenType.INT_KW ||
-                currentToken().type == Token.TokenType.FLOAT_KW ||
-                currentToken().type == Token.TokenType.CHAR_KW ||
-                currentToken().type == Token.TokenType.BOOL_KW) {
+        } else if (currentType() == Token.TokenType.INT_KW ||
+                currentType() == Token.TokenType.FLOAT_KW ||
+                currentType() == Token.TokenType.CHAR_KW ||
+                currentType() == Token.TokenType.BOOL_KW) {
 
             paramListNode.addChild(parseDataType());
             paramListNode.addChild(createNode("Identifier", currentToken()));
-            matchAndCreate(Token.TokenType.IDENTIFIER);
+            match(Token.TokenType.IDENTIFIER);
 
-            while (currentToken().type == Token.TokenType.COMMA) {
+            while (currentType() == Token.TokenType.COMMA) {
                 paramListNode.addChild(matchAndCreate(Token.TokenType.COMMA));
                 paramListNode.addChild(parseDataType());
                 paramListNode.addChild(createNode("Identifier", currentToken()));
-                matchAndCreate(Token.TokenType.IDENTIFIER);
+                match(Token.TokenType.IDENTIFIER);
             }
         }
         return paramListNode;
@@ -220,19 +289,19 @@ public class Parser {
         switch (current.type) {
             case INT_KW -> {
                 dataTypeNode.addChild(createNode("int", currentToken()));
-                matchAndCreate(Token.TokenType.INT_KW);
+                match(Token.TokenType.INT_KW);
             }
             case FLOAT_KW -> {
                 dataTypeNode.addChild(createNode("float", currentToken()));
-                matchAndCreate(Token.TokenType.FLOAT_KW);
+                match(Token.TokenType.FLOAT_KW);
             }
             case CHAR_KW -> {
                 dataTypeNode.addChild(createNode("char", currentToken()));
-                matchAndCreate(Token.TokenType.CHAR_KW);
+                match(Token.TokenType.CHAR_KW);
             }
             case BOOL_KW -> {
                 dataTypeNode.addChild(createNode("bool", currentToken()));
-                matchAndCreate(Token.TokenType.BOOL_KW);
+                match(Token.TokenType.BOOL_KW);
             }
             default ->
                     throw new ParserException("Expected a data type", current.lineNumber, current.columnNumber);
@@ -245,7 +314,7 @@ public class Parser {
         var exp = createNode("Exp");
         exp.addChild(parseExp());
         argListNode.addChild(exp);
-        while (currentToken().type == Token.TokenType.COMMA) {
+        while (currentType() == Token.TokenType.COMMA) {
             argListNode.addChild(matchAndCreate(Token.TokenType.COMMA));
             exp = createNode("Exp");
             exp.addChild(parseExp());
@@ -264,7 +333,7 @@ public class Parser {
 
     private ParseTreeNode parseBlockItemList() throws ParserException {
         var blockItemList = createNode("Block_Item_List");
-        while (currentToken().type != Token.TokenType.RIGHT_BRACE && currentToken().type != Token.TokenType.TOKEN_EOF) {
+        while (currentType() != Token.TokenType.RIGHT_BRACE && currentType() != Token.TokenType.TOKEN_EOF) {
             var blockItem = parseBlockItem();
             if (blockItem != null) {
                 blockItemList.addChild(blockItem);
@@ -278,12 +347,12 @@ public class Parser {
     private ParseTreeNode parseBlockItem() throws ParserException {
         var blockItemNode = createNode("Block_Item");
 
-        if (currentToken().type == Token.TokenType.INT_KW ||
-                currentToken().type == Token.TokenType.FLOAT_KW ||
-                currentToken().type == Token.TokenType.CHAR_KW ||
-                currentToken().type == Token.TokenType.BOOL_KW) {
+        if (currentType() == Token.TokenType.INT_KW ||
+                currentType() == Token.TokenType.FLOAT_KW ||
+                currentType() == Token.TokenType.CHAR_KW ||
+                currentType() == Token.TokenType.BOOL_KW) {
 
-            if (peekToken(2).type == Token.TokenType.LEFT_BRACKET) {
+            if (peekType(2) == Token.TokenType.LEFT_BRACKET) {
                 blockItemNode.addChild(parseArrayDeclaration());
             } else {
                 blockItemNode.addChild(parseVariableDeclaration());
@@ -298,7 +367,7 @@ public class Parser {
     private ParseTreeNode parseStatement() throws ParserException {
         var statementNode = createNode("Statement");
 
-        switch (currentToken().type) {
+        switch (currentType()) {
             case RETURN_KW -> statementNode.addChild(parseReturnStatement());
             case IDENTIFIER -> {
                 statementNode.addChild(parseExp());
@@ -324,11 +393,11 @@ public class Parser {
         forNode.addChild(matchAndCreate(Token.TokenType.FOR_KW));
         forNode.addChild(matchAndCreate(Token.TokenType.LEFT_PARENTHESIS));
 
-        if (currentToken().type == Token.TokenType.INT_KW ||
-                currentToken().type == Token.TokenType.FLOAT_KW ||
-                currentToken().type == Token.TokenType.CHAR_KW ||
-                currentToken().type == Token.TokenType.BOOL_KW) {
-            if (peekToken(2).type == Token.TokenType.LEFT_BRACKET) {
+        if (currentType() == Token.TokenType.INT_KW ||
+                currentType() == Token.TokenType.FLOAT_KW ||
+                currentType() == Token.TokenType.CHAR_KW ||
+                currentType() == Token.TokenType.BOOL_KW) {
+            if (peekType(2) == Token.TokenType.LEFT_BRACKET) {
                 forNode.addChild(parseArrayDeclaration());
             } else {
                 forNode.addChild(parseVariableDeclaration());
@@ -362,13 +431,13 @@ public class Parser {
         inputNode.addChild(matchAndCreate(Token.TokenType.SCANF_KW));
         inputNode.addChild(matchAndCreate(Token.TokenType.LEFT_PARENTHESIS));
         inputNode.addChild(createNode("String", currentToken()));
-        matchAndCreate(Token.TokenType.STRING);
+        match(Token.TokenType.STRING);
 
-        while (currentToken().type == Token.TokenType.COMMA) {
+        while (currentType() == Token.TokenType.COMMA) {
             inputNode.addChild(matchAndCreate(Token.TokenType.COMMA));
             inputNode.addChild(matchAndCreate(Token.TokenType.AMPERSAND));
             inputNode.addChild(createNode("Identifier", currentToken()));
-            matchAndCreate(Token.TokenType.IDENTIFIER);
+            match(Token.TokenType.IDENTIFIER);
         }
         inputNode.addChild(matchAndCreate(Token.TokenType.RIGHT_PARENTHESIS));
         inputNode.addChild(matchAndCreate(Token.TokenType.SEMICOLON));
@@ -380,16 +449,16 @@ public class Parser {
         outputNode.addChild(matchAndCreate(Token.TokenType.PRINTF_KW));
         outputNode.addChild(matchAndCreate(Token.TokenType.LEFT_PARENTHESIS));
 
-        if (currentToken().type == Token.TokenType.STRING) {
+        if (currentType() == Token.TokenType.STRING) {
             outputNode.addChild(createNode("String", currentToken()));
-            matchAndCreate(Token.TokenType.STRING);
-            while (currentToken().type == Token.TokenType.COMMA) {
+            match(Token.TokenType.STRING);
+            while (currentType() == Token.TokenType.COMMA) {
                 outputNode.addChild(matchAndCreate(Token.TokenType.COMMA));
                 outputNode.addChild(parseExp());
             }
-        } else if (currentToken().type == Token.TokenType.IDENTIFIER) {
+        } else if (currentType() == Token.TokenType.IDENTIFIER) {
             outputNode.addChild(createNode("Identifier", currentToken()));
-            matchAndCreate(Token.TokenType.IDENTIFIER);
+            match(Token.TokenType.IDENTIFIER);
         } else {
             throw new ParserException("Expected String or Identifier", currentToken().lineNumber, currentToken().columnNumber);
         }
@@ -408,7 +477,7 @@ public class Parser {
         ifNode.addChild(matchAndCreate(Token.TokenType.RIGHT_PARENTHESIS));
         ifNode.addChild(parseBlock());
 
-        while (currentToken().type == Token.TokenType.ELSE_KW) {
+        while (currentType() == Token.TokenType.ELSE_KW) {
             ifNode.addChild(parseElseClause());
         }
         return ifNode;
@@ -417,7 +486,7 @@ public class Parser {
     private ParseTreeNode parseElseClause() throws ParserException {
         var elseNode = createNode("Else_Clause");
         elseNode.addChild(matchAndCreate(Token.TokenType.ELSE_KW));
-        if (currentToken().type == Token.TokenType.IF_KW) {
+        if (currentType() == Token.TokenType.IF_KW) {
             elseNode.addChild(parseIfStatement());
         } else {
             elseNode.addChild(parseBlock());
@@ -443,15 +512,16 @@ public class Parser {
     }
 
     private ParseTreeNode parseExp() throws ParserException {
-        if (currentToken().type == Token.TokenType.IDENTIFIER) {
+        if (currentType() == Token.TokenType.IDENTIFIER) {
             int lookahead = 1;
             // Check for array access
-            if (peekToken(1).type == Token.TokenType.LEFT_BRACKET) {
-                lookahead = 2;
-                while (peekToken(lookahead).type != Token.TokenType.RIGHT_BRACKET && peekToken(lookahead).type != Token.TokenType.TOKEN_EOF) {
+            if (peekType(1) == Token.TokenType.LEFT_BRACKET) {
+                // An index is a single constant, so only a malformed one needs the scan for ']'
+                lookahead = peekType(2) != Token.TokenType.RIGHT_BRACKET && peekType(3) == Token.TokenType.RIGHT_BRACKET ? 3 : 2;
+                while (peekType(lookahead) != Token.TokenType.RIGHT_BRACKET && peekType(lookahead) != Token.TokenType.TOKEN_EOF) {
                     lookahead++;
                 }
-                if (peekToken(lookahead).type == Token.TokenType.RIGHT_BRACKET) {
+                if (peekType(lookahead) == Token.TokenType.RIGHT_BRACKET) {
                     lookahead++;
                 } else {
                     throw new ParserException("Expected ] but got" + peekToken(lookahead).lexeme, currentToken().lineNumber, currentToken().columnNumber);
@@ -459,15 +529,15 @@ public class Parser {
             }
 
 
-            if (peekToken(lookahead).type == Token.TokenType.ASSIGN) {
+            if (peekType(lookahead) == Token.TokenType.ASSIGN) {
                 var expNode = createNode("Exp");
                 expNode.addChild(createNode("Identifier", currentToken()));
-                matchAndCreate(Token.TokenType.IDENTIFIER);
+                match(Token.TokenType.IDENTIFIER);
                 // Handle array access
-                if (currentToken().type == Token.TokenType.LEFT_BRACKET) {
+                if (currentType() == Token.TokenType.LEFT_BRACKET) {
                     expNode.addChild(matchAndCreate(Token.TokenType.LEFT_BRACKET));
                     expNode.addChild(parseConst());
-                    matchAndCreate(Token.TokenType.RIGHT_BRACKET);
+                    match(Token.TokenType.RIGHT_BRACKET);
                 }
 
                 expNode.addChild(matchAndCreate(Token.TokenType.ASSIGN));
@@ -476,160 +546,40 @@ public class Parser {
             }
         }
 
-        return parseLogicalOrExp();
+        return parseBinaryExp(1);
     }
 
-    private ParseTreeNode parseLogicalOrExp() throws ParserException {
-        var left = parseLogicalAndExp();
-        if (currentToken().type == Token.TokenType.OR) {
-            var orNode = createNode("Logical_Or");
-            orNode.addChild(left);
-            while (currentToken().type == Token.TokenType.OR) {
-                orNode.addChild(matchAndCreate(Token.TokenType.OR));
-                orNode.addChild(parseLogicalAndExp());
-
-                if (currentToken().type == Token.TokenType.OR) {
-                    var newOrNode = createNode("Logical_Or");
-                    newOrNode.addChild(orNode);
-                    orNode = newOrNode;
-                }
-            }
-            return orNode;
-        }
-        return left;
-    }
-
-    private ParseTreeNode parseLogicalAndExp() throws ParserException {
-        var left = parseEqualityExp();
-        if (currentToken().type == Token.TokenType.AND) {
-            var andNode = createNode("Logical_And");
-            andNode.addChild(left);
-            while (currentToken().type == Token.TokenType.AND) {
-                andNode.addChild(matchAndCreate(Token.TokenType.AND));
-                andNode.addChild(parseEqualityExp());
-                if (currentToken().type == Token.TokenType.AND) {
-                    var newAndNode = createNode("Logical_And");
-                    newAndNode.addChild(andNode);
-                    andNode = newAndNode;
-                }
-            }
-            return andNode;
-        }
-        return left;
-    }
-
-    private ParseTreeNode parseEqualityExp() throws ParserException {
-        var left = parseRelationalExp();
-        if (currentToken().type == Token.TokenType.EQUAL || currentToken().type == Token.TokenType.NOT_EQUAL) {
-            var equalityNode = createNode("Equality");
-            equalityNode.addChild(left);
-            while (currentToken().type == Token.TokenType.EQUAL || currentToken().type == Token.TokenType.NOT_EQUAL) {
-                equalityNode.addChild(matchAndCreate(currentToken().type));
-                equalityNode.addChild(parseRelationalExp());
-                if (currentToken().type == Token.TokenType.EQUAL || currentToken().type == Token.TokenType.NOT_EQUAL) {
-                    var newEqualityNode = createNode("Equality");
-                    newEqualityNode.addChild(equalityNode);
-                    equalityNode = newEqualityNode;
-                }
-            }
-            return equalityNode;
-        }
-        return left;
-    }
-
-    private ParseTreeNode parseRelationalExp() throws ParserException {
-        var left = parseAdditiveExp();
-        if (currentToken().type == Token.TokenType.LESS || currentToken().type == Token.TokenType.GREATER ||
-                currentToken().type == Token.TokenType.LESS_EQUAL || currentToken().type == Token.TokenType.GREATER_EQUAL) {
-
-            var relationalNode = createNode("Relational");
-            relationalNode.addChild(left);
-            while (currentToken().type == Token.TokenType.LESS || currentToken().type == Token.TokenType.GREATER ||
-                    currentToken().type == Token.TokenType.LESS_EQUAL || currentToken().type == Token.TokenType.GREATER_EQUAL) {
-
-                relationalNode.addChild(matchAndCreate(currentToken().type));
-                relationalNode.addChild(parseAdditiveExp());
-
-                if (currentToken().type == Token.TokenType.LESS || currentToken().type == Token.TokenType.GREATER ||
-                        currentToken().type == Token.TokenType.LESS_EQUAL || currentToken().type == Token.TokenType.GREATER_EQUAL) {
-                    var newRelationalNode = createNode("Relational");
-                    newRelationalNode.addChild(relationalNode);
-                    relationalNode = newRelationalNode;
-                }
-            }
-            return relationalNode;
-        }
-        return left;
-    }
-
-    private ParseTreeNode parseAdditiveExp() throws ParserException {
-        var left = parseMultiplicativeExp();
-
-        if (currentToken().type == Token.TokenType.PLUS || currentToken().type == Token.TokenType.MINUS) {
-            var additiveNode = createNode("Additive");
-            additiveNode.addChild(left);
-
-            while (currentToken().type == Token.TokenType.PLUS || currentToken().type == Token.TokenType.MINUS) {
-                additiveNode.addChild(matchAndCreate(currentToken().type));
-                additiveNode.addChild(parseMultiplicativeExp());
-
-                if (currentToken().type == Token.TokenType.PLUS || currentToken().type == Token.TokenType.MINUS) {
-                    var newAdditiveNode = createNode("Additive");
-                    newAdditiveNode.addChild(additiveNode);
-                    additiveNode = newAdditiveNode;
-                }
-            }
-            return additiveNode;
-        }
-        return left;
-    }
-
-    private ParseTreeNode parseMultiplicativeExp() throws ParserException {
-        var left = parsePowerExp();
-
-        if (currentToken().type == Token.TokenType.MULTIPLY || currentToken().type == Token.TokenType.DIVIDE ||
-                currentToken().type == Token.TokenType.MODULO) {
-
-            var multiplicativeNode = createNode("Multiplicative");
-            multiplicativeNode.addChild(left);
-
-            while (currentToken().type == Token.TokenType.MULTIPLY || currentToken().type == Token.TokenType.DIVIDE ||
-                    currentToken().type == Token.TokenType.MODULO) {
-                multiplicativeNode.addChild(matchAndCreate(currentToken().type));
-                multiplicativeNode.addChild(parsePowerExp());
-
-                if (currentToken().type == Token.TokenType.MULTIPLY || currentToken().type == Token.TokenType.DIVIDE ||
-                        currentToken().type == Token.TokenType.MODULO) {
-                    var newMultiplicativeNode = createNode("Multiplicative");
-                    newMultiplicativeNode.addChild(multiplicativeNode);
-                    multiplicativeNode = newMultiplicativeNode;
-                }
-            }
-            return multiplicativeNode;
-        }
-
-        return left;
-    }
-
-    private ParseTreeNode parsePowerExp() throws ParserException {
+    // Precedence climbing over LEVELS: an operand, then every operator of at least minLevel
+    // with a right operand made of the operators that bind tighter. Gives the tree of one
+    // method per grammar level: each operator nests its left side in a new node, or with
+    // flat chains a run of operators of one level shares a node. Exponent nests to the right.
+    // LevelParser, in the benchmarks module, overrides it with those methods.
+    ParseTreeNode parseBinaryExp(int minLevel) throws ParserException {
         var left = parseUnaryExp();
-
-        if (currentToken().type == Token.TokenType.EXPONENT) {
-            var powerNode = createNode("Exponent");
-            powerNode.addChild(left);
-            powerNode.addChild(matchAndCreate(Token.TokenType.EXPONENT));
-            powerNode.addChild(parsePowerExp());
-            return powerNode;
+        int level;
+        while ((level = LEVELS[currentType().ordinal()]) >= minLevel) {
+            var node = createNode(LEVEL_NAMES[level]);
+            node.addChild(left);
+            if (level == EXPONENT_LEVEL) {
+                node.addChild(matchAndCreate(Token.TokenType.EXPONENT));
+                node.addChild(parseBinaryExp(EXPONENT_LEVEL));
+            } else {
+                do {
+                    node.addChild(matchAndCreate(currentType()));
+                    node.addChild(parseBinaryExp(level + 1));
+                } while (flatChains && LEVELS[currentType().ordinal()] == level);
+            }
+            left = node;
         }
         return left;
     }
 
-    private ParseTreeNode parseUnaryExp() throws ParserException {
-        if (currentToken().type == Token.TokenType.NOT ||
-                currentToken().type == Token.TokenType.PLUS ||
-                currentToken().type == Token.TokenType.MINUS) {
+    ParseTreeNode parseUnaryExp() throws ParserException {
+        if (currentType() == Token.TokenType.NOT ||
+                currentType() == Token.TokenType.PLUS ||
+                currentType() == Token.TokenType.MINUS) {
             var unaryNode = createNode("Unary_Exp");
-            unaryNode.addChild(matchAndCreate(currentToken().type));
+            unaryNode.addChild(matchAndCreate(currentType()));
             unaryNode.addChild(parseUnaryExp());
             return unaryNode;
         } else {
@@ -640,29 +590,29 @@ public class Parser {
     private ParseTreeNode parseFactor() throws ParserException {
         var factorNode = createNode("Factor");
 
-        switch (currentToken().type) {
+        switch (currentType()) {
             case INTEGER_LITERAL, FLOAT_LITERAL, CHARACTER_LITERAL, TRUE_KW, FALSE_KW ->
                     factorNode.addChild(parseConst());
             case IDENTIFIER -> {
                 factorNode.addChild(createNode("Identifier", currentToken()));
-                matchAndCreate(Token.TokenType.IDENTIFIER);
-                if (currentToken().type == Token.TokenType.LEFT_PARENTHESIS) {
+                match(Token.TokenType.IDENTIFIER);
+                if (currentType() == Token.TokenType.LEFT_PARENTHESIS) {
                     factorNode.addChild(matchAndCreate(Token.TokenType.LEFT_PARENTHESIS));
-                    if (currentToken().type != Token.TokenType.RIGHT_PARENTHESIS) {
+                    if (currentType() != Token.TokenType.RIGHT_PARENTHESIS) {
                         factorNode.addChild(parseArgumentList());
                     }
-                    matchAndCreate(Token.TokenType.RIGHT_PARENTHESIS);
-                } else if (currentToken().type == Token.TokenType.LEFT_BRACKET) {
+                    match(Token.TokenType.RIGHT_PARENTHESIS);
+                } else if (currentType() == Token.TokenType.LEFT_BRACKET) {
                     consumeToken();
                     factorNode.addChild(parseConst());
-                    matchAndCreate(Token.TokenType.RIGHT_BRACKET);
+                    match(Token.TokenType.RIGHT_BRACKET);
                 }
             }
             case LEFT_PARENTHESIS -> {
                 consumeToken();
                 var exp = parseExp();
                 factorNode.addChild(exp);
-                matchAndCreate(Token.TokenType.RIGHT_PARENTHESIS);
+                match(Token.TokenType.RIGHT_PARENTHESIS);
             }
             default -> throw new ParserException("Unexpected token in factor", currentToken().lineNumber, currentToken().columnNumber);
         }
@@ -672,22 +622,22 @@ public class Parser {
     private ParseTreeNode parseConst() throws ParserException {
         var constNode = createNode("Const");
 
-        switch (currentToken().type) {
+        switch (currentType()) {
             case INTEGER_LITERAL -> {
                 constNode.addChild(createNode("Int", currentToken()));
-                matchAndCreate(Token.TokenType.INTEGER_LITERAL);
+                match(Token.TokenType.INTEGER_LITERAL);
             }
             case FLOAT_LITERAL -> {
                 constNode.addChild(createNode("Float", currentToken()));
-                matchAndCreate(Token.TokenType.FLOAT_LITERAL);
+                match(Token.TokenType.FLOAT_LITERAL);
             }
             case CHARACTER_LITERAL -> {
                 constNode.addChild(createNode("Char", currentToken()));
-                matchAndCreate(Token.TokenType.CHARACTER_LITERAL);
+                match(Token.TokenType.CHARACTER_LITERAL);
             }
             case TRUE_KW, FALSE_KW -> {
                 constNode.addChild(createNode("Bool", currentToken()));
-                matchAndCreate(currentToken().type); // match true or false
+                match(currentType()); // match true or false
             }
             default ->
                     throw new ParserException("Expected constant", currentToken().lineNumber, currentToken().columnNumber);
@@ -697,7 +647,9 @@ public class Parser {
     }
 
     private void reportError(String message, Token.TokenType expected) throws ParserException {
-        System.err.println("Error: " + message + ", Expected: " + expected + ", Line: " + currentToken().lineNumber + ", Column: " + currentToken().columnNumber);
+        if (!quiet) {
+            System.err.println("Error: " + message + ", Expected: " + expected + ", Line: " + currentToken().lineNumber + ", Column: " + currentToken().columnNumber);
+        }
         panicMode = true;
         throw new ParserException(message, currentToken().lineNumber, currentToken().columnNumber);
     }
@@ -706,8 +658,8 @@ public class Parser {
         panicMode = true;
         consumeToken();
 
-        while (currentToken().type != Token.TokenType.TOKEN_EOF) {
-            switch (currentToken().type) {
+        while (currentType() != Token.TokenType.TOKEN_EOF) {
+            switch (currentType()) {
                 case SEMICOLON, INT_KW, FLOAT_KW, CHAR_KW, BOOL_KW, RETURN_KW, WHILE_KW, FOR_KW, LEFT_BRACE -> {
                     panicMode = false;
                     return;
@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Scanned tokens and parse trees of programs kept on disk, so that running an unchanged file
+// again skips scanning and parsing. An entry is one file named after the SHA-256 of the source
+// and of everything else that decides its tree: the interpreter version, this format and the
+// chain mode. It holds the binary symbol table of ScannerSymbolTablePrinter followed by a
+// TreeFile.
+//
+// Processes may share a directory: entries are written to a temporary file and renamed into
+// place, so a reader sees a whole entry or none, and one that disappears or does not decode is
+// a miss. Reading an entry touches its modification time. The directory is listed on the first
+// store and again only when the entries stored since take it past its capacity; then the least
+// recently used entries are deleted until it is under three quarters of it, so that a batch
+// lists it once per quarter of the capacity it writes rather than after every entry.
+public final class ProgramCache {
+
+    public static final long DEFAULT_CAPACITY = 256L << 20;
+
+    private static final int MAGIC = 0x4A504341; // "JPCA"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".program";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final long STALE_TEMPORARY_MILLIS = 60 * 60 * 1000;
+    private static final long UNKNOWN = -1;
+
+    private final Path directory;
+    private final long capacity;
+    // Bytes in the directory when it was last listed, plus the entries stored since
+    private final AtomicLong known = new AtomicLong(UNKNOWN);
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    public record Entry(TokenBuffer tokens, ParseTreeNode tree) {
+    }
+
+    public ProgramCache(Path directory, long capacity) {
+        this.directory = directory;
+        this.capacity = capacity;
+    }
+
+    public static String key(byte[] source, boolean flatChains) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((Interpreter.VERSION + "/" + VERSION + "/" + (flatChains ? "flat" : "nested") + "/")
+                    .getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(source));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The entry stored under key, or null
+    public Entry load(String key) {
+        Path path = directory.resolve(key + SUFFIX);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (bytes.limit() < 12 || bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION) {
+                return null;
+            }
+            int tokensLength = bytes.getInt(8);
+            TokenBuffer tokens = ScannerSymbolTablePrinter.readBinary(bytes.slice(12, tokensLength));
+            ParseTreeNode tree = TreeFile.of(bytes.slice(12 + tokensLength, bytes.limit() - 12 - tokensLength)).toTree();
+            touch(path);
+            return new Entry(tokens, tree);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Best effort: a cache that cannot be written to only means the next run parses again
+    public void store(String key, TokenBuffer tokens, ParseTreeNode tree) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            ByteBuffer[] tokenParts = ScannerSymbolTablePrinter.encodeBinary(tokens);
+            int tokensLength = 0;
+            for (ByteBuffer part : tokenParts) {
+                tokensLength += part.remaining();
+            }
+            ByteBuffer header = ByteBuffer.allocate(12).putInt(MAGIC).putInt(VERSION).putInt(tokensLength).flip();
+            temporary = Files.createTempFile(directory, key, TEMPORARY_SUFFIX);
+            long size;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                write(channel, header);
+                for (ByteBuffer part : tokenParts) {
+                    write(channel, part);
+                }
+                for (ByteBuffer part : TreeFile.encode(tree)) {
+                    write(channel, part);
+                }
+                size = channel.size();
+            }
+            Files.move(temporary, directory.resolve(key + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+            long total = known.updateAndGet(bytes -> bytes == UNKNOWN ? UNKNOWN : bytes + size);
+            if ((total == UNKNOWN || total > capacity) && evicting.compareAndSet(false, true)) {
+                try {
+                    known.set(evict());
+                } finally {
+                    evicting.set(false);
+                }
+            }
+        } catch (IOException e) {
+            // left for the next run
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    // removed as stale by a later eviction
+                }
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer part) throws IOException {
+        while (part.hasRemaining()) {
+            channel.write(part);
+        }
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // evicted by another process meanwhile
+        }
+    }
+
+    private record Stored(Path path, long size, long used) {
+    }
+
+    // Deletes entries, least recently used first, until the rest fit in three quarters of
+    // capacity if they did not fit in all of it, and temporary files that a crashed process left
+    // behind. Returns the bytes of the entries kept.
+    private long evict() throws IOException {
+        List<Stored> entries = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                long used = attributes.lastModifiedTime().toMillis();
+                if (name.endsWith(SUFFIX)) {
+                    entries.add(new Stored(file, attributes.size(), used));
+                    total += attributes.size();
+                } else if (name.endsWith(TEMPORARY_SUFFIX) && now - used > STALE_TEMPORARY_MILLIS) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (total <= capacity) {
+            return total;
+        }
+        entries.sort(Comparator.comparingLong(Stored::used));
+        long target = capacity - capacity / 4;
+        for (int i = 0; i < entries.size() && total > target; i++) {
+            Files.deleteIfExists(entries.get(i).path());
+            total -= entries.get(i).size();
+        }
+        return total;
+    }
+}
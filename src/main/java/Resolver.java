@@ -0,0 +1,368 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binds every identifier in a parse tree to a storage slot before execution, so engines can
+// index frames directly instead of looking names up while running. Variables follow C block
+// scoping, and a name may be declared once per scope, the parameters of a function and the
+// outermost block of its body being one scope as in C; functions are visible from anywhere in
+// the program. Errors are collected rather than thrown, so one pass reports all of them.
+//
+// Every expression node is also given the static type of its value, following the
+// conversions of Evaluator: an operator on a float operand gives a float and one on int, char
+// or bool operands an int; comparisons, logical operators and ! give a bool; an assignment
+// has the type of its target and a call the return type of its function. As variables and
+// return values are converted to their declared types when stored, the types hold for every
+// value at run time, so engines can pick int or float operations before running.
+public class Resolver {
+
+    public static class Slots {
+        CoreType[] types = new CoreType[8];
+        long[] lengths = new long[8]; // declared length of an array, -1 for a variable
+        int size;
+
+        int add(CoreType type, boolean array) {
+            if (size == types.length) {
+                types = java.util.Arrays.copyOf(types, size * 2);
+                lengths = java.util.Arrays.copyOf(lengths, size * 2);
+            }
+            types[size] = type;
+            lengths[size] = array ? 0 : -1;
+            return size++;
+        }
+    }
+
+    public static class Function {
+        final String name;
+        final int index;
+        CoreType returnType;
+        CoreType[] parameterTypes;
+        ParseTreeNode declaration;
+        ParseTreeNode body; // null for a prototype that is never defined
+        final Slots slots = new Slots();
+
+        Function(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        Token position() {
+            return declaration.children.get(1).token;
+        }
+    }
+
+    private record Binding(int slot, boolean global, boolean array, CoreType type) {
+    }
+
+    private static final class Scope {
+        final Map<String, Binding> names = new HashMap<>();
+        final Scope parent;
+
+        Scope(Scope parent) {
+            this.parent = parent;
+        }
+    }
+
+    final List<Function> functions = new ArrayList<>();
+    final Slots globals = new Slots();
+    final List<Object> constants = new ArrayList<>();
+    private final Map<String, Function> functionsByName = new HashMap<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private final List<EvaluationException> errors = new ArrayList<>();
+
+    private final Scope globalScope = new Scope(null);
+    private Scope scope = globalScope;
+    private Slots frame = globals;
+
+    public Function function(String name) {
+        return functionsByName.get(name);
+    }
+
+    // Resolves program for an engine, which cannot run it with any error: the first is thrown
+    public void resolve(ParseTreeNode program) throws EvaluationException {
+        List<EvaluationException> errors = check(program);
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+    }
+
+    // Resolves program and returns every error found, in the order they were found
+    public List<EvaluationException> check(ParseTreeNode program) {
+        for (ParseTreeNode declaration : program.children) {
+            ParseTreeNode node = declaration.children.get(0);
+            if (node.name.equals("Function_Declaration")) {
+                declareFunction(node);
+            }
+        }
+        for (ParseTreeNode declaration : program.children) {
+            ParseTreeNode node = declaration.children.get(0);
+            if (!node.name.equals("Function_Declaration")) {
+                resolveNode(node);
+            } else if (node.children.get(node.children.size() - 1).name.equals("Block")) {
+                Function function = functionsByName.get(node.children.get(1).token.lexeme);
+                if (function.declaration != node) {
+                    // a second definition, reported already: its body is still checked
+                    function = new Function(function.name, -1);
+                    define(function, node);
+                }
+                resolveFunction(function);
+            }
+        }
+        return errors;
+    }
+
+    private void error(String message, Token token) {
+        errors.add(new EvaluationException(message, token));
+    }
+
+    private void declareFunction(ParseTreeNode node) {
+        Token nameToken = node.children.get(1).token;
+        boolean hasBody = node.children.get(node.children.size() - 1).name.equals("Block");
+
+        Function function = functionsByName.get(nameToken.lexeme);
+        if (function == null) {
+            function = new Function(nameToken.lexeme, functions.size());
+            functions.add(function);
+            functionsByName.put(function.name, function);
+        } else if (function.body != null && hasBody) {
+            error("Function '" + function.name + "' is already defined", nameToken);
+            return;
+        } else if (!hasBody) {
+            return; // keep the earlier declaration or definition
+        }
+        define(function, node);
+    }
+
+    private static void define(Function function, ParseTreeNode node) {
+        ParseTreeNode last = node.children.get(node.children.size() - 1);
+        boolean hasBody = last.name.equals("Block");
+        List<CoreType> parameterTypes = new ArrayList<>();
+        for (ParseTreeNode parameter : node.children.get(3).children) {
+            if (parameter.name.equals("Data_Type")) {
+                parameterTypes.add(CoreType.of(parameter));
+            }
+        }
+        function.returnType = CoreType.of(node.children.get(0));
+        function.parameterTypes = parameterTypes.toArray(new CoreType[0]);
+        function.declaration = node;
+        function.body = hasBody ? last : null;
+    }
+
+    private void resolveFunction(Function function) {
+        frame = function.slots;
+        scope = new Scope(globalScope);
+
+        CoreType type = null;
+        for (ParseTreeNode parameter : function.declaration.children.get(3).children) {
+            if (parameter.name.equals("Data_Type")) {
+                type = CoreType.of(parameter);
+            } else if (parameter.name.equals("Identifier")) {
+                declare(parameter, type, false);
+            }
+        }
+        resolveChildren(function.body, 0); // in the scope of the parameters
+
+        frame = globals;
+        scope = globalScope;
+    }
+
+    private void resolveNode(ParseTreeNode node) {
+        resolveNames(node);
+        node.type = typeOf(node);
+    }
+
+    private void resolveNames(ParseTreeNode node) {
+        switch (node.name) {
+            case "Variable_Declaration" -> {
+                CoreType type = CoreType.of(node.children.get(0));
+                for (int i = 1; i < node.children.size(); i++) {
+                    ParseTreeNode child = node.children.get(i);
+                    if (child.name.equals("Identifier")) {
+                        declare(child, type, false);
+                    } else {
+                        resolveNode(child);
+                    }
+                }
+            }
+            case "Array_Declaration" -> {
+                ParseTreeNode identifier = node.children.get(1);
+                declare(identifier, CoreType.of(node.children.get(0)), true);
+                resolveChildren(node, 2);
+                frame.lengths[identifier.slot] = arrayLength(node);
+            }
+            case "Block", "For_Statement" -> {
+                scope = new Scope(scope);
+                resolveChildren(node, 0);
+                scope = scope.parent;
+            }
+            case "Factor" -> resolveFactor(node);
+            case "Exp" -> {
+                if (node.children.size() > 1) {
+                    bind(node.children.get(0), node.children.get(1).name.equals("LEFT_BRACKET"));
+                    resolveChildren(node, 1);
+                } else {
+                    resolveChildren(node, 0);
+                }
+            }
+            case "Input_Statement", "Output_Statement" -> {
+                for (ParseTreeNode child : node.children) {
+                    if (child.name.equals("Identifier")) {
+                        bind(child, false);
+                    } else {
+                        resolveNode(child);
+                    }
+                }
+            }
+            case "Const" -> node.slot = constant(node.children.get(0).token);
+            default -> resolveChildren(node, 0);
+        }
+    }
+
+    private void resolveChildren(ParseTreeNode node, int from) {
+        for (int i = from; i < node.children.size(); i++) {
+            resolveNode(node.children.get(i));
+        }
+    }
+
+    private void resolveFactor(ParseTreeNode factor) {
+        ParseTreeNode first = factor.children.get(0);
+        if (!first.name.equals("Identifier")) {
+            resolveChildren(factor, 0);
+            return;
+        }
+        if (factor.children.size() > 1 && factor.children.get(1).name.equals("LEFT_PARENTHESIS")) {
+            Function callee = functionsByName.get(first.token.lexeme);
+            if (callee == null || callee.body == null) {
+                error(callee == null ? "Undeclared function '" + first.token.lexeme + "'"
+                        : "Function '" + callee.name + "' is declared but never defined", first.token);
+                resolveChildren(factor, 2);
+                return;
+            }
+            int arguments = 0;
+            if (factor.children.size() > 2) {
+                for (ParseTreeNode argument : factor.children.get(2).children) {
+                    if (argument.name.equals("Exp")) {
+                        arguments++;
+                    }
+                }
+            }
+            if (arguments != callee.parameterTypes.length) {
+                error("Function '" + callee.name + "' expects " + callee.parameterTypes.length
+                        + " argument(s) but got " + arguments, first.token);
+            }
+            first.slot = callee.index;
+            first.type = callee.returnType;
+            resolveChildren(factor, 2);
+        } else {
+            bind(first, factor.children.size() > 1);
+            resolveChildren(factor, 1);
+        }
+    }
+
+    // A name declared twice keeps its first binding; the second still gets a slot of its own
+    private void declare(ParseTreeNode identifier, CoreType type, boolean array) {
+        String name = identifier.token.lexeme;
+        identifier.slot = frame.add(type, array);
+        identifier.global = frame == globals;
+        identifier.type = type;
+        if (scope.names.containsKey(name)) {
+            error("'" + name + "' is already declared in this scope", identifier.token);
+        } else {
+            scope.names.put(name, new Binding(identifier.slot, identifier.global, array, type));
+        }
+    }
+
+    // The length in brackets, or the number of initializers when the brackets are empty. A
+    // slot is never shared by two declarations, so engines can check a constant index against
+    // it before running.
+    private long arrayLength(ParseTreeNode declaration) {
+        List<ParseTreeNode> c = declaration.children;
+        if (c.get(3).name.equals("Const")) {
+            return Evaluator.toInt(constants.get(c.get(3).slot));
+        }
+        long count = 0;
+        for (ParseTreeNode child : c) {
+            if (child.name.equals("Argument_List")) {
+                for (ParseTreeNode element : child.children) {
+                    if (element.name.equals("Exp")) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private void bind(ParseTreeNode identifier, boolean indexed) {
+        String name = identifier.token.lexeme;
+        Binding binding = null;
+        for (Scope s = scope; s != null && binding == null; s = s.parent) {
+            binding = s.names.get(name);
+        }
+        if (binding == null) {
+            error("Undeclared identifier '" + name + "'", identifier.token);
+            return;
+        }
+        if (binding.array() && !indexed) {
+            error("Array '" + name + "' used without an index", identifier.token);
+        } else if (!binding.array() && indexed) {
+            error("'" + name + "' is not an array", identifier.token);
+        }
+        identifier.slot = binding.slot();
+        identifier.global = binding.global();
+        identifier.type = binding.type();
+    }
+
+    // Type of a node whose children are resolved: that of an expression, the one an Identifier
+    // was given when declared or bound, and null for other nodes. A Factor and an Exp have the
+    // type of their first child: the constant, variable, element, callee or parenthesized
+    // expression, or the target of an assignment.
+    private CoreType typeOf(ParseTreeNode node) {
+        List<ParseTreeNode> c = node.children;
+        return switch (node.name) {
+            case "Const" -> Evaluator.typeOf(constants.get(node.slot));
+            case "Factor", "Exp" -> c.get(0).type;
+            case "Additive", "Multiplicative", "Exponent" -> {
+                for (int i = 0; i < c.size(); i += 2) {
+                    if (c.get(i).type == CoreType.FLOAT) {
+                        yield CoreType.FLOAT;
+                    }
+                }
+                yield CoreType.INT;
+            }
+            case "Relational", "Equality", "Logical_And", "Logical_Or" -> CoreType.BOOL;
+            case "Unary_Exp" -> c.get(0).token.type == Token.TokenType.NOT ? CoreType.BOOL
+                    : c.get(1).type == CoreType.FLOAT ? CoreType.FLOAT : CoreType.INT;
+            default -> node.type;
+        };
+    }
+
+    private int constant(Token token) {
+        Object value = switch (token.type) {
+            case INTEGER_LITERAL -> {
+                try {
+                    yield Long.parseLong(token.lexeme);
+                } catch (NumberFormatException e) {
+                    error("Integer literal out of range: " + token.lexeme, token);
+                    yield 0L;
+                }
+            }
+            case FLOAT_LITERAL -> Double.parseDouble(token.lexeme);
+            case CHARACTER_LITERAL -> token.lexeme.charAt(0);
+            case TRUE_KW -> Boolean.TRUE;
+            case FALSE_KW -> Boolean.FALSE;
+            default -> {
+                error("Unexpected constant " + token.lexeme, token);
+                yield 0L;
+            }
+        };
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+}
@@ -60,22 +60,28 @@ public class Scanner {
     }
 
     public List<Token> scan() throws ScannerException, IOException {
-        while (currentChar != '\0') {
-            skipWhitespaceAndComments();
-            if (currentChar == '\0') {
-                break;
-            }
-            int tokenStartLine = lineNumber;
-            int tokenStartColumn = columnNumber;
-
-            Token token = createToken();
-            token.lineNumber = tokenStartLine;
-            token.columnNumber = tokenStartColumn;
+        Token token;
+        do {
+            token = nextToken();
             tokens.add(token);
+        } while (token.type != Token.TokenType.TOKEN_EOF);
+        return tokens;
+    }
+
+    // Scans a single token, TOKEN_EOF once the input is exhausted; lets TokenStream pull
+    // tokens as the parser needs them instead of holding the whole list
+    public Token nextToken() throws ScannerException, IOException {
+        skipWhitespaceAndComments();
+        if (currentChar == '\0') {
+            return new Token(Token.TokenType.TOKEN_EOF, "EOF", lineNumber, 0);
         }
+        int tokenStartLine = lineNumber;
+        int tokenStartColumn = columnNumber;
 
-        addEOFToken();
-        return tokens;
+        Token token = createToken();
+        token.lineNumber = tokenStartLine;
+        token.columnNumber = tokenStartColumn;
+        return token;
     }
 
     private Token createToken() throws ScannerException, IOException {
@@ -156,24 +162,8 @@ public class Scanner {
         return new Token(type, lexemeStr, 0, 0);
     }
 
-    private Token.TokenType checkKeyword(String lexeme) {
-        return switch (lexeme.toLowerCase()) {
-            case "char" -> Token.TokenType.CHAR_KW;
-            case "int" -> Token.TokenType.INT_KW;
-            case "float" -> Token.TokenType.FLOAT_KW;
-            case "bool" -> Token.TokenType.BOOL_KW;
-            case "if" -> Token.TokenType.IF_KW;
-            case "else" -> Token.TokenType.ELSE_KW;
-            case "for" -> Token.TokenType.FOR_KW;
-            case "while" -> Token.TokenType.WHILE_KW;
-            case "return" -> Token.TokenType.RETURN_KW;
-            case "printf" -> Token.TokenType.PRINTF_KW;
-            case "scanf" -> Token.TokenType.SCANF_KW;
-            case "true" -> Token.TokenType.TRUE_KW;
-            case "false" -> Token.TokenType.FALSE_KW;
-            case "void" -> Token.TokenType.VOID_KW;
-            default -> Token.TokenType.IDENTIFIER;
-        };
+    static Token.TokenType checkKeyword(String lexeme) {
+        return Keywords.lookup(lexeme);
     }
 
     private Token scanString() throws ScannerException, IOException {
@@ -304,8 +294,4 @@ public class Scanner {
         readNextChar();
         return token;
     }
-
-    private void addEOFToken() {
-        tokens.add(new Token(Token.TokenType.TOKEN_EOF, "EOF", lineNumber, 0));
-    }
-}
\ No newline at end of file
+}
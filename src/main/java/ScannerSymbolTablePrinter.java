@@ -1,35 +1,263 @@
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+// Writes the symbol table, one row per token in the format of Token.toString. Rows are
+// formatted straight into a byte buffer that goes to a FileChannel whenever it fills up; the
+// part of a row before the line number depends only on the token type and is prepared once.
 public class ScannerSymbolTablePrinter {
 
+    private static final Token.TokenType[] TYPES = Token.TokenType.values();
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] SEPARATOR = " | ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADER = ("""
+            ________________________________________________________________________________________________________________________________
+            TOKEN CODE      | TOKEN                    | LINE #          | COLUMN #        | LEXEME
+            ________________________________________________________________________________________________________________________________
+            """ + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FOOTER = ("_".repeat(128) + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII);
+
+    // "%-15d | %-24s | " of each type's ordinal and name
+    private static final byte[][] ROW_PREFIXES = new byte[TYPES.length][];
+
+    static {
+        for (Token.TokenType type : TYPES) {
+            ROW_PREFIXES[type.ordinal()] = String.format("%-15d | %-24s | ", type.ordinal(), type.name())
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static final int BINARY_MAGIC = 0x4A53594D; // "JSYM"
+    private static final int BINARY_VERSION = 1;
+
     private final String outputFilename;
+    private FileChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
 
     public ScannerSymbolTablePrinter(String outputFilename) {
         this.outputFilename = outputFilename;
     }
 
     public void write(List<Token> tokens) throws IOException {
-        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(outputFilename)))) {
-            writeHeader(writer);
-            tokens.forEach(writer::println);
-            writeFooter(writer);
+        begin();
+        try {
+            for (Token token : tokens) {
+                row(token.type, token.lineNumber, token.columnNumber, token.lexeme);
+            }
+        } finally {
+            end();
         }
     }
 
-    private void writeHeader(PrintWriter writer) {
-        String header = """
-            ________________________________________________________________________________________________________________________________
-            TOKEN CODE      | TOKEN                    | LINE #          | COLUMN #        | LEXEME
-            ________________________________________________________________________________________________________________________________
-            """;
-        writer.println(header);
+    // Same rows, read from the columns without creating Token objects
+    public void write(TokenBuffer tokens) throws IOException {
+        begin();
+        try {
+            for (int i = 0; i < tokens.size(); i++) {
+                row(tokens.type(i), tokens.line(i), tokens.column(i), tokens.lexeme(i));
+            }
+        } finally {
+            end();
+        }
     }
 
-    private void writeFooter(PrintWriter writer) {
-        writer.println("_".repeat(128));
+    // Starts a table whose rows are written as tokens pass through a TokenStream
+    public Consumer<Token> open() throws IOException {
+        begin();
+        return token -> {
+            try {
+                row(token.type, token.lineNumber, token.columnNumber, token.lexeme);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            end();
+        }
+    }
+
+    // The table as columns for programs to read instead of the text: a header of magic,
+    // version, token count and string count, then the type ordinal of every token as a byte,
+    // its line, its column, and the index of its lexeme in a table of the distinct lexemes, as
+    // ints, and last the string table as in TreeFile: 0 and the end of each UTF-8 string, then
+    // the strings. Big-endian throughout.
+    public void writeBinary(TokenBuffer tokens) throws IOException {
+        try (FileChannel out = FileChannel.open(Paths.get(outputFilename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer part : encodeBinary(tokens)) {
+                while (part.hasRemaining()) {
+                    out.write(part);
+                }
+            }
+        }
+    }
+
+    // The contents of the binary table, in parts to be written one after the other
+    static ByteBuffer[] encodeBinary(TokenBuffer tokens) {
+        int count = tokens.size();
+        Map<String, Integer> indexes = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int stringLength = 0;
+        ByteBuffer columns = ByteBuffer.allocate(16 + count * 13);
+        columns.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putInt(count).putInt(0);
+        for (int i = 0; i < count; i++) {
+            columns.put(16 + i, (byte) tokens.type(i).ordinal());
+            columns.putInt(16 + count + i * 4, tokens.line(i));
+            columns.putInt(16 + count * 5 + i * 4, tokens.column(i));
+            String lexeme = tokens.lexeme(i);
+            Integer index = indexes.get(lexeme);
+            if (index == null) {
+                byte[] encoded = lexeme.getBytes(StandardCharsets.UTF_8);
+                index = strings.size();
+                indexes.put(lexeme, index);
+                strings.add(encoded);
+                stringLength += encoded.length;
+            }
+            columns.putInt(16 + count * 9 + i * 4, index);
+        }
+        columns.putInt(12, strings.size());
+        columns.position(columns.capacity()).flip();
+        ByteBuffer table = ByteBuffer.allocate((strings.size() + 1) * 4 + stringLength);
+        int end = 0;
+        table.putInt(0);
+        for (byte[] string : strings) {
+            end += string.length;
+            table.putInt(end);
+        }
+        for (byte[] string : strings) {
+            table.put(string);
+        }
+        return new ByteBuffer[]{columns, table.flip()};
+    }
+
+    // Tokens of a binary table starting at position 0 of bytes, sharing one String per lexeme
+    static TokenBuffer readBinary(ByteBuffer bytes) throws IOException {
+        if (bytes.limit() < 16 || bytes.getInt(0) != BINARY_MAGIC || bytes.getInt(4) != BINARY_VERSION) {
+            throw new IOException("Not a binary symbol table");
+        }
+        int count = bytes.getInt(8);
+        String[] strings = new String[bytes.getInt(12)];
+        int offsets = 16 + count * 13;
+        int stringBytes = offsets + (strings.length + 1) * 4;
+        for (int i = 0; i < strings.length; i++) {
+            int start = bytes.getInt(offsets + i * 4);
+            byte[] encoded = new byte[bytes.getInt(offsets + i * 4 + 4) - start];
+            bytes.get(stringBytes + start, encoded);
+            strings[i] = new String(encoded, StandardCharsets.UTF_8);
+        }
+        List<Token> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tokens.add(new Token(TYPES[bytes.get(16 + i)], strings[bytes.getInt(16 + count * 9 + i * 4)],
+                    bytes.getInt(16 + count + i * 4), bytes.getInt(16 + count * 5 + i * 4)));
+        }
+        return TokenBuffer.of(tokens);
+    }
+
+    private void begin() throws IOException {
+        channel = FileChannel.open(Paths.get(outputFilename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        position = 0;
+        put(HEADER);
+    }
+
+    private void end() throws IOException {
+        try {
+            put(FOOTER);
+            flush();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void row(Token.TokenType type, int line, int column, String lexeme) throws IOException {
+        put(ROW_PREFIXES[type.ordinal()]);
+        putPadded(line);
+        put(SEPARATOR);
+        putPadded(column);
+        put(SEPARATOR);
+        putString(lexeme);
+        put(LINE_SEPARATOR);
+    }
+
+    // %-15d
+    private void putPadded(int value) throws IOException {
+        if (position + 15 > buffer.length) {
+            flush();
+        }
+        int start = position;
+        long rest = value;
+        if (rest < 0) {
+            buffer[position++] = '-';
+            rest = -rest;
+        }
+        int digits = 1;
+        for (long power = 10; power <= rest; power *= 10) {
+            digits++;
+        }
+        position += digits;
+        for (int i = position - 1; i >= position - digits; i--) {
+            buffer[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+        while (position - start < 15) {
+            buffer[position++] = ' ';
+        }
+    }
+
+    private void putString(String value) throws IOException {
+        int length = value.length();
+        if (position + length > buffer.length) {
+            flush();
+        }
+        if (length <= buffer.length) {
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    put(value.substring(i).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                buffer[position++] = (byte) c;
+            }
+        } else {
+            put(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (position + bytes.length > buffer.length) {
+            flush();
+            if (bytes.length > buffer.length) {
+                ByteBuffer direct = ByteBuffer.wrap(bytes);
+                while (direct.hasRemaining()) {
+                    channel.write(direct);
+                }
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer pending = ByteBuffer.wrap(buffer, 0, position);
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        position = 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+
+// Statement nodes of AstInterpreter
+final class StatementNodes {
+
+    private StatementNodes() {
+    }
+
+    static final class Block extends ExecNode.Statement {
+        final Statement[] statements;
+
+        Block(Statement[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        boolean execute(Frame frame) throws EvaluationException {
+            for (Statement statement : statements) {
+                if (statement.execute(frame)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class ExpressionStatement extends ExecNode.Statement {
+        final Expression expression;
+
+        ExpressionStatement(Expression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        boolean execute(Frame frame) throws EvaluationException {
+            expression.executeVoid(frame);
+            return false;
+        }
+    }
+
+    // Allocates an array from arrays and fills it, from values when all initializers are
+    // constants and otherwise by evaluating each of initializers in turn
+    static final class DeclareArray extends ExecNode.Statement {
+        final Frame globals;
+        final int slot;
+        final CoreType type;
+        final Token token;
+        final long length;
+        final CoreArrays arrays;
+        final Object values; // null unless initializers is empty
+        final int count;
+        final Expression[] initializers;
+
+        DeclareArray(Frame globals, int slot, CoreType type, Token token, long length, CoreArrays arrays,
+                     Object values, Expression[] initializers) {
+            this.globals = globals;
+            this.slot = slot;
+            this.type = type;
+            this.token = token;
+            this.length = length;
+            this.arrays = arrays;
+            this.values = values;
+            this.count = values != null ? CoreArrays.length(values) : initializers.length;
+            this.initializers = initializers;
+        }
+
+        @Override
+        boolean execute(Frame frame) throws EvaluationException {
+            if (count > length) {
+                throw new EvaluationException("Too many initializers for array '" + token.lexeme + "'", token);
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new EvaluationException("Array '" + token.lexeme + "' is too large", token);
+            }
+            Object array = arrays.allocate(type, (int) length);
+            (globals != null ? globals : frame).arrays[slot] = array;
+            if (values != null) {
+                CoreArrays.fill(array, values);
+            }
+            for (int i = 0; i < initializers.length; i++) {
+                CoreArrays.set(array, i, initializers[i].executeAs(type, frame));
+            }
+            return false;
+        }
+    }
+
+    static final class Return extends ExecNode.Statement {
+        final CoreType type;
+        final Expression value;
+
+        Return(CoreType type, Expression value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        boolean execute(Frame frame) throws EvaluationException {
+            frame.result = value.executeAs(type, frame);
+            return true;
+        }
+    }
+
+    static final class If extends ExecNode.Statement {
+        final Expression condition;
+        final Statement then;
+        final Statement otherwise;
+
+        If(Expression condition, Statement then, Statement otherwise) {
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        boolean execute(Frame frame) throws EvaluationException {
+            if (condition.executeCondition(frame)) {
+                return then.execute(frame);
+            }
+            return otherwise != null && otherwise.execute(frame);
+        }
+    }
+
+    // While_Statement and For_Statement; init and update are absent for a while loop
+    static final class Loop extends ExecNode.Statement {
+        final Statement init;
+        final Expression condition;
+        final Expression update;
+        final Statement body;
+
+        Loop(Statement init, Expression condition, Expression update, Statement body) {
+            this.init = init;
+            this.condition = condition;
+            this.update = update;
+            this.body = body;
+        }
+
+        @Override
+        boolean execute(Frame frame) throws EvaluationException {
+            if (init != null) {
+                init.execute(frame);
+            }
+            while (condition.executeCondition(frame)) {
+                if (body.execute(frame)) {
+                    return true;
+                }
+                if (update != null) {
+                    update.executeVoid(frame);
+                }
+            }
+            return false;
+        }
+    }
+
+    static final class Input extends ExecNode.Statement {
+        final PrintStream out;
+        final Reader in;
+        final ExpressionNodes.Read[] targets;
+
+        Input(PrintStream out, Reader in, ExpressionNodes.Read[] targets) {
+            this.out = out;
+            this.in = in;
+            this.targets = targets;
+        }
+
+        @Override
+        boolean execute(Frame frame) throws EvaluationException {
+            out.flush();
+            for (ExpressionNodes.Read target : targets) {
+                String word;
+                try {
+                    word = CoreOps.nextInputWord(in);
+                } catch (IOException e) {
+                    throw new EvaluationException("Cannot read input: " + e.getMessage(), target.token);
+                }
+                if (word == null) {
+                    return false;
+                }
+                try {
+                    target.frame(frame).values[target.slot] = CoreOps.parseInput(word, target.type);
+                } catch (NumberFormatException e) {
+                    throw new EvaluationException("Invalid input '" + word + "' for '" + target.token.lexeme + "'", target.token);
+                }
+            }
+            return false;
+        }
+    }
+
+    // printf with a format string, or printf(variable) when format is null
+    static final class Output extends ExecNode.Statement {
+        final PrintStream out;
+        final Token format;
+        final Expression[] arguments;
+
+        Output(PrintStream out, Token format, Expression[] arguments) {
+            this.out = out;
+            this.format = format;
+            this.arguments = arguments;
+        }
+
+        @Override
+        boolean execute(Frame frame) throws EvaluationException {
+            if (format == null) {
+                Object value = arguments[0].execute(frame);
+                out.print(CoreOps.display(Evaluator.typeOf(value), Evaluator.bits(value)));
+                return false;
+            }
+            CoreType[] types = new CoreType[arguments.length];
+            long[] values = new long[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                Object value = arguments[i].execute(frame);
+                types[i] = Evaluator.typeOf(value);
+                values[i] = Evaluator.bits(value);
+            }
+            out.print(CoreOps.format(format.lexeme, types, values, format.lineNumber, format.columnNumber));
+            return false;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// Scanned tokens stored column by column instead of as Token objects. Each token is a type
+// ordinal, a [start, end) range of the source, its position and, for literals, its decoded
+// value. Lexeme strings and Token objects are only created when a consumer asks for them;
+// identifiers are interned and carry their id as value.
+public class TokenBuffer {
+
+    private static final Token.TokenType[] TYPES = Token.TokenType.values();
+
+    // Lexemes of the tokens whose spelling never varies
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+
+    static {
+        String[][] fixed = {
+                {"LEFT_PARENTHESIS", "("}, {"RIGHT_PARENTHESIS", ")"}, {"LEFT_BRACKET", "["},
+                {"RIGHT_BRACKET", "]"}, {"LEFT_BRACE", "{"}, {"RIGHT_BRACE", "}"}, {"COMMA", ","},
+                {"SEMICOLON", ";"}, {"MULTIPLY", "*"}, {"EXPONENT", "^"}, {"AMPERSAND", "&"}, {"PLUS", "+"},
+                {"MINUS", "-"}, {"DIVIDE", "/"}, {"EQUAL", "=="}, {"NOT_EQUAL", "!="}, {"ASSIGN", "="},
+                {"LESS", "<"}, {"LESS_EQUAL", "<="}, {"GREATER", ">"}, {"GREATER_EQUAL", ">="}, {"NOT", "!"},
+                {"OR", "||"}, {"AND", "&&"}, {"MODULO", "%"}, {"TOKEN_EOF", "EOF"}
+        };
+        for (String[] entry : fixed) {
+            FIXED_LEXEMES[Token.TokenType.valueOf(entry[0]).ordinal()] = entry[1];
+        }
+    }
+
+    private static final String[] KEYWORD_SPELLINGS = new String[TYPES.length];
+
+    static {
+        for (Token.TokenType type : TYPES) {
+            if (type.isKeyword()) {
+                KEYWORD_SPELLINGS[type.ordinal()] = Keywords.spelling(type);
+            }
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final char[] source;
+    private int size;
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int[] columns;
+    private long[] values;
+    private final Identifiers identifiers;
+    private final BitSet undecoded = new BitSet(); // literals whose value must come from the lexeme
+    private String[] lexemes;
+    private Token[] tokens;
+
+    public TokenBuffer(char[] source, int capacity) {
+        this(source, capacity, new Identifiers());
+    }
+
+    TokenBuffer(char[] source, int capacity, Identifiers identifiers) {
+        this.source = source;
+        this.identifiers = identifiers;
+        capacity = Math.max(capacity, 16);
+        types = new byte[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+        values = new long[capacity];
+    }
+
+    // Wraps tokens produced by Scanner, keeping the same Token objects
+    public static TokenBuffer of(List<Token> list) {
+        TokenBuffer buffer = new TokenBuffer(null, list.size());
+        buffer.lexemes = new String[buffer.types.length];
+        buffer.tokens = new Token[buffer.types.length];
+        for (Token token : list) {
+            int i = buffer.size;
+            long id = token.type == Token.TokenType.IDENTIFIER ? buffer.identifiers.intern(token.lexeme) : 0;
+            buffer.add(token.type, 0, 0, token.lineNumber, token.columnNumber, id);
+            buffer.lexemes[i] = token.lexeme;
+            buffer.tokens[i] = token;
+            buffer.undecoded.set(i);
+        }
+        return buffer;
+    }
+
+    // Like of, but without keeping the Token objects: only lexemes that cannot be told from
+    // the type or identifier id are stored, so a token costs a few bytes in its columns
+    static TokenBuffer compact(List<Token> list) {
+        TokenBuffer buffer = new TokenBuffer(null, list.size());
+        for (Token token : list) {
+            int i = buffer.size;
+            Token.TokenType type = token.type;
+            long id = type == Token.TokenType.IDENTIFIER ? buffer.identifiers.intern(token.lexeme) : 0;
+            buffer.add(type, 0, 0, token.lineNumber, token.columnNumber, id);
+            if (type == Token.TokenType.IDENTIFIER || token.lexeme.equals(FIXED_LEXEMES[type.ordinal()])) {
+                continue;
+            }
+            // Keywords have no source to compare their spelling against, so it is kept shared
+            String spelling = KEYWORD_SPELLINGS[type.ordinal()];
+            if (buffer.lexemes == null) {
+                buffer.lexemes = new String[buffer.types.length];
+            }
+            buffer.lexemes[i] = token.lexeme.equals(spelling) ? spelling : token.lexeme;
+            buffer.undecoded.set(i);
+        }
+        return buffer;
+    }
+
+    // The range of a STRING excludes its quotes; value is only used for CHARACTER_LITERAL, the
+    // numeric literals are decoded here from their range.
+    public void add(Token.TokenType type, int start, int end, int line, int column, long value) {
+        if (size == types.length) {
+            grow();
+        }
+        int i = size++;
+        types[i] = (byte) type.ordinal();
+        starts[i] = start;
+        ends[i] = end;
+        lines[i] = line;
+        columns[i] = column;
+        if (source != null) {
+            if (type == Token.TokenType.INTEGER_LITERAL) {
+                value = decodeInteger(i);
+            } else if (type == Token.TokenType.FLOAT_LITERAL) {
+                value = Double.doubleToRawLongBits(decodeFloat(i));
+            } else if (type == Token.TokenType.IDENTIFIER) {
+                value = identifiers.intern(source, start, end);
+            }
+        }
+        values[i] = value;
+    }
+
+    // Appends the tokens of a buffer scanned over another part of the same source, shifting
+    // its lines by lineOffset and remapping its identifier ids into this buffer's table
+    public void append(TokenBuffer other, int lineOffset) {
+        int[] ids = new int[other.identifiers.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = identifiers.intern(other.identifiers.name(id));
+        }
+        copy(other, 0, other.size, ids, 0, lineOffset);
+    }
+
+    // Appends the tokens of a buffer sharing this one's identifier table that was scanned from
+    // the part of this buffer's source at charOffset, shifting its lines by lineOffset
+    void append(TokenBuffer other, int charOffset, int lineOffset) {
+        copy(other, 0, other.size, null, charOffset, lineOffset);
+    }
+
+    // Rows [from, to) as a buffer over text, the part of this buffer's source from offset on,
+    // with lineOffset lines less; the identifier table is shared
+    TokenBuffer slice(int from, int to, char[] text, int offset, int lineOffset) {
+        TokenBuffer slice = new TokenBuffer(text, to - from, identifiers);
+        slice.copy(this, from, to, null, -offset, -lineOffset);
+        return slice;
+    }
+
+    // Appends rows [start, end) of other; ids maps its identifier ids, null when they are shared
+    private void copy(TokenBuffer other, int start, int end, int[] ids, int charDelta, int lineDelta) {
+        int count = end - start;
+        while (size + count > types.length) {
+            grow();
+        }
+        System.arraycopy(other.types, start, types, size, count);
+        System.arraycopy(other.columns, start, columns, size, count);
+        System.arraycopy(other.values, start, values, size, count);
+        for (int i = 0; i < count; i++) {
+            starts[size + i] = other.starts[start + i] + charDelta;
+            ends[size + i] = other.ends[start + i] + charDelta;
+            lines[size + i] = other.lines[start + i] + lineDelta;
+            if (ids != null && other.types[start + i] == Token.TokenType.IDENTIFIER.ordinal()) {
+                values[size + i] = ids[(int) other.values[start + i]];
+            }
+        }
+        for (int i = other.undecoded.nextSetBit(start); i >= 0 && i < end; i = other.undecoded.nextSetBit(i + 1)) {
+            undecoded.set(size + i - start);
+        }
+        size += count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.TokenType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    // Source offset of the token's first character; only for buffers scanned by ArrayScanner
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    public Identifiers identifiers() {
+        return identifiers;
+    }
+
+    // Id of an IDENTIFIER in identifiers()
+    public int identifierId(int i) {
+        return (int) values[i];
+    }
+
+    // Same result as Long.parseLong on the lexeme, including its exception
+    public long intValue(int i) {
+        return undecoded.get(i) ? Long.parseLong(lexeme(i)) : values[i];
+    }
+
+    public double floatValue(int i) {
+        return undecoded.get(i) ? Double.parseDouble(lexeme(i)) : Double.longBitsToDouble(values[i]);
+    }
+
+    public char charValue(int i) {
+        return undecoded.get(i) ? lexeme(i).charAt(0) : (char) values[i];
+    }
+
+    public String lexeme(int i) {
+        if (lexemes != null && lexemes[i] != null) {
+            return lexemes[i];
+        }
+        String fixed = FIXED_LEXEMES[types[i]];
+        if (fixed != null) {
+            return fixed;
+        }
+        Token.TokenType type = type(i);
+        if (type == Token.TokenType.IDENTIFIER) {
+            return identifiers.name((int) values[i]);
+        }
+        if (type.isKeyword() && isSpelledAs(i, KEYWORD_SPELLINGS[types[i]])) {
+            return KEYWORD_SPELLINGS[types[i]];
+        }
+        String lexeme = switch (type) {
+            case INTEGER_LITERAL, FLOAT_LITERAL -> numberLexeme(i);
+            case STRING -> stringLexeme(i);
+            case CHARACTER_LITERAL -> String.valueOf((char) values[i]);
+            default -> new String(source, starts[i], ends[i] - starts[i]);
+        };
+        if (lexemes == null) {
+            lexemes = new String[types.length];
+        }
+        lexemes[i] = lexeme;
+        return lexeme;
+    }
+
+    public Token token(int i) {
+        if (tokens == null) {
+            tokens = new Token[types.length];
+        }
+        Token token = tokens[i];
+        if (token == null) {
+            token = new Token(type(i), lexeme(i), lines[i], columns[i]);
+            tokens[i] = token;
+        }
+        return token;
+    }
+
+    // Allocates the lazy caches up front, so threads materializing disjoint tokens do not
+    // race to create them
+    void share() {
+        if (lexemes == null) {
+            lexemes = new String[types.length];
+        }
+        if (tokens == null) {
+            tokens = new Token[types.length];
+        }
+    }
+
+    public List<Token> toList() {
+        List<Token> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(token(i));
+        }
+        return list;
+    }
+
+    private void grow() {
+        int capacity = types.length + (types.length >> 1);
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+        values = Arrays.copyOf(values, capacity);
+        if (lexemes != null) {
+            lexemes = Arrays.copyOf(lexemes, capacity);
+        }
+        if (tokens != null) {
+            tokens = Arrays.copyOf(tokens, capacity);
+        }
+    }
+
+    private boolean isSpelledAs(int i, String spelling) {
+        if (ends[i] - starts[i] != spelling.length()) {
+            return false;
+        }
+        for (int p = starts[i]; p < ends[i]; p++) {
+            if (source[p] != spelling.charAt(p - starts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '\'' || c == '`';
+    }
+
+    private long decodeInteger(int i) {
+        long value = 0;
+        for (int p = starts[i]; p < ends[i]; p++) {
+            char c = source[p];
+            if (isSeparator(c)) {
+                continue;
+            }
+            int digit = c < 128 ? c - '0' : Character.digit(c, 10);
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                undecoded.set(i);
+                return 0;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Exact for up to 15 significant digits and 22 decimals, where both operands of the
+    // division are exact doubles; anything else goes through Double.parseDouble
+    private double decodeFloat(int i) {
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean fraction = false;
+        for (int p = starts[i]; p < ends[i]; p++) {
+            char c = source[p];
+            if (c == '.') {
+                fraction = true;
+            } else if (c >= '0' && c <= '9') {
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction) {
+                    decimals++;
+                }
+                if (digits > 15 || decimals >= POWERS_OF_TEN.length) {
+                    return slowFloat(i);
+                }
+            } else if (!isSeparator(c)) {
+                return slowFloat(i);
+            }
+        }
+        return mantissa / POWERS_OF_TEN[decimals];
+    }
+
+    private double slowFloat(int i) {
+        try {
+            return Double.parseDouble(numberLexeme(i));
+        } catch (NumberFormatException e) {
+            undecoded.set(i);
+            return 0;
+        }
+    }
+
+    // The lexeme Scanner produces: separators dropped, a bare leading or trailing '.' padded with 0
+    private String numberLexeme(int i) {
+        StringBuilder lexeme = new StringBuilder(ends[i] - starts[i] + 2);
+        for (int p = starts[i]; p < ends[i]; p++) {
+            if (!isSeparator(source[p])) {
+                lexeme.append(source[p]);
+            }
+        }
+        if (lexeme.charAt(0) == '.') {
+            lexeme.insert(0, '0');
+        }
+        if (lexeme.charAt(lexeme.length() - 1) == '.') {
+            lexeme.append('0');
+        }
+        return lexeme.toString();
+    }
+
+    private String stringLexeme(int i) {
+        int start = starts[i];
+        int end = ends[i];
+        StringBuilder lexeme = null;
+        for (int p = start; p < end; p++) {
+            char c = source[p];
+            if (c == '\\') {
+                if (lexeme == null) {
+                    lexeme = new StringBuilder(end - start).append(source, start, p - start);
+                }
+                c = switch (source[++p]) {
+                    case 'n' -> '\n';
+                    case 't' -> '\t';
+                    case 'r' -> '\r';
+                    default -> source[p]; // '"' and '\\', the only other escapes the scanner accepts
+                };
+                lexeme.append(c);
+            } else if (lexeme != null) {
+                lexeme.append(c);
+            }
+        }
+        return lexeme != null ? lexeme.toString() : new String(source, start, end - start);
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+// The tokens Parser reads, addressed relative to the current one. Either a view of a fully
+// scanned TokenBuffer, or pulled from a scanner on demand into a small ring buffer so that
+// scanning and parsing run in one pass with token memory bounded by the lookahead. Past the
+// last token every read is an EOF at line -1, column -1.
+public abstract class TokenStream {
+
+    // One token per call, TOKEN_EOF last; Scanner::nextToken
+    public interface Source {
+        Token next() throws ScannerException, IOException;
+    }
+
+    // Carries a ScannerException out of a pull made while parsing
+    public static final class ScanFailure extends RuntimeException {
+        public ScanFailure(ScannerException cause) {
+            super(cause.getMessage(), cause, false, false);
+        }
+
+        @Override
+        public synchronized ScannerException getCause() {
+            return (ScannerException) super.getCause();
+        }
+    }
+
+    abstract Token.TokenType type(int offset);
+
+    abstract Token token(int offset);
+
+    abstract void advance();
+
+    // Passes the tokens not yet pulled to the tee, so a table written from it is complete even
+    // when parsing stopped at a syntax error. Stops at a scanner error, which is reported only
+    // if the parser reaches it; a view of a buffer has nothing left to pull.
+    void drain() {
+    }
+
+    public static TokenStream of(TokenBuffer buffer) {
+        return new Range(buffer, 0, buffer.size());
+    }
+
+    // The tokens [from, to) of buffer, as if the buffer ended at to
+    static Range range(TokenBuffer buffer, int from, int to) {
+        return new Range(buffer, from, to);
+    }
+
+    // Every token is passed to tee once, in order, when it is first pulled from source
+    public static TokenStream pull(Source source, Consumer<Token> tee) {
+        return new Pulled(source, tee);
+    }
+
+    static Token pastEnd() {
+        return new Token(Token.TokenType.TOKEN_EOF, "EOF", -1, -1);
+    }
+
+    // A TokenBuffer, or part of one
+    static final class Range extends TokenStream {
+        private final TokenBuffer tokens;
+        private final int to;
+        private int index;
+        private boolean readPastEnd;
+
+        Range(TokenBuffer tokens, int from, int to) {
+            this.tokens = tokens;
+            this.index = from;
+            this.to = to;
+        }
+
+        // True if every token was consumed and nothing after them was looked at, so parsing
+        // the range on its own gave the same result as parsing it in place
+        boolean consumedExactly() {
+            return index == to && !readPastEnd;
+        }
+
+        @Override
+        Token.TokenType type(int offset) {
+            int i = index + offset;
+            if (i < to) {
+                return tokens.type(i);
+            }
+            readPastEnd = true;
+            return Token.TokenType.TOKEN_EOF;
+        }
+
+        @Override
+        Token token(int offset) {
+            int i = index + offset;
+            if (i < to) {
+                return tokens.token(i);
+            }
+            readPastEnd = true;
+            return pastEnd();
+        }
+
+        @Override
+        void advance() {
+            if (index < to) {
+                index++;
+            }
+        }
+    }
+
+    // Ring buffer of the tokens between the current one and the furthest peek. The parser
+    // looks at most 3 tokens ahead, except for the scan over an array index to its ']'.
+    private static final class Pulled extends TokenStream {
+        private final Source source;
+        private final Consumer<Token> tee;
+        private Token[] ring = new Token[8];
+        private int head;
+        private int count;
+        private boolean exhausted;
+
+        Pulled(Source source, Consumer<Token> tee) {
+            this.source = source;
+            this.tee = tee;
+        }
+
+        private boolean fill(int offset) {
+            while (count <= offset && !exhausted) {
+                Token token = pull();
+                if (count == ring.length) {
+                    grow();
+                }
+                ring[(head + count) & (ring.length - 1)] = token;
+                count++;
+            }
+            return offset < count;
+        }
+
+        @Override
+        void drain() {
+            try {
+                while (!exhausted) {
+                    pull();
+                }
+            } catch (ScanFailure e) {
+                // the table ends before the token that failed
+            }
+        }
+
+        // The next token from the source, passed to the tee; nothing is pulled after EOF or a
+        // scanner error
+        private Token pull() {
+            Token token;
+            try {
+                token = source.next();
+            } catch (ScannerException e) {
+                exhausted = true;
+                throw new ScanFailure(e);
+            } catch (IOException e) {
+                exhausted = true;
+                throw new UncheckedIOException(e);
+            }
+            tee.accept(token);
+            exhausted = token.type == Token.TokenType.TOKEN_EOF;
+            return token;
+        }
+
+        private void grow() {
+            Token[] larger = new Token[ring.length * 2];
+            for (int i = 0; i < count; i++) {
+                larger[i] = ring[(head + i) & (ring.length - 1)];
+            }
+            ring = larger;
+            head = 0;
+        }
+
+        @Override
+        Token.TokenType type(int offset) {
+            return fill(offset) ? ring[(head + offset) & (ring.length - 1)].type : Token.TokenType.TOKEN_EOF;
+        }
+
+        @Override
+        Token token(int offset) {
+            return fill(offset) ? ring[(head + offset) & (ring.length - 1)] : pastEnd();
+        }
+
+        @Override
+        void advance() {
+            if (fill(0)) {
+                ring[head] = null;
+                head = (head + 1) & (ring.length - 1);
+                count--;
+            }
+        }
+    }
+}
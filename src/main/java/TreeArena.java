@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// A parse tree stored as flat arrays instead of ParseTreeNode objects. Nodes are numbered in
+// pre-order from the root at 0; each has a kind, its first child, its next sibling and the
+// index of its token in tokens, NONE where there is none. The tokens of the tree are kept in
+// a compact TokenBuffer of their own, so an arena holds no objects per node or per token
+// and costs a few dozen bytes a node instead of a few hundred. Only the syntax is kept: the
+// slots Resolver fills in are not.
+public final class TreeArena {
+
+    public static final int NONE = -1;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private final byte[] kinds;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] tokenIndexes;
+    private final TokenBuffer tokens;
+    private int size;
+
+    private TreeArena(int capacity, List<Token> tokens) {
+        kinds = new byte[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        tokenIndexes = new int[capacity];
+        this.tokens = TokenBuffer.compact(tokens);
+    }
+
+    public static TreeArena of(ParseTreeNode root) {
+        List<Token> tokens = new ArrayList<>();
+        int count = collect(root, tokens);
+        TreeArena arena = new TreeArena(count, tokens);
+        arena.add(root, new int[1]);
+        return arena;
+    }
+
+    // Nodes under and including node; their tokens are added to tokens in pre-order
+    private static int collect(ParseTreeNode node, List<Token> tokens) {
+        if (node.token != null) {
+            tokens.add(node.token);
+        }
+        int count = 1;
+        for (ParseTreeNode child : node.children) {
+            count += collect(child, tokens);
+        }
+        return count;
+    }
+
+    private int add(ParseTreeNode node, int[] nextToken) {
+        int index = size++;
+        kinds[index] = (byte) NodeKind.of(node).ordinal();
+        tokenIndexes[index] = node.token != null ? nextToken[0]++ : NONE;
+        firstChildren[index] = NONE;
+        nextSiblings[index] = NONE;
+        int previous = NONE;
+        for (ParseTreeNode child : node.children) {
+            int added = add(child, nextToken);
+            if (previous == NONE) {
+                firstChildren[index] = added;
+            } else {
+                nextSiblings[previous] = added;
+            }
+            previous = added;
+        }
+        return index;
+    }
+
+    // A ParseTreeNode tree equal to the one the arena was made from, with new Token objects
+    public ParseTreeNode toTree() {
+        return build(0);
+    }
+
+    private ParseTreeNode build(int node) {
+        int token = tokenIndexes[node];
+        ParseTreeNode result = token == NONE
+                ? new ParseTreeNode(name(node))
+                : new ParseTreeNode(name(node), new Token(tokens.type(token), tokens.lexeme(token), tokens.line(token), tokens.column(token)));
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            result.addChild(build(child));
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NodeKind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    // ParseTreeNode.name of the node
+    public String name(int node) {
+        NodeKind kind = kind(node);
+        return kind == NodeKind.TOKEN ? tokens.type(tokenIndexes[node]).toString() : kind.label();
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    // Index of the node's token in tokens(), or NONE
+    public int token(int node) {
+        return tokenIndexes[node];
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A parse tree in a binary file that is read through a memory map, so nodes are decoded only
+// when they are visited. The file is a header, one fixed-size record per node in pre-order
+// from the root at 0, and a table of the distinct lexemes as UTF-8:
+//
+//   header   magic, version, node count, string count
+//   node     kind, token type or NO_TOKEN, flags, next sibling, lexeme index, line, column
+//   strings  0 and the end of each string in the bytes that follow, then those bytes
+//
+// A node with children has its first child right after it. Like TreeArena only the syntax
+// is kept, not the slots Resolver fills in.
+public final class TreeFile {
+
+    public static final int NONE = -1;
+
+    private static final int MAGIC = 0x4A545245; // "JTRE"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int NODE_SIZE = 20;
+    private static final int NO_TOKEN = 0xFF;
+    private static final int HAS_CHILDREN = 1;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final Token.TokenType[] TYPES = Token.TokenType.values();
+
+    private final ByteBuffer bytes;
+    private final int size;
+    private final int stringOffsets; // position of the string offsets
+    private final int stringBytes;   // position of the first string byte
+    private final String[] strings;  // decoded on first use
+
+    private TreeFile(ByteBuffer bytes) throws IOException {
+        this.bytes = bytes;
+        if (bytes.limit() < HEADER_SIZE || bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION) {
+            throw new IOException("Not a parse tree file");
+        }
+        size = bytes.getInt(8);
+        strings = new String[bytes.getInt(12)];
+        stringOffsets = HEADER_SIZE + size * NODE_SIZE;
+        stringBytes = stringOffsets + (strings.length + 1) * 4;
+        if (stringBytes > bytes.limit() || stringBytes + bytes.getInt(stringBytes - 4) > bytes.limit()) {
+            throw new IOException("Truncated parse tree file");
+        }
+    }
+
+    public static TreeFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + path);
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new TreeFile(bytes);
+        }
+    }
+
+    // A tree read from bytes laid out as in the file, starting at position 0 of the buffer
+    static TreeFile of(ByteBuffer bytes) throws IOException {
+        return new TreeFile(bytes);
+    }
+
+    public static void write(ParseTreeNode root, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer part : encode(root)) {
+                while (part.hasRemaining()) {
+                    channel.write(part);
+                }
+            }
+        }
+    }
+
+    // The contents of the file, in parts to be written one after the other
+    static ByteBuffer[] encode(ParseTreeNode root) {
+        Writer writer = new Writer(count(root));
+        writer.add(root);
+        return writer.finish();
+    }
+
+    private static int count(ParseTreeNode node) {
+        int count = 1;
+        for (ParseTreeNode child : node.children) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    private static final class Writer {
+        private final ByteBuffer nodes;
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private int size;
+        private int stringLength;
+
+        Writer(int count) {
+            nodes = ByteBuffer.allocate(HEADER_SIZE + count * NODE_SIZE);
+            nodes.putInt(MAGIC).putInt(VERSION).putInt(count);
+        }
+
+        void add(ParseTreeNode node) {
+            int at = HEADER_SIZE + size++ * NODE_SIZE;
+            Token token = node.token;
+            nodes.put(at, (byte) NodeKind.of(node).ordinal());
+            nodes.put(at + 1, (byte) (token != null ? token.type.ordinal() : NO_TOKEN));
+            nodes.putShort(at + 2, (short) (node.children.isEmpty() ? 0 : HAS_CHILDREN));
+            nodes.putInt(at + 4, NONE);
+            nodes.putInt(at + 8, token != null ? intern(token.lexeme) : NONE);
+            nodes.putInt(at + 12, token != null ? token.lineNumber : 0);
+            nodes.putInt(at + 16, token != null ? token.columnNumber : 0);
+            int previous = NONE;
+            for (ParseTreeNode child : node.children) {
+                int added = size;
+                add(child);
+                if (previous != NONE) {
+                    nodes.putInt(HEADER_SIZE + previous * NODE_SIZE + 4, added);
+                }
+                previous = added;
+            }
+        }
+
+        private int intern(String lexeme) {
+            Integer index = indexes.get(lexeme);
+            if (index == null) {
+                byte[] encoded = lexeme.getBytes(StandardCharsets.UTF_8);
+                index = strings.size();
+                indexes.put(lexeme, index);
+                strings.add(encoded);
+                stringLength += encoded.length;
+            }
+            return index;
+        }
+
+        ByteBuffer[] finish() {
+            nodes.putInt(12, strings.size());
+            nodes.position(nodes.capacity()).flip();
+            ByteBuffer table = ByteBuffer.allocate((strings.size() + 1) * 4 + stringLength);
+            int end = 0;
+            table.putInt(0);
+            for (byte[] string : strings) {
+                end += string.length;
+                table.putInt(end);
+            }
+            for (byte[] string : strings) {
+                table.put(string);
+            }
+            return new ByteBuffer[]{nodes, table.flip()};
+        }
+    }
+
+    // A ParseTreeNode tree equal to the one the file was written from
+    public ParseTreeNode toTree() {
+        return build(0);
+    }
+
+    private ParseTreeNode build(int node) {
+        ParseTreeNode result = hasToken(node)
+                ? new ParseTreeNode(name(node), new Token(type(node), lexeme(node), line(node), column(node)))
+                : new ParseTreeNode(name(node));
+        for (int child = firstChild(node); child != NONE; child = nextSibling(child)) {
+            result.addChild(build(child));
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NodeKind kind(int node) {
+        return KINDS[bytes.get(record(node))];
+    }
+
+    // ParseTreeNode.name of the node
+    public String name(int node) {
+        NodeKind kind = kind(node);
+        return kind == NodeKind.TOKEN ? type(node).toString() : kind.label();
+    }
+
+    public int firstChild(int node) {
+        return (bytes.getShort(record(node) + 2) & HAS_CHILDREN) != 0 ? node + 1 : NONE;
+    }
+
+    public int nextSibling(int node) {
+        return bytes.getInt(record(node) + 4);
+    }
+
+    public boolean hasToken(int node) {
+        return (bytes.get(record(node) + 1) & 0xFF) != NO_TOKEN;
+    }
+
+    // Type of the node's token; the token accessors are only meaningful when hasToken
+    public Token.TokenType type(int node) {
+        return TYPES[bytes.get(record(node) + 1) & 0xFF];
+    }
+
+    public String lexeme(int node) {
+        int index = bytes.getInt(record(node) + 8);
+        String lexeme = strings[index];
+        if (lexeme == null) {
+            int start = bytes.getInt(stringOffsets + index * 4);
+            int end = bytes.getInt(stringOffsets + (index + 1) * 4);
+            byte[] encoded = new byte[end - start];
+            bytes.get(stringBytes + start, encoded);
+            lexeme = new String(encoded, StandardCharsets.UTF_8);
+            strings[index] = lexeme;
+        }
+        return lexeme;
+    }
+
+    public int line(int node) {
+        return bytes.getInt(record(node) + 12);
+    }
+
+    public int column(int node) {
+        return bytes.getInt(record(node) + 16);
+    }
+
+    private int record(int node) {
+        return HEADER_SIZE + node * NODE_SIZE;
+    }
+}
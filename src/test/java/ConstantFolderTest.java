@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// Folding constants and pruning dead branches leaves what a program prints and where it fails
+// as it was, on every engine.
+class ConstantFolderTest {
+
+    private static final String CONSTANTS = """
+            int size = 4 * 8 + 2;
+            float half = 1.0 / 2;
+
+            int main() {
+                int i, sum = 0;
+                char c = 'a' + 2;
+                bool b = !(3 < 2) && true;
+                for (i = 0; i < 10 - 2 * 3; i = i + 1) {
+                    sum = sum + i * (2 + 3) - -(7 % 4);
+                }
+                if (1 > 2) {
+                    sum = 0;
+                } else {
+                    sum = sum + (10 ^ 3);
+                }
+                while (false) {
+                    sum = sum + 1;
+                }
+                if (true || sum / 0) {
+                    sum = sum + size;
+                }
+                printf("%d %f %c %d %f\\n", sum, half * 3, c, b, 7 / 2 + 7.0 / 2);
+                if (2 + 2 == 4) {
+                    printf("%d", sum / (3 - 3));
+                }
+                return 0;
+            }
+            """;
+
+    @Test
+    void foldedProgramRunsTheSameOnEveryEngine() throws Exception {
+        String expected = Programs.run("tree", Programs.parse(CONSTANTS), "");
+        assertTrue(expected.contains("Error: "), expected);
+        for (String engine : Programs.ENGINES) {
+            ParseTreeNode folded = Programs.parse(CONSTANTS);
+            ConstantFolder folder = new ConstantFolder();
+            folder.fold(folded);
+            assertTrue(folder.folded() > 0 && folder.pruned() > 0,
+                    folder.folded() + " expressions folded and " + folder.pruned() + " branches pruned");
+            assertEquals(expected, Programs.run(engine, Programs.parse(CONSTANTS), ""), "unfolded on " + engine);
+            assertEquals(expected, Programs.run(engine, folded, ""), "folded on " + engine);
+        }
+    }
+}
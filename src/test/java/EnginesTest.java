@@ -0,0 +1,248 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+// Every engine prints the same for the same program and input, and fails with the same
+// message at the same position, with the tree engine as the reference.
+class EnginesTest {
+
+    private static final String TYPES = """
+            int calls;
+            float rate = 0.25;
+            char letters[4] = {'a', 'b', 'c', 'd'};
+
+            int square(int v) {
+                calls = calls + 1;
+                return v * v % 1000;
+            }
+
+            float scale(float v) {
+                return v * rate + 1.0;
+            }
+
+            bool odd(int v) {
+                return v % 2 == 1;
+            }
+
+            int main() {
+                int i, sum = 0, n = 0;
+                float x = 0.5;
+                char c = 'a';
+                bool b = false;
+                int table[8] = {3, 1, 4, 1, 5, 9, 2, 6};
+                for (i = 0; i < 200; i = i + 1) {
+                    sum = sum + square(i) - table[5];
+                    x = scale(x) + i;
+                    c = c + 1;
+                    b = !b;
+                    n = n + c + b;
+                    if (odd(i) && i % 3 == 0 || i == 100) {
+                        table[2] = table[2] + 1;
+                    } else if (!odd(i) ^ b) {
+                        sum = sum - 1;
+                    }
+                }
+                while (sum > 50) {
+                    sum = sum / 3;
+                }
+                printf("%d %d %f %c %d %d\\n", sum, n, x, c, b, calls);
+                printf("%c%c %d %f\\n", letters[1], letters[3] - 1, table[0] + table[7], 7 / 2 + 7.0 / 2);
+                return 0;
+            }
+            """;
+
+    // Implicit conversions between every pair of types, in arguments, returns and array
+    // initializers, as the generated programs the engines were compared on have them
+    private static final String CONVERSIONS = """
+            int fni(char x, float y) {
+                int z = x;
+                if (x < y) { return z + y; }
+                return z - y;
+            }
+            float fnf(bool x, int y) {
+                float z = x;
+                if (x < y) { return z + y; }
+                return z - y;
+            }
+            char fnc(int x, int y) {
+                char z = x;
+                if (x < y) { return z + y; }
+                return z - y;
+            }
+            bool fnb(char x, int y) {
+                bool z = x;
+                if (x < y) { return z + y; }
+                return z - y;
+            }
+            int main() {
+                int i0 = 2;
+                int i1 = 8.54;
+                float f0 = 3;
+                float f1 = 'a';
+                char c0 = 32;
+                char c1 = 6;
+                bool b0 = true;
+                bool b1 = 4.67;
+                int arri[3] = {'0', 'a', 'Z'};
+                float arrf[3] = {12, '9', 24};
+                char arrc[3] = {8, false, 6.70};
+                bool arrb[3] = {true, 7.75, 4};
+                int k;
+                for (k = 0; k < 3; k = k + 1) {
+                    i0 = fnb(fnb(fni(fnb(7, -5) < c0 ^ 2, arrb[0]) <= fnb('9', 1), +('z') != f1) <= arri[0] && arrb[1], c1 && +arri[0]);
+                    f1 = b1 = ((true && b1 * fnc(46, 4)));
+                    i1 = b1 = '0' != i1 * arri[0];
+                    c0 = (c0 > -arrc[0]) + 41;
+                    b0 = b1 = (fnc(-c1, !-fnc(48, 37) * c0) + arrc[1]) ^ 0 + arrf[1];
+                    arrc[1] = true;
+                    c1 = 'a' % (arrc[0] < ('A' % (c1 + 100) + +(f0)) + 100) <= 5;
+                    c0 = fnf(arrb[2] < 2.9 <= arrb[1], f1);
+                    arri[1] = c1 && (i0 || fnb(i0, '9') < fnb(false, 20));
+                    if (++arrb[0]) { i0 = i0 + 1; } else { f0 = f0 - 1; }
+                    while (arri[0] / (arrf[0] + 100) && i1 < 5 && i1 > -5) { i1 = i1 + 1; }
+                }
+                printf("%d %d %f %f %c %c %d %d", i0, i1, f0, f1, c0, c1, b0, b1);
+                printf("%d %f %d %d", arri[0], arrf[1], arrc[2], arrb[0]);
+                return 0;
+            }
+            """;
+
+    private static final String INPUT = """
+            int main() {
+                int n;
+                float x;
+                char c;
+                bool b;
+                scanf("%d %f %c %d", &n, &x, &c, &b);
+                printf("%d %f %c %d\\n", n + 1, x * 2, c + 1, b);
+                return 0;
+            }
+            """;
+
+    private static final String RECURSION = """
+            int fib(int n) {
+                if (n < 2) {
+                    return n;
+                }
+                return fib(n - 1) + fib(n - 2);
+            }
+
+            int main() {
+                printf("%d\\n", fib(20));
+                return 0;
+            }
+            """;
+
+    private static final Map<String, String> ERRORS = Map.of(
+            "division by zero", """
+                    int main() {
+                        int z = 0;
+                        printf("before\\n");
+                        printf("%d", 1 / z);
+                        return 0;
+                    }
+                    """,
+            "remainder by zero", """
+                    int rest(int a, int b) {
+                        return a % b;
+                    }
+                    int main() {
+                        printf("%d", rest(7, 0));
+                        return 0;
+                    }
+                    """,
+            "index out of bounds", """
+                    int main() {
+                        int a[3];
+                        a[2] = 7;
+                        printf("%d ", a[2]);
+                        a[3] = a[2];
+                        return 0;
+                    }
+                    """,
+            "error inside a compiled loop", """
+                    int main() {
+                        int i, s = 0;
+                        for (i = 0; i < 5000; i = i + 1) {
+                            s = s + i;
+                        }
+                        printf("%d\\n", s);
+                        while (s > 0) {
+                            s = s - 1000;
+                            i = 10 / (s - 2497500 + 1000 * 2000);
+                        }
+                        return 0;
+                    }
+                    """,
+            "undeclared identifier", """
+                    int main() {
+                        printf("%d", missing);
+                        return 0;
+                    }
+                    """,
+            "input that is not a number", """
+                    int main() {
+                        int n;
+                        scanf("%d", &n);
+                        printf("%d", n);
+                        return 0;
+                    }
+                    """);
+
+    private static final String NESTED = """
+            int f(int n) {
+                if (n == 0) {
+                    return 0;
+                }
+                return f(n - 1) + 1;
+            }
+
+            int main() {
+                printf("%d\\n", f(DEPTH));
+                return 0;
+            }
+            """;
+
+    @Test
+    void sameOutputOnEveryEngine() throws Exception {
+        Map<String, String> programs = Map.of("types", TYPES, "conversions", CONVERSIONS, "recursion", RECURSION);
+        for (Map.Entry<String, String> program : programs.entrySet()) {
+            String output = sameOnEveryEngine(program.getKey(), program.getValue(), "");
+            assertFalse(output.contains("Error: "), program.getKey() + ": " + output);
+        }
+        assertEquals("42 5.000000 y 1\n", sameOnEveryEngine("input", INPUT, "41 2.5 x 1\n"));
+        assertEquals("6765\n", sameOnEveryEngine("recursion", RECURSION, ""));
+    }
+
+    @Test
+    void sameErrorOnEveryEngine() throws Exception {
+        for (Map.Entry<String, String> error : ERRORS.entrySet()) {
+            String output = sameOnEveryEngine(error.getKey(), error.getValue(), "abc\n");
+            assertTrue(output.contains("Error: "), error.getKey() + " ran without an error: " + output);
+        }
+    }
+
+    @Test
+    void sameCallDepthOnEveryEngine() throws Exception {
+        int limit = ExecutionEngine.MAX_CALL_DEPTH;
+        // main is one of the calls
+        String deepest = sameOnEveryEngine("deepest", NESTED.replace("DEPTH", String.valueOf(limit - 2)), "");
+        assertEquals((limit - 2) + "\n", deepest);
+        String tooDeep = sameOnEveryEngine("too deep", NESTED.replace("DEPTH", String.valueOf(limit - 1)), "");
+        assertTrue(tooDeep.startsWith("Error: More than " + limit + " nested calls in call to 'f'"), tooDeep);
+    }
+
+    // The output of the tree engine, after checking every other engine prints the same
+    private static String sameOnEveryEngine(String name, String source, String input) throws Exception {
+        String expected = Programs.run("tree", source, input);
+        for (String engine : Programs.ENGINES) {
+            assertEquals(expected, Programs.run(engine, source, input), name + " on " + engine);
+        }
+        assertFalse(expected.contains("AssertionError"), name + ": " + expected);
+        return expected;
+    }
+}
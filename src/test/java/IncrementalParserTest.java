@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// After any edit the tokens and tree of an IncrementalParser are those of a full scan and parse
+// of the edited text, lines included, and a broken edit fails as the full parse does.
+class IncrementalParserTest {
+
+    @TempDir
+    Path directory;
+
+    private String text = Daemon.warmUpProgram(10);
+
+    @Test
+    void editsMatchAFullReparse() throws Exception {
+        IncrementalParser parser = new IncrementalParser(text.toCharArray(), text.length());
+        int body = text.indexOf("sum = sum / 3;", text.indexOf("int step4("));
+        edit(parser, body, 0, "sum = sum - 1; ");
+        assertTrue(parser.reparsedTokens() < parser.size() / 5, parser.reparsedTokens() + " tokens reparsed");
+        edit(parser, body, 0, "\n        sum = sum + 2;\n");
+        edit(parser, text.indexOf("int step2("), 0, "int extra(int n) {\n    return n * 2;\n}\n");
+        int step7 = text.indexOf("int step7(");
+        edit(parser, step7, text.indexOf("int step8(") - step7, "");
+        edit(parser, text.length(), 0, "\nint tail;\n");
+        edit(parser, 0, 0, "// a comment\n\n");
+        assertEquals(Programs.print(Programs.parse(text), directory), Programs.print(parser.tree(), directory));
+    }
+
+    @Test
+    void brokenEditFailsAndItsUndoRecovers() throws Exception {
+        IncrementalParser parser = new IncrementalParser(text.toCharArray(), text.length());
+        int at = text.indexOf("while (sum > 50)", text.indexOf("int step3("));
+        String broken = text.substring(0, at) + "while (sum > " + text.substring(at + "while (sum > 50)".length());
+        assertThrows(Parser.ParserException.class, () -> Programs.parse(broken));
+        assertThrows(Parser.ParserException.class, () -> parser.update(broken.toCharArray(), broken.length()));
+        parser.update(text.toCharArray(), text.length());
+        assertNull(parser.difference(text.toCharArray()));
+    }
+
+    @Test
+    void randomEditsMatchAFullReparse() throws Exception {
+        String[] insertions = {"x", " ", "\n", "1", "+ 2", ";", "}", "{", "(", "int q;", "// c\n", "/* \n */"};
+        Random random = new Random(42);
+        IncrementalParser parser = new IncrementalParser(text.toCharArray(), text.length());
+        String original = text;
+        for (int i = 0; i < 300; i++) {
+            int offset = random.nextInt(text.length() + 1);
+            int removed = Math.min(random.nextInt(4), text.length() - offset);
+            String inserted = insertions[random.nextInt(insertions.length)];
+            String edited = text.substring(0, offset) + inserted + text.substring(offset + removed);
+            try {
+                parser.edit(offset, removed, inserted);
+            } catch (ScannerException | Parser.ParserException e) {
+                // the check below compares it with the full parse, which fails as well
+            }
+            text = edited;
+            assertNull(parser.difference(text.toCharArray()), "edit " + i + " at " + offset);
+            // and back, so that most edits are made to a program that parses
+            parser.update(original.toCharArray(), original.length());
+            text = original;
+            assertNull(parser.difference(text.toCharArray()), "undo of edit " + i);
+        }
+    }
+
+    private void edit(IncrementalParser parser, int offset, int removed, String inserted) throws Exception {
+        parser.edit(offset, removed, inserted);
+        text = text.substring(0, offset) + inserted + text.substring(offset + removed);
+        assertNull(parser.difference(text.toCharArray()), "edit at " + offset);
+    }
+}
@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// An entry gives back the tokens and tree that were stored, under a key of the source and chain
+// mode, and the directory stays under its capacity.
+class ProgramCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsWhatWasStored() throws Exception {
+        String source = Daemon.warmUpProgram(5);
+        char[] text = source.toCharArray();
+        TokenBuffer tokens = new ArrayScanner(text, text.length).scanTokens();
+        ParseTreeNode tree = new Parser(TokenStream.of(tokens), true).parse();
+        ProgramCache cache = new ProgramCache(directory.resolve("cache"), ProgramCache.DEFAULT_CAPACITY);
+        String key = ProgramCache.key(source.getBytes(StandardCharsets.UTF_8), false);
+        assertNull(cache.load(key));
+        cache.store(key, tokens, tree);
+
+        ProgramCache.Entry entry = cache.load(key);
+        assertNotNull(entry);
+        assertEquals(tokens.size(), entry.tokens().size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(tokens.type(i), entry.tokens().type(i), "type of token " + i);
+            assertEquals(tokens.lexeme(i), entry.tokens().lexeme(i), "lexeme of token " + i);
+            assertEquals(tokens.line(i), entry.tokens().line(i), "line of token " + i);
+            assertEquals(tokens.column(i), entry.tokens().column(i), "column of token " + i);
+        }
+        assertEquals(Programs.print(tree, directory), Programs.print(entry.tree(), directory));
+        for (String engine : Programs.ENGINES) {
+            assertEquals(Programs.run(engine, source, ""), Programs.run(engine, entry.tree(), ""), engine);
+        }
+    }
+
+    @Test
+    void keyCoversSourceAndChainMode() {
+        byte[] source = "int main() { return 0; }".getBytes(StandardCharsets.UTF_8);
+        byte[] edited = "int main() { return 1; }".getBytes(StandardCharsets.UTF_8);
+        assertEquals(ProgramCache.key(source, false), ProgramCache.key(source.clone(), false));
+        assertNotEquals(ProgramCache.key(source, false), ProgramCache.key(edited, false));
+        assertNotEquals(ProgramCache.key(source, false), ProgramCache.key(source, true));
+    }
+
+    @Test
+    void damagedEntryIsAMiss() throws Exception {
+        String source = "int main() { printf(\"%d\", 1); return 0; }";
+        char[] text = source.toCharArray();
+        TokenBuffer tokens = new ArrayScanner(text, text.length).scanTokens();
+        ProgramCache cache = new ProgramCache(directory, ProgramCache.DEFAULT_CAPACITY);
+        String key = ProgramCache.key(source.getBytes(StandardCharsets.UTF_8), false);
+        cache.store(key, tokens, new Parser(TokenStream.of(tokens), true).parse());
+        Path entry = directory.resolve(key + ".program");
+        byte[] bytes = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+        assertNull(cache.load(key));
+    }
+
+    @Test
+    void staysUnderCapacity() throws Exception {
+        long capacity = 64 << 10;
+        ProgramCache cache = new ProgramCache(directory, capacity);
+        for (int i = 0; i < 100; i++) {
+            String source = "int g" + i + ";\n" + Daemon.warmUpProgram(3);
+            char[] text = source.toCharArray();
+            TokenBuffer tokens = new ArrayScanner(text, text.length).scanTokens();
+            cache.store(ProgramCache.key(source.getBytes(StandardCharsets.UTF_8), false), tokens,
+                    new Parser(TokenStream.of(tokens), true).parse());
+        }
+        long total;
+        long entries;
+        try (Stream<Path> files = Files.list(directory)) {
+            total = files.mapToLong(file -> file.toFile().length()).sum();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            entries = files.count();
+        }
+        assertTrue(total <= capacity, total + " bytes in the cache");
+        assertTrue(entries > 1, entries + " entries in the cache");
+    }
+}
@@ -0,0 +1,72 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Scans, parses and runs .core source text for the tests the way Interpreter runs a file, and
+// prints trees for comparing them.
+final class Programs {
+
+    // jit compiles every function at its first call and every loop at its first iteration, so
+    // the short programs of the tests run compiled code rather than only the VM
+    static final List<String> ENGINES = List.of("tree", "ast", "vm", "jit");
+
+    private Programs() {
+    }
+
+    static ParseTreeNode parse(String source) throws ScannerException, Parser.ParserException {
+        char[] text = source.toCharArray();
+        return new Parser(TokenStream.of(new ArrayScanner(text, text.length).scanTokens()), true).parse();
+    }
+
+    static ExecutionEngine engine(String name, PrintStream out, Reader in) {
+        return switch (name) {
+            case "ast" -> new AstInterpreter(out, in);
+            case "vm" -> new BytecodeVm(out, in);
+            case "jit" -> new BytecodeVm(out, in, 1);
+            default -> new Evaluator(out, in);
+        };
+    }
+
+    // What the program printed, followed by "Error: " and the message if it failed, as
+    // Interpreter reports it. It runs on a thread with the stack Interpreter gives programs.
+    static String run(String engine, ParseTreeNode program, String input) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        ExecutionEngine executor = engine(engine, out, new StringReader(input));
+        FutureTask<String> task = new FutureTask<>(() -> {
+            try {
+                executor.run(program);
+                return "";
+            } catch (EvaluationException e) {
+                return "Error: " + e.getMessage();
+            }
+        });
+        new Thread(null, task, "program", ExecutionEngine.STACK_SIZE).start();
+        String error;
+        try {
+            error = task.get();
+        } catch (ExecutionException e) {
+            throw new AssertionError(engine + " failed", e.getCause());
+        }
+        out.flush();
+        return bytes.toString(StandardCharsets.UTF_8) + error;
+    }
+
+    static String run(String engine, String source, String input) throws Exception {
+        return run(engine, parse(source), input);
+    }
+
+    // The EBNF text ParseTreePrinter writes for tree
+    static String print(ParseTreeNode tree, Path directory) throws Exception {
+        Path file = Files.createTempFile(directory, "tree", ".ebnf");
+        new ParseTreePrinter(file.toString()).print(tree);
+        return Files.readString(file);
+    }
+}
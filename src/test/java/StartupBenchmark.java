@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Starts `java -cp <jar> Interpreter <program>` again and again, with and without the class
+// data sharing archive, and times each run to its first byte of output and to its exit. Runs
+// alternate between the two so that a machine that slows down affects both alike, and the
+// first two of each are discarded. With a ratio the exit status is 1 when the median time to
+// first output with the archive is more than that share of the median without it, for builds
+// that should catch a regression. The runs with the archive require it (-Xshare:on), so an
+// archive the JVM rejects fails the benchmark instead of being timed as a plain start.
+//
+//   java -cp <jar>:<test classes> StartupBenchmark <jar> <archive> <program.core> [runs] [max ratio]
+public class StartupBenchmark {
+
+    private static final int WARM_UP_RUNS = 2;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: java StartupBenchmark <jar> <archive> <program.core> [runs] [max ratio]");
+            return;
+        }
+        Path jar = Paths.get(args[0]).toAbsolutePath();
+        Path archive = Paths.get(args[1]).toAbsolutePath();
+        Path program = Paths.get(args[2]).toAbsolutePath();
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        double maxRatio = args.length > 4 ? Double.parseDouble(args[4]) : Double.MAX_VALUE;
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+        // JVM warnings, such as an archive that does not match the jar, go to stderr so that
+        // they are not taken for the program's first output
+        List<String> plain = List.of(java, "-Xshare:off", "-Xlog:disable", "-Xlog:all=warning:stderr",
+                "-cp", jar.toString(), "Interpreter", program.toString());
+        List<String> shared = List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xshare:on", "-Xlog:disable",
+                "-Xlog:all=warning:stderr", "-cp", jar.toString(), "Interpreter", program.toString());
+        double[][] withoutArchive = new double[runs][];
+        double[][] withArchive = new double[runs][];
+        Path directory = Files.createTempDirectory("startup-benchmark");
+        try {
+            for (int run = -WARM_UP_RUNS; run < runs; run++) {
+                double[] without = time(plain, directory);
+                double[] with = time(shared, directory);
+                if (run >= 0) {
+                    withoutArchive[run] = without;
+                    withArchive[run] = with;
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        System.out.printf("%s, %d runs, milliseconds%n", program.getFileName(), runs);
+        System.out.println("                first output (median / min)   exit (median / min)");
+        report("no archive", withoutArchive);
+        report("archive", withArchive);
+        double ratio = median(withArchive, 0) / median(withoutArchive, 0);
+        if (ratio > maxRatio) {
+            System.out.printf("Time to first output with the archive is %.2f of that without it, more than %.2f%n",
+                    ratio, maxRatio);
+            System.exit(1);
+        }
+    }
+
+    // Milliseconds from starting the process to its first byte of output and to its exit
+    private static double[] time(List<String> command, Path directory) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        process.getOutputStream().close();
+        double firstOutput;
+        try (InputStream out = process.getInputStream()) {
+            int first = out.read();
+            firstOutput = (System.nanoTime() - start) / 1e6;
+            if (first < 0) {
+                throw new IOException("No output from " + String.join(" ", command));
+            }
+            out.transferTo(OutputStream.nullOutputStream());
+        }
+        // a JVM that cannot map a required archive says so on stdout and exits at once
+        int status = process.waitFor();
+        if (status != 0) {
+            throw new IOException("Exit status " + status + " from " + String.join(" ", command));
+        }
+        return new double[]{firstOutput, (System.nanoTime() - start) / 1e6};
+    }
+
+    private static void report(String label, double[][] times) {
+        System.out.printf("%-15s %12.1f / %-12.1f %12.1f / %.1f%n", label, median(times, 0), min(times, 0),
+                median(times, 1), min(times, 1));
+    }
+
+    private static double median(double[][] times, int column) {
+        double[] values = Arrays.stream(times).mapToDouble(time -> time[column]).sorted().toArray();
+        return values.length % 2 == 1 ? values[values.length / 2]
+                : (values[values.length / 2 - 1] + values[values.length / 2]) / 2;
+    }
+
+    private static double min(double[][] times, int column) {
+        return Arrays.stream(times).mapToDouble(time -> time[column]).min().orElse(0);
+    }
+}
@@ -0,0 +1,48 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+// The training run of the class data sharing archive: runs the command lines a short program
+// usually gets, so that the class list the JVM writes names every class they load. Each
+// program in the directory is translated with every scanner, and the Daemon's warm-up program
+// is run on every engine. The archive is then dumped from the list with the jar alone on the
+// class path, which leaves out this class.
+//
+//   java -XX:DumpLoadedClassList=<list> -cp <jar>:<test classes> StartupTraining <programs> <output>
+//   java -XX:+UseG1GC -Xshare:dump -XX:SharedClassListFile=<list> -XX:SharedArchiveFile=<archive> -cp <jar>
+public class StartupTraining {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java StartupTraining <directory of .core files> <output directory>");
+            return;
+        }
+        Path output = Paths.get(args[1]).toAbsolutePath();
+        Files.createDirectories(output);
+        List<Path> programs;
+        try (Stream<Path> files = Files.list(Paths.get(args[0]))) {
+            programs = files.filter(file -> file.toString().endsWith(".core"))
+                    .map(Path::toAbsolutePath).sorted().toList();
+        }
+        Path generated = output.resolve("training.core");
+        Files.writeString(generated, Daemon.warmUpProgram(5));
+
+        for (Path program : programs) {
+            for (String scanner : List.of("--scanner=reader", "--scanner=mapped")) {
+                run(output, scanner, program.toString());
+            }
+            run(output, "--stream", program.toString());
+        }
+        for (String engine : List.of("tree", "ast", "vm", "jit")) {
+            run(output, "--engine=" + engine, generated.toString());
+        }
+    }
+
+    private static void run(Path output, String... args) {
+        Interpreter.run(args, output, new ByteArrayInputStream(new byte[0]));
+    }
+}